@@ -0,0 +1,17 @@
+package com.leungcheng.spring_e_commerce_backend;
+
+import com.leungcheng.spring_e_commerce_backend.domain.IdGenerator;
+import com.leungcheng.spring_e_commerce_backend.domain.Ids;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Sets the generator of {@link Ids}, which the entities call from their field initializers and so
+ * cannot take as a bean.
+ */
+@Configuration
+public class IdsConfig {
+  public IdsConfig(@Value("${ids.generator}") IdGenerator.Type generatorType) {
+    Ids.use(generatorType.create());
+  }
+}
@@ -1,8 +1,36 @@
 package com.leungcheng.spring_e_commerce_backend;
 
+import com.leungcheng.spring_e_commerce_backend.retry.DecorrelatedJitterBackOffPolicy;
+import com.leungcheng.spring_e_commerce_backend.retry.RetryBudget;
+import com.leungcheng.spring_e_commerce_backend.retry.RetryMetricsListener;
+import com.leungcheng.spring_e_commerce_backend.retry.TransientFailureRetryPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.retry.annotation.EnableRetry;
+import org.springframework.retry.interceptor.RetryInterceptorBuilder;
+import org.springframework.retry.interceptor.RetryOperationsInterceptor;
+import org.springframework.retry.support.RetryTemplate;
 
 @EnableRetry
 @Configuration
-public class RetryConfig {}
+public class RetryConfig {
+  /** Used by {@code @Retryable(interceptor = "orderRetryInterceptor")}. */
+  @Bean
+  public RetryOperationsInterceptor orderRetryInterceptor(
+      @Value("${order.retry.maxAttempts}") int maxAttempts,
+      @Value("${order.retry.baseDelay}") Duration baseDelay,
+      @Value("${order.retry.maxDelay}") Duration maxDelay,
+      @Value("${order.retry.budget.tokensPerCall}") double tokensPerCall,
+      @Value("${order.retry.budget.maxTokens}") double maxTokens,
+      MeterRegistry meterRegistry) {
+    RetryTemplate retryTemplate = new RetryTemplate();
+    retryTemplate.setRetryPolicy(
+        new TransientFailureRetryPolicy(maxAttempts, new RetryBudget(tokensPerCall, maxTokens)));
+    retryTemplate.setBackOffPolicy(new DecorrelatedJitterBackOffPolicy(baseDelay, maxDelay));
+    retryTemplate.registerListener(new RetryMetricsListener("order.retry", meterRegistry));
+    return RetryInterceptorBuilder.stateless().retryOperations(retryTemplate).build();
+  }
+}
@@ -0,0 +1,8 @@
+package com.leungcheng.spring_e_commerce_backend;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@EnableScheduling
+@Configuration
+public class SchedulingConfig {}
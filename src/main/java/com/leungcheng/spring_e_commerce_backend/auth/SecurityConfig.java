@@ -1,5 +1,6 @@
 package com.leungcheng.spring_e_commerce_backend.auth;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -28,6 +29,10 @@ public class SecurityConfig {
                 authorize
                     .requestMatchers("/login", "/signup")
                     .permitAll()
+                    // The request that started a streaming response was already authorized, and
+                    // the stateless session has no authentication left for its async dispatch.
+                    .dispatcherTypeMatchers(DispatcherType.ASYNC)
+                    .permitAll()
                     .anyRequest()
                     .authenticated())
         .csrf(AbstractHttpConfigurer::disable)
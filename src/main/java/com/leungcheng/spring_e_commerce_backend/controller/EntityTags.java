@@ -0,0 +1,20 @@
+package com.leungcheng.spring_e_commerce_backend.controller;
+
+import org.springframework.http.ETag;
+
+final class EntityTags {
+  private EntityTags() {}
+
+  /**
+   * Compares weakly, as {@code If-None-Match} is compared, so {@code W/"1"} matches the entity tag
+   * {@code 1}.
+   */
+  static boolean matches(String ifNoneMatch, String entityTag) {
+    for (ETag eTag : ETag.parse(ifNoneMatch)) {
+      if (eTag.isWildcard() || eTag.tag().equals(entityTag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -1,8 +1,13 @@
 package com.leungcheng.spring_e_commerce_backend.controller;
 
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderConflictException;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderQueueFullException;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderTimeoutException;
 import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
 import com.leungcheng.spring_e_commerce_backend.validation.ObjectValidator.ObjectValidationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -18,6 +23,44 @@ class ExceptionHandlerAdvice {
     return ex.getMessage();
   }
 
+  @ExceptionHandler(OrderNotFoundException.class)
+  @ResponseStatus(HttpStatus.NOT_FOUND)
+  String orderNotFoundHandler(OrderNotFoundException ex) {
+    return ex.getMessage();
+  }
+
+  @ExceptionHandler(OrderRequestNotFoundException.class)
+  @ResponseStatus(HttpStatus.NOT_FOUND)
+  String orderRequestNotFoundHandler(OrderRequestNotFoundException ex) {
+    return ex.getMessage();
+  }
+
+  @ExceptionHandler(ReservationNotFoundException.class)
+  @ResponseStatus(HttpStatus.NOT_FOUND)
+  String reservationNotFoundHandler(ReservationNotFoundException ex) {
+    return ex.getMessage();
+  }
+
+  @ExceptionHandler(OrderQueueFullException.class)
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  String orderQueueFullHandler(OrderQueueFullException ex) {
+    return ex.getMessage();
+  }
+
+  @ExceptionHandler(OrderConflictException.class)
+  ResponseEntity<String> orderConflictHandler(OrderConflictException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .body(ex.getMessage());
+  }
+
+  @ExceptionHandler(OrderTimeoutException.class)
+  ResponseEntity<String> orderTimeoutHandler(OrderTimeoutException ex) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .body(ex.getMessage());
+  }
+
   @ExceptionHandler(UsernameAlreadyExistsException.class)
   @ResponseStatus(HttpStatus.CONFLICT)
   String usernameAlreadyExistsHandler(UsernameAlreadyExistsException ex) {
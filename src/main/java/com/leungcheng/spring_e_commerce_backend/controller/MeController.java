@@ -4,18 +4,40 @@ import com.leungcheng.spring_e_commerce_backend.auth.UserAuthenticatedInfoToken;
 import com.leungcheng.spring_e_commerce_backend.domain.User;
 import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
 import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.UUID;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 public class MeController {
   @Autowired private UserRepository userRepository;
 
+  /**
+   * Answers a matching {@code If-None-Match} with 304 from a lookup of the entity tag, without
+   * loading the user.
+   */
   @GetMapping("/me")
-  public UserAccountInfo me(UserAuthenticatedInfoToken authToken) {
-    User user = userRepository.findById(authToken.getPrincipal().userId()).orElseThrow();
-    return new UserAccountInfo(user.getUsername(), user.getBalance());
+  public ResponseEntity<UserAccountInfo> me(
+      UserAuthenticatedInfoToken authToken,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    UUID userId = authToken.getPrincipal().userId();
+    if (ifNoneMatch != null) {
+      Optional<String> entityTag = userRepository.findEntityTagById(userId);
+      if (entityTag.isPresent() && EntityTags.matches(ifNoneMatch, entityTag.get())) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entityTag.get()).build();
+      }
+    }
+
+    User user = userRepository.findById(userId).orElseThrow();
+    return ResponseEntity.ok()
+        .eTag(user.getEntityTag())
+        .body(new UserAccountInfo(user.getUsername(), user.getBalance()));
   }
 
   public record UserAccountInfo(String username, BigDecimal balance) {}
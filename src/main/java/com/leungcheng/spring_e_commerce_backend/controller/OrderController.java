@@ -1,34 +1,139 @@
 package com.leungcheng.spring_e_commerce_backend.controller;
 
 import com.leungcheng.spring_e_commerce_backend.auth.UserAuthenticatedInfoToken;
+import com.leungcheng.spring_e_commerce_backend.domain.order.AsyncOrderService;
 import com.leungcheng.spring_e_commerce_backend.domain.order.Order;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderExporter;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderPage;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRequestStatus;
 import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService;
 import com.leungcheng.spring_e_commerce_backend.domain.order.PurchaseItems;
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
 import jakarta.validation.Valid;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 public class OrderController {
   @Autowired private OrderService orderService;
+  @Autowired private AsyncOrderService asyncOrderService;
+  @Autowired private OrderExporter orderExporter;
 
   @PostMapping("/orders")
   @ResponseStatus(HttpStatus.CREATED)
   Order newOrder(
       @Valid @RequestBody CreateOrderRequest createOrderRequest,
       UserAuthenticatedInfoToken authToken) {
+    return orderService.createOrder(
+        authToken.getPrincipal().userId(),
+        toPurchaseItems(createOrderRequest),
+        createOrderRequest.requestId());
+  }
+
+  @GetMapping("/orders/{id}")
+  Order one(@PathVariable UUID id, UserAuthenticatedInfoToken authToken) {
+    return orderService
+        .getOrder(authToken.getPrincipal().userId(), id)
+        .orElseThrow(() -> new OrderNotFoundException(id));
+  }
+
+  /**
+   * Lists the orders of the user, newest first.
+   *
+   * @param cursor the nextCursor of the previous page, or absent for the first page
+   */
+  @GetMapping("/orders")
+  OrderPage all(
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "20") int limit,
+      UserAuthenticatedInfoToken authToken) {
+    return orderService.getOrders(authToken.getPrincipal().userId(), cursor, limit);
+  }
+
+  /**
+   * Streams all the orders of the user as NDJSON, see {@link OrderExporter}. The export runs on an
+   * MVC async thread, and stops when the client disconnects.
+   */
+  @GetMapping("/orders/export")
+  ResponseEntity<StreamingResponseBody> export(UserAuthenticatedInfoToken authToken) {
+    UUID buyerUserId = authToken.getPrincipal().userId();
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(OrderExporter.CONTENT_TYPE))
+        .body(outputStream -> orderExporter.export(buyerUserId, outputStream));
+  }
+
+  /**
+   * Creates many orders at once, where each order may fail on its own.
+   *
+   * @return the result of each request, in request order
+   */
+  @PostMapping("/orders/batch")
+  List<OrderRequestStatus> newOrders(
+      @Valid @RequestBody List<CreateOrderRequest> createOrderRequests,
+      UserAuthenticatedInfoToken authToken) {
+    List<OrderRequestStatus> statuses = new ArrayList<>(createOrderRequests.size());
+    List<OrderService.OrderRequest> orderRequests = new ArrayList<>();
+    List<Integer> orderRequestIndexes = new ArrayList<>();
+    for (CreateOrderRequest createOrderRequest : createOrderRequests) {
+      try {
+        orderRequests.add(
+            new OrderService.OrderRequest(
+                createOrderRequest.requestId(), toPurchaseItems(createOrderRequest)));
+        orderRequestIndexes.add(statuses.size());
+        statuses.add(null);
+      } catch (MyIllegalArgumentException e) {
+        statuses.add(OrderRequestStatus.failed(createOrderRequest.requestId(), e.getMessage()));
+      }
+    }
+
+    List<OrderRequestStatus> orderStatuses =
+        orderService.createOrders(authToken.getPrincipal().userId(), orderRequests);
+    for (int i = 0; i < orderStatuses.size(); i++) {
+      statuses.set(orderRequestIndexes.get(i), orderStatuses.get(i));
+    }
+    return statuses;
+  }
+
+  /** Returns once the request is queued. Poll {@link #orderRequestStatus} for the result. */
+  @PostMapping("/orders/async")
+  @ResponseStatus(HttpStatus.ACCEPTED)
+  OrderRequestStatus submitOrder(
+      @Valid @RequestBody CreateOrderRequest createOrderRequest,
+      UserAuthenticatedInfoToken authToken) {
+    return asyncOrderService.submit(
+        authToken.getPrincipal().userId(),
+        toPurchaseItems(createOrderRequest),
+        createOrderRequest.requestId());
+  }
+
+  @GetMapping("/orders/requests/{requestId}")
+  OrderRequestStatus orderRequestStatus(
+      @PathVariable UUID requestId, UserAuthenticatedInfoToken authToken) {
+    return asyncOrderService
+        .getStatus(authToken.getPrincipal().userId(), requestId)
+        .orElseThrow(() -> new OrderRequestNotFoundException(requestId));
+  }
+
+  private static PurchaseItems toPurchaseItems(CreateOrderRequest createOrderRequest) {
     PurchaseItems purchaseItems = new PurchaseItems();
     for (var entry : createOrderRequest.productIdToQuantity().entrySet()) {
       purchaseItems.setPurchaseItem(entry.getKey(), entry.getValue());
     }
-    return orderService.createOrder(
-        authToken.getPrincipal().userId(), purchaseItems, createOrderRequest.requestId());
+    return purchaseItems;
   }
 
   public record CreateOrderRequest(UUID requestId, Map<UUID, Integer> productIdToQuantity) {}
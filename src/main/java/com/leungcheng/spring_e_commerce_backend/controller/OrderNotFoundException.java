@@ -0,0 +1,9 @@
+package com.leungcheng.spring_e_commerce_backend.controller;
+
+import java.util.UUID;
+
+class OrderNotFoundException extends RuntimeException {
+  OrderNotFoundException(UUID id) {
+    super("Could not find order " + id);
+  }
+}
@@ -0,0 +1,9 @@
+package com.leungcheng.spring_e_commerce_backend.controller;
+
+import java.util.UUID;
+
+class OrderRequestNotFoundException extends RuntimeException {
+  OrderRequestNotFoundException(UUID requestId) {
+    super("Could not find order request " + requestId);
+  }
+}
@@ -2,17 +2,32 @@ package com.leungcheng.spring_e_commerce_backend.controller;
 
 import com.leungcheng.spring_e_commerce_backend.auth.UserAuthenticatedInfoToken;
 import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductCache;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductFilter;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductImportResult;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductImporter;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductLookup;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductPage;
 import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductService;
 import jakarta.validation.Valid;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
 public class ProductController {
-  @Autowired private ProductRepository repository;
+  @Autowired private ProductCache productCache;
+  @Autowired private ProductRepository productRepository;
+  @Autowired private ProductService productService;
+  @Autowired private ProductImporter productImporter;
 
   @PostMapping("/products")
   @ResponseStatus(HttpStatus.CREATED)
@@ -24,15 +39,94 @@ public class ProductController {
             .name(createProductRequest.name())
             .price(createProductRequest.price())
             .quantity(createProductRequest.quantity())
+            .stockShards(createProductRequest.stockShards())
             .userId(authToken.getPrincipal().userId())
             .build();
-    return repository.save(product);
+    return productService.createProduct(product);
   }
 
+  /**
+   * Imports the products of the user from the request body as it arrives, see {@link
+   * ProductImporter}. A row that is not a valid product is reported and skipped.
+   */
+  @PostMapping(value = "/products/import", consumes = ProductImporter.NDJSON_CONTENT_TYPE)
+  ProductImportResult importNdjson(InputStream body, UserAuthenticatedInfoToken authToken) {
+    return productImporter.importProducts(
+        authToken.getPrincipal().userId(), ProductImporter.Format.NDJSON, body);
+  }
+
+  /** Like {@link #importNdjson}, for CSV with a header line. */
+  @PostMapping(value = "/products/import", consumes = ProductImporter.CSV_CONTENT_TYPE)
+  ProductImportResult importCsv(InputStream body, UserAuthenticatedInfoToken authToken) {
+    return productImporter.importProducts(
+        authToken.getPrincipal().userId(), ProductImporter.Format.CSV, body);
+  }
+
+  /**
+   * @param userId only the products of this seller
+   * @param q only the products whose name contains it
+   */
+  @GetMapping("/products")
+  ProductPage all(
+      @RequestParam(required = false) UUID userId,
+      @RequestParam(required = false) BigDecimal minPrice,
+      @RequestParam(required = false) BigDecimal maxPrice,
+      @RequestParam(defaultValue = "false") boolean inStock,
+      @RequestParam(required = false) String q,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "20") int limit) {
+    return productService.searchProducts(
+        new ProductFilter(userId, minPrice, maxPrice, inStock, q), cursor, limit);
+  }
+
+  /**
+   * @param ids the products in the order of the response, see {@link
+   *     ProductService#lookUpProducts(List)}
+   */
+  @GetMapping(value = "/products", params = "ids")
+  ProductLookup some(@RequestParam List<UUID> ids) {
+    return productService.lookUpProducts(ids);
+  }
+
+  /**
+   * Like {@link #some}, for more ids than fit in a URL: up to {@link
+   * ProductService#MAX_BULK_LOOKUP_SIZE} instead of {@link ProductService#MAX_LOOKUP_SIZE}.
+   */
+  @PostMapping("/products/lookup")
+  ProductLookup lookUp(@RequestBody LookUpProductsRequest lookUpProductsRequest) {
+    return productService.lookUpProducts(
+        lookUpProductsRequest.ids(), ProductService.MAX_BULK_LOOKUP_SIZE);
+  }
+
+  /**
+   * Answers a matching {@code If-None-Match} with 304 from the cached product, or else from a
+   * lookup of its entity tag, without loading and serializing the product.
+   */
   @GetMapping("/products/{id}")
-  Product one(@PathVariable UUID id) {
-    return repository.findById(id).orElseThrow(() -> new ProductNotFoundException(id));
+  ResponseEntity<Product> one(
+      @PathVariable UUID id,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    Optional<Product> cachedProduct = productCache.getIfPresent(id);
+    if (cachedProduct.isEmpty() && ifNoneMatch != null) {
+      Optional<String> entityTag = productRepository.findEntityTagById(id);
+      if (entityTag.isPresent() && EntityTags.matches(ifNoneMatch, entityTag.get())) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entityTag.get()).build();
+      }
+    }
+
+    Product product =
+        cachedProduct
+            .or(() -> productCache.get(id))
+            .orElseThrow(() -> new ProductNotFoundException(id));
+    // Spring answers a matching If-None-Match with 304 from the ETag, before writing the body.
+    return ResponseEntity.ok().eTag(product.getEntityTag()).body(product);
   }
 
-  public record CreateProductRequest(String name, BigDecimal price, int quantity) {}
+  public record LookUpProductsRequest(List<UUID> ids) {}
+
+  /**
+   * @param stockShards optional, see {@link Product.Builder#stockShards(int)}
+   */
+  public record CreateProductRequest(
+      String name, BigDecimal price, int quantity, int stockShards) {}
 }
@@ -0,0 +1,44 @@
+package com.leungcheng.spring_e_commerce_backend.controller;
+
+import com.leungcheng.spring_e_commerce_backend.auth.UserAuthenticatedInfoToken;
+import com.leungcheng.spring_e_commerce_backend.domain.order.Order;
+import com.leungcheng.spring_e_commerce_backend.domain.order.PurchaseItems;
+import com.leungcheng.spring_e_commerce_backend.domain.order.Reservation;
+import com.leungcheng.spring_e_commerce_backend.domain.order.ReservationService;
+import jakarta.validation.Valid;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class ReservationController {
+  @Autowired private ReservationService reservationService;
+
+  @PostMapping("/reservations")
+  @ResponseStatus(HttpStatus.CREATED)
+  Reservation newReservation(
+      @Valid @RequestBody CreateReservationRequest createReservationRequest,
+      UserAuthenticatedInfoToken authToken) {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    for (var entry : createReservationRequest.productIdToQuantity().entrySet()) {
+      purchaseItems.setPurchaseItem(entry.getKey(), entry.getValue());
+    }
+    return reservationService.reserve(authToken.getPrincipal().userId(), purchaseItems);
+  }
+
+  @PostMapping("/reservations/{id}/confirm")
+  @ResponseStatus(HttpStatus.CREATED)
+  Order confirmReservation(@PathVariable UUID id, UserAuthenticatedInfoToken authToken) {
+    return reservationService
+        .confirm(authToken.getPrincipal().userId(), id)
+        .orElseThrow(() -> new ReservationNotFoundException(id));
+  }
+
+  public record CreateReservationRequest(Map<UUID, Integer> productIdToQuantity) {}
+}
@@ -0,0 +1,9 @@
+package com.leungcheng.spring_e_commerce_backend.controller;
+
+import java.util.UUID;
+
+class ReservationNotFoundException extends RuntimeException {
+  ReservationNotFoundException(UUID id) {
+    super("Could not find reservation " + id + ", or it has expired");
+  }
+}
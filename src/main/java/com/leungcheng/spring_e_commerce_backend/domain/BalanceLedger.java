@@ -0,0 +1,82 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Credits are appended to the balance_ledger table instead of being added to the users row, so
+ * concurrent orders of the same seller never update or lock the same row. The balance of a user is
+ * the users.balance snapshot plus the sum of the user's entries, see {@link User#getBalance()}.
+ *
+ * <p>Debits stay in place, because they have to be checked against the balance while the user is
+ * locked. The entries of the user are folded into the snapshot before that.
+ */
+@Component
+public class BalanceLedger {
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  /**
+   * Credits each user at most once per order, which the unique constraint on (order_id, user_id)
+   * enforces.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void credit(UUID orderId, Map<UUID, BigDecimal> userIdToAmount) {
+    credit(Map.of(orderId, userIdToAmount));
+  }
+
+  /** Credits the users of several orders with one batch of inserts. */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void credit(Map<UUID, Map<UUID, BigDecimal>> orderIdToUserIdToAmount) {
+    List<Object[]> rows = new ArrayList<>();
+    for (Map.Entry<UUID, Map<UUID, BigDecimal>> order : orderIdToUserIdToAmount.entrySet()) {
+      for (Map.Entry<UUID, BigDecimal> entry : order.getValue().entrySet()) {
+        rows.add(new Object[] {entry.getKey(), order.getKey(), entry.getValue()});
+      }
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO balance_ledger(user_id, order_id, delta) VALUES (?, ?, ?)", rows);
+  }
+
+  /**
+   * Locks the user and folds the user's entries into users.balance, so the balance can then be
+   * checked and debited in place, e.g. by {@link UserRepository#debitBalance}.
+   *
+   * @return false if the user does not exist
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public boolean fold(UUID userId) {
+    return Boolean.TRUE.equals(
+        jdbcTemplate.queryForObject("SELECT fold_balance_ledger(?)", Boolean.class, userId));
+  }
+
+  /**
+   * Folds the entries of up to {@code batchSize} users into users.balance. Users locked by running
+   * orders are skipped.
+   *
+   * @return the number of users folded
+   */
+  public int compact(int batchSize) {
+    Integer folded =
+        jdbcTemplate.queryForObject("SELECT compact_balance_ledger(?)", Integer.class, batchSize);
+    return folded == null ? 0 : folded;
+  }
+
+  /**
+   * @return how long the oldest entry has been waiting to be folded, or zero if there is none
+   */
+  public Duration getSettlementLag() {
+    Double seconds =
+        jdbcTemplate.queryForObject(
+            "SELECT EXTRACT(EPOCH FROM now() - MIN(created_at)) FROM balance_ledger", Double.class);
+    return seconds == null ? Duration.ZERO : Duration.ofMillis((long) (seconds * 1000));
+  }
+}
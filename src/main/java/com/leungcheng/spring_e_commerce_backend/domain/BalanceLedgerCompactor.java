@@ -0,0 +1,48 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settles the credits in the balance ledger in batches, and keeps the ledger short so deriving a
+ * balance stays cheap. Reads of {@link User#getBalance()} include the unsettled credits, so the lag
+ * only affects the users.balance snapshot.
+ */
+@Component
+class BalanceLedgerCompactor {
+  private final BalanceLedger balanceLedger;
+  private final int batchSize;
+  private final Counter settledUsers;
+  private final AtomicLong settlementLagMillis = new AtomicLong();
+
+  BalanceLedgerCompactor(
+      BalanceLedger balanceLedger,
+      @Value("${balanceLedger.compactionBatchSize}") int batchSize,
+      MeterRegistry meterRegistry) {
+    this.balanceLedger = balanceLedger;
+    this.batchSize = batchSize;
+    this.settledUsers =
+        Counter.builder("balance_ledger.settled.users")
+            .description("Users whose ledger entries were folded into their balance")
+            .register(meterRegistry);
+    Gauge.builder("balance_ledger.settlement.lag", settlementLagMillis, lag -> lag.get() / 1000.0)
+        .description("Age of the oldest unsettled ledger entry after the last settlement run")
+        .baseUnit("seconds")
+        .register(meterRegistry);
+  }
+
+  @Scheduled(fixedDelayString = "${balanceLedger.compactionInterval}")
+  void compact() {
+    int folded;
+    do {
+      folded = balanceLedger.compact(batchSize);
+      settledUsers.increment(folded);
+    } while (folded == batchSize); // A full batch means that there may be more users to fold.
+    settlementLagMillis.set(balanceLedger.getSettlementLag().toMillis());
+  }
+}
@@ -0,0 +1,373 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tells the in-process caches of the other nodes which entities have changed, with PostgreSQL
+ * {@code NOTIFY} on the {@value #CHANNEL} channel. An invalidation published within a transaction
+ * is only sent once it commits, and is dropped if it rolls back.
+ *
+ * <p>The invalidations are not sent by the transactions that publish them, which would cost each of
+ * them a round trip and make their commits wait on each other for the lock PostgreSQL takes to
+ * queue a notification. They are collected instead, and sent together every {@code
+ * cache.invalidation.publishInterval} by a thread of their own, in one statement.
+ *
+ * <p>Each node listens on one connection of its own, outside of the pool. The notifications that
+ * arrive within {@code cache.invalidation.coalesceWindow} of each other are handed to the
+ * subscribers together. Notifications sent while the connection is down are lost, so the
+ * subscribers evict everything whenever it is opened again. A malformed notification or a failing
+ * subscriber is logged and skipped, and any other failure reopens the connection, so that the one
+ * listener thread keeps running.
+ */
+@Component
+class CacheInvalidationBus {
+  private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+  static final String CHANNEL = "cache_invalidation";
+  static final String LISTENER_APPLICATION_NAME = "cache-invalidation-listener";
+
+  /** Keeps a payload of 36 character ids within the 8000 bytes allowed by PostgreSQL. */
+  private static final int MAX_IDS_PER_NOTIFICATION = 200;
+
+  private static final String ALL_IDS = "*";
+  private static final long IDLE_CHECK_MILLIS = 10_000;
+
+  interface Subscriber {
+    void evict(Collection<UUID> ids);
+
+    void evictAll();
+  }
+
+  /** Set apart from the notifications of this node, which has already evicted its entries. */
+  private final String nodeId = UUID.randomUUID().toString();
+
+  private final Map<String, List<Subscriber>> entityToSubscribers = new ConcurrentHashMap<>();
+  private final JdbcTemplate jdbcTemplate;
+  private final DataSourceProperties dataSourceProperties;
+  private final boolean enabled;
+  private final long coalesceWindowMillis;
+  private final long reconnectDelayMillis;
+  private final long publishIntervalMillis;
+  private final Counter receivedNotifications;
+  private final Counter flushes;
+
+  private final ExecutorService listener =
+      Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder()
+              .setNameFormat("cache-invalidation-listener")
+              .setDaemon(true)
+              .build());
+
+  private final ScheduledExecutorService publisher =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setNameFormat("cache-invalidation-publisher")
+              .setDaemon(true)
+              .build());
+
+  private volatile Connection connection;
+
+  /** The invalidations not sent yet, guarded by {@code this}. */
+  private Map<String, Set<UUID>> pendingEntityToIds = new HashMap<>();
+
+  private Set<String> pendingFlushedEntities = new HashSet<>();
+
+  CacheInvalidationBus(
+      JdbcTemplate jdbcTemplate,
+      DataSourceProperties dataSourceProperties,
+      @Value("${cache.invalidation.enabled}") boolean enabled,
+      @Value("${cache.invalidation.coalesceWindow}") Duration coalesceWindow,
+      @Value("${cache.invalidation.reconnectDelay}") Duration reconnectDelay,
+      @Value("${cache.invalidation.publishInterval}") Duration publishInterval,
+      MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.dataSourceProperties = dataSourceProperties;
+    this.enabled = enabled;
+    this.coalesceWindowMillis = coalesceWindow.toMillis();
+    this.reconnectDelayMillis = reconnectDelay.toMillis();
+    this.publishIntervalMillis = publishInterval.toMillis();
+    this.receivedNotifications =
+        Counter.builder("cache.invalidation.received")
+            .description("Cache invalidations received from the other nodes")
+            .register(meterRegistry);
+    this.flushes =
+        Counter.builder("cache.invalidation.flushes")
+            .description("Full evictions after the listen connection was opened")
+            .register(meterRegistry);
+
+    if (enabled) {
+      listener.execute(this::listen);
+      publisher.scheduleWithFixedDelay(
+          this::sendPending, publishIntervalMillis, publishIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  void subscribe(String entity, Subscriber subscriber) {
+    entityToSubscribers.computeIfAbsent(entity, e -> new CopyOnWriteArrayList<>()).add(subscriber);
+  }
+
+  /**
+   * Tells the other nodes once the current transaction, if any, has committed, within {@code
+   * cache.invalidation.publishInterval}.
+   */
+  void publish(String entity, Collection<UUID> ids) {
+    if (!enabled || ids.isEmpty()) {
+      return;
+    }
+    List<UUID> copiedIds = List.copyOf(ids);
+    afterCommit(() -> addPending(entity, copiedIds));
+  }
+
+  /** Like {@link #publish} for all the entities. */
+  void publishAll(String entity) {
+    if (enabled) {
+      afterCommit(() -> addPendingFlush(entity));
+    }
+  }
+
+  private synchronized void addPending(String entity, Collection<UUID> ids) {
+    if (!pendingFlushedEntities.contains(entity)) {
+      pendingEntityToIds.computeIfAbsent(entity, e -> new HashSet<>()).addAll(ids);
+    }
+  }
+
+  private synchronized void addPendingFlush(String entity) {
+    pendingFlushedEntities.add(entity);
+    pendingEntityToIds.remove(entity);
+  }
+
+  private void sendPending() {
+    Map<String, Set<UUID>> entityToIds;
+    Set<String> flushedEntities;
+    synchronized (this) {
+      entityToIds = pendingEntityToIds;
+      flushedEntities = pendingFlushedEntities;
+      pendingEntityToIds = new HashMap<>();
+      pendingFlushedEntities = new HashSet<>();
+    }
+
+    List<String> payloads = new ArrayList<>();
+    for (String entity : flushedEntities) {
+      payloads.add(nodeId + " " + entity + " " + ALL_IDS);
+    }
+    for (Map.Entry<String, Set<UUID>> entry : entityToIds.entrySet()) {
+      for (List<UUID> chunk : Iterables.partition(entry.getValue(), MAX_IDS_PER_NOTIFICATION)) {
+        StringBuilder joinedIds = new StringBuilder();
+        for (UUID id : chunk) {
+          joinedIds.append(joinedIds.isEmpty() ? "" : ",").append(id);
+        }
+        payloads.add(nodeId + " " + entry.getKey() + " " + joinedIds);
+      }
+    }
+    if (payloads.isEmpty()) {
+      return;
+    }
+
+    try {
+      jdbcTemplate.query(
+          "SELECT pg_notify(?, payload) FROM unnest(?::text[]) AS payload",
+          (RowCallbackHandler) rs -> {},
+          CHANNEL,
+          payloads.toArray(String[]::new));
+    } catch (RuntimeException e) {
+      // Kept for the next attempt, since the other nodes would serve stale entries without it.
+      logger.warn("Failed to send {} cache invalidations, retrying", payloads.size(), e);
+      synchronized (this) {
+        entityToIds.forEach(this::addPending);
+        flushedEntities.forEach(this::addPendingFlush);
+      }
+    }
+  }
+
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+
+  private void listen() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try (Connection listenConnection = openConnection()) {
+        connection = listenConnection;
+        try (Statement statement = listenConnection.createStatement()) {
+          statement.execute("LISTEN " + CHANNEL);
+        }
+        flushes.increment();
+        entityToSubscribers
+            .values()
+            .forEach(subscribers -> subscribers.forEach(Subscriber::evictAll));
+        receive(listenConnection);
+      } catch (SQLException | RuntimeException e) {
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        logger.warn("Lost the cache invalidation connection, reconnecting", e);
+        try {
+          Thread.sleep(reconnectDelayMillis);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      }
+    }
+  }
+
+  private void receive(Connection listenConnection) throws SQLException {
+    PGConnection pgConnection = listenConnection.unwrap(PGConnection.class);
+    while (!Thread.currentThread().isInterrupted()) {
+      PGNotification[] notifications = pgConnection.getNotifications((int) IDLE_CHECK_MILLIS);
+      if (notifications == null || notifications.length == 0) {
+        // Finds a connection that was dropped without being closed, as no error reaches us then.
+        if (!listenConnection.isValid((int) (IDLE_CHECK_MILLIS / 1000))) {
+          throw new SQLException("The cache invalidation connection is no longer valid");
+        }
+        continue;
+      }
+
+      Map<String, Set<UUID>> entityToIds = new HashMap<>();
+      Set<String> flushedEntities = new HashSet<>();
+      collect(notifications, entityToIds, flushedEntities);
+      long deadline = System.currentTimeMillis() + coalesceWindowMillis;
+      for (long remaining = coalesceWindowMillis;
+          remaining > 0;
+          remaining = deadline - System.currentTimeMillis()) {
+        collect(pgConnection.getNotifications((int) remaining), entityToIds, flushedEntities);
+      }
+      dispatch(entityToIds, flushedEntities);
+    }
+  }
+
+  private void collect(
+      PGNotification[] notifications,
+      Map<String, Set<UUID>> entityToIds,
+      Set<String> flushedEntities) {
+    if (notifications == null) {
+      return;
+    }
+    for (PGNotification notification : notifications) {
+      String[] parts = notification.getParameter().split(" ", 3);
+      if (parts.length != 3 || parts[0].equals(nodeId)) {
+        continue;
+      }
+      receivedNotifications.increment();
+      String entity = parts[1];
+      if (parts[2].equals(ALL_IDS)) {
+        flushedEntities.add(entity);
+        continue;
+      }
+      List<UUID> ids = new ArrayList<>();
+      try {
+        for (String id : parts[2].split(",")) {
+          ids.add(UUID.fromString(id));
+        }
+      } catch (IllegalArgumentException e) {
+        logger.warn("Skipped a malformed cache invalidation: {}", notification.getParameter(), e);
+        continue;
+      }
+      entityToIds.computeIfAbsent(entity, e -> new HashSet<>()).addAll(ids);
+    }
+  }
+
+  private void dispatch(Map<String, Set<UUID>> entityToIds, Set<String> flushedEntities) {
+    for (String entity : flushedEntities) {
+      for (Subscriber subscriber : entityToSubscribers.getOrDefault(entity, List.of())) {
+        deliver(entity, subscriber::evictAll);
+      }
+    }
+    for (Map.Entry<String, Set<UUID>> entry : entityToIds.entrySet()) {
+      if (flushedEntities.contains(entry.getKey())) {
+        continue;
+      }
+      for (Subscriber subscriber : entityToSubscribers.getOrDefault(entry.getKey(), List.of())) {
+        deliver(entry.getKey(), () -> subscriber.evict(entry.getValue()));
+      }
+    }
+  }
+
+  /** A failing subscriber does not keep the others from their evictions. */
+  private static void deliver(String entity, Runnable eviction) {
+    try {
+      eviction.run();
+    } catch (RuntimeException e) {
+      logger.error("Failed to evict cached {} entities", entity, e);
+    }
+  }
+
+  private Connection openConnection() throws SQLException {
+    Properties properties = new Properties();
+    // Left to the URL or the driver's defaults if not configured.
+    String username = dataSourceProperties.determineUsername();
+    if (username != null) {
+      properties.setProperty("user", username);
+    }
+    String password = dataSourceProperties.determinePassword();
+    if (password != null) {
+      properties.setProperty("password", password);
+    }
+    properties.setProperty("ApplicationName", LISTENER_APPLICATION_NAME);
+    return DriverManager.getConnection(dataSourceProperties.determineUrl(), properties);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    publisher.shutdownNow();
+    try {
+      if (publisher.awaitTermination(1, TimeUnit.SECONDS)) {
+        sendPending();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    listener.shutdownNow();
+    Connection listenConnection = connection;
+    if (listenConnection != null) {
+      try {
+        listenConnection.close();
+      } catch (SQLException e) {
+        logger.debug("Failed to close the cache invalidation connection", e);
+      }
+    }
+  }
+}
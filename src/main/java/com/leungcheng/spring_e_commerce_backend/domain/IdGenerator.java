@@ -0,0 +1,29 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import java.util.UUID;
+
+/**
+ * Generates the ids of new entities, see {@link Ids}. Must be safe to call from many threads at
+ * once.
+ */
+public interface IdGenerator {
+  /** Random version 4 UUIDs, which spread the inserts over the whole primary key index. */
+  IdGenerator RANDOM = UUID::randomUUID;
+
+  UUID generate();
+
+  /** The generators that can be chosen with the {@code ids.generator} property. */
+  enum Type {
+    /** See {@link TimeOrderedIdGenerator}. */
+    TIME_ORDERED,
+    /** See {@link IdGenerator#RANDOM}. */
+    RANDOM;
+
+    public IdGenerator create() {
+      return switch (this) {
+        case TIME_ORDERED -> new TimeOrderedIdGenerator();
+        case RANDOM -> IdGenerator.RANDOM;
+      };
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import java.util.UUID;
+
+/**
+ * The ids of new entities. They are assigned in Java rather than by the database, so that an entity
+ * has its id before it is saved.
+ *
+ * <p>The generator is chosen with the {@code ids.generator} property, see {@link
+ * com.leungcheng.spring_e_commerce_backend.IdsConfig}. Entities built before the application starts
+ * get time-ordered ids.
+ */
+public final class Ids {
+  private static volatile IdGenerator generator = IdGenerator.Type.TIME_ORDERED.create();
+
+  private Ids() {}
+
+  public static UUID next() {
+    return generator.generate();
+  }
+
+  public static void use(IdGenerator generator) {
+    Ids.generator = generator;
+  }
+}
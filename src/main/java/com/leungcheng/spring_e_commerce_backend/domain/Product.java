@@ -1,26 +1,41 @@
 package com.leungcheng.spring_e_commerce_backend.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.leungcheng.spring_e_commerce_backend.validation.ObjectValidator;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.Version;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import java.math.BigDecimal;
 import java.util.UUID;
+import org.hibernate.annotations.Formula;
+import org.springframework.data.domain.Persistable;
 
 @Entity
 @Table(name = "products")
-public class Product {
+public class Product implements Persistable<UUID> {
+  public static final int MAX_STOCK_SHARDS = 64;
+
   public static class Builder {
     private String name;
     private BigDecimal price;
     private int quantity;
     private UUID userId;
-    private UUID id = UUID.randomUUID();
+    private int stockShards;
+    private UUID id = Ids.next();
+    private long version;
+    private boolean isNew = true;
 
     private Builder id(UUID id) {
       this.id = id;
@@ -47,6 +62,15 @@ public class Product {
       return this;
     }
 
+    /**
+     * Splits the stock over the given number of shards instead of keeping it in the product row, so
+     * that concurrent orders of a hot product update different rows. 0 means not sharded.
+     */
+    public Builder stockShards(int stockShards) {
+      this.stockShards = stockShards;
+      return this;
+    }
+
     public Product build() {
       Product product = new Product();
       product.id = id;
@@ -54,6 +78,9 @@ public class Product {
       product.price = price;
       product.quantity = quantity;
       product.userId = userId;
+      product.stockShards = stockShards;
+      product.version = version;
+      product.isNew = isNew;
       ObjectValidator.validate(product);
 
       return product;
@@ -62,8 +89,22 @@ public class Product {
 
   private Product() {}
 
+  /**
+   * The built product keeps the id and the version, and is saved as an update if this product is
+   * persisted.
+   */
   public Builder toBuilder() {
-    return new Builder().name(name).price(price).quantity(quantity).userId(userId).id(id);
+    Builder builder =
+        new Builder()
+            .name(name)
+            .price(price)
+            .quantity(quantity)
+            .userId(userId)
+            .stockShards(stockShards)
+            .id(id);
+    builder.version = version;
+    builder.isNew = isNew;
+    return builder;
   }
 
   @Id
@@ -72,15 +113,54 @@ public class Product {
 
   @NotNull private UUID userId;
 
-  @NotBlank private String name;
+  @NotBlank
+  @Size(max = 255)
+  private String name;
 
+  /** Less than the largest number with the integer digits that the column holds. */
   @Column(precision = BigDecimalSettings.PRECISION, scale = BigDecimalSettings.SCALE)
-  @Min(0)
+  @NotNull @Min(0)
+  @DecimalMax(value = "1000000000", inclusive = false)
   private BigDecimal price;
 
   @Min(0)
   private int quantity;
 
+  @Min(0)
+  @Max(MAX_STOCK_SHARDS)
+  private int stockShards;
+
+  /** The sum of the shards, only loaded when the stock is sharded. */
+  @Formula(
+      "(case when stock_shards = 0 then null else (select coalesce(sum(s.quantity), 0)"
+          + " from product_stock_shards s where s.product_id = id) end)")
+  private Integer shardedQuantity;
+
+  /**
+   * Incremented by every update of the row, also by the SQL updates of the stock, see the V10
+   * migration.
+   */
+  @Version private long version;
+
+  /**
+   * The id is assigned before the product is saved, so Spring Data cannot tell a new product by its
+   * id, and would merge it with a SELECT before the INSERT.
+   */
+  @Transient private boolean isNew = true;
+
+  @Override
+  @JsonIgnore
+  public boolean isNew() {
+    return isNew;
+  }
+
+  @PostLoad
+  @PostPersist
+  void markNotNew() {
+    isNew = false;
+  }
+
+  @Override
   public UUID getId() {
     return id;
   }
@@ -97,7 +177,33 @@ public class Product {
     return price;
   }
 
+  /**
+   * @return the quantity in the product row, or the sum of the shards if the stock is sharded and
+   *     the product is loaded from the database
+   */
   public int getQuantity() {
-    return quantity;
+    return shardedQuantity != null ? shardedQuantity : quantity;
+  }
+
+  /**
+   * Changes whenever the JSON of the product does, which is the row and, if the stock is sharded,
+   * the sum of the shards.
+   */
+  @JsonIgnore
+  public String getEntityTag() {
+    return entityTag(version, shardedQuantity);
+  }
+
+  static String entityTag(long version, Integer shardedQuantity) {
+    return shardedQuantity == null ? Long.toString(version) : version + "-" + shardedQuantity;
+  }
+
+  public int getStockShards() {
+    return stockShards;
+  }
+
+  @JsonIgnore
+  public boolean isStockSharded() {
+    return stockShards > 0;
   }
 }
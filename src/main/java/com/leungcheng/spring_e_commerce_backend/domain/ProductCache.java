@@ -0,0 +1,221 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps recently read products in memory, at most {@code product.cache.maximumSize} of them for at
+ * most {@code product.cache.ttl}. Concurrent misses of the same product wait for a single load.
+ * Hits, misses and load times are exposed as the {@code cache.*} metrics tagged with {@code
+ * cache=product}.
+ *
+ * <p>With {@code product.cache.maxStockStaleness} of 0 the stock is exact: a product is dropped
+ * from the cache once a transaction that changed its stock has committed, and a load that overlaps
+ * such a commit is not served again. Otherwise the stock changes are not tracked, and a product is
+ * reloaded once it is older than the staleness allowed.
+ */
+@Component
+public class ProductCache {
+  /**
+   * Invalidations of products that hash to the same stripe. A load that started before an
+   * invalidation of its stripe may have read the old row, so it is loaded again. A stripe shared
+   * with another product only costs an extra load.
+   */
+  private static final int GENERATION_STRIPES = 1024;
+
+  private static final String INVALIDATION_ENTITY = "product";
+
+  private record CachedProduct(Product product, long generation) {}
+
+  /** Thrown by a load to leave a missing product out of the cache. */
+  private static class ProductNotFound extends Exception {
+    ProductNotFound() {
+      super(null, null, false, false);
+    }
+  }
+
+  private final ProductRepository productRepository;
+  private final CacheInvalidationBus invalidationBus;
+  private final boolean exactStock;
+  private final LoadingCache<UUID, CachedProduct> cache;
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  ProductCache(
+      ProductRepository productRepository,
+      CacheInvalidationBus invalidationBus,
+      @Value("${product.cache.maximumSize}") long maximumSize,
+      @Value("${product.cache.ttl}") Duration ttl,
+      @Value("${product.cache.maxStockStaleness}") Duration maxStockStaleness,
+      MeterRegistry meterRegistry) {
+    this.productRepository = productRepository;
+    this.invalidationBus = invalidationBus;
+    this.exactStock = maxStockStaleness.isZero();
+    Duration expiry = exactStock || ttl.compareTo(maxStockStaleness) < 0 ? ttl : maxStockStaleness;
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expiry)
+            .recordStats()
+            .build(
+                new CacheLoader<>() {
+                  @Override
+                  public CachedProduct load(UUID productId) throws ProductNotFound {
+                    return loadProduct(productId);
+                  }
+                });
+    GuavaCacheMetrics.monitor(meterRegistry, cache, "product");
+    invalidationBus.subscribe(
+        INVALIDATION_ENTITY,
+        new CacheInvalidationBus.Subscriber() {
+          @Override
+          public void evict(Collection<UUID> productIds) {
+            ProductCache.this.evict(productIds);
+          }
+
+          @Override
+          public void evictAll() {
+            ProductCache.this.evictAll();
+          }
+        });
+  }
+
+  public Optional<Product> get(UUID productId) {
+    try {
+      CachedProduct cachedProduct = cache.get(productId);
+      if (cachedProduct.generation() == generations.get(stripe(productId))) {
+        return Optional.of(cachedProduct.product());
+      }
+      cache.asMap().remove(productId, cachedProduct);
+      return Optional.of(cache.get(productId).product());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof ProductNotFound) {
+        return Optional.empty();
+      }
+      throw new UncheckedExecutionException(e.getCause());
+    }
+  }
+
+  /** Like {@link #get}, without loading the product if it is not cached. */
+  public Optional<Product> getIfPresent(UUID productId) {
+    CachedProduct cachedProduct = cache.getIfPresent(productId);
+    if (cachedProduct == null || cachedProduct.generation() != generations.get(stripe(productId))) {
+      return Optional.empty();
+    }
+    return Optional.of(cachedProduct.product());
+  }
+
+  /**
+   * Like {@link #get} for several products, where the products that are not cached are loaded with
+   * one query. Unlike {@link #get}, concurrent misses are not coalesced.
+   *
+   * @return the products that exist, by id
+   */
+  public Map<UUID, Product> getAll(Collection<UUID> productIds) {
+    Map<UUID, Product> idToProduct = new HashMap<>();
+    List<UUID> missingIds = new ArrayList<>();
+    for (UUID productId : productIds) {
+      getIfPresent(productId)
+          .ifPresentOrElse(
+              product -> idToProduct.put(productId, product), () -> missingIds.add(productId));
+    }
+    if (missingIds.isEmpty()) {
+      return idToProduct;
+    }
+
+    // Taken before reading, as in loadProduct.
+    Map<UUID, Long> idToGeneration = new HashMap<>();
+    for (UUID productId : missingIds) {
+      idToGeneration.put(productId, generations.get(stripe(productId)));
+    }
+    for (Product product : productRepository.findAllById(missingIds)) {
+      idToProduct.put(product.getId(), product);
+      cache
+          .asMap()
+          .putIfAbsent(
+              product.getId(), new CachedProduct(product, idToGeneration.get(product.getId())));
+    }
+    return idToProduct;
+  }
+
+  /**
+   * Drops the products once the current transaction, if any, has committed, here and on the other
+   * nodes.
+   */
+  public void invalidate(Collection<UUID> productIds) {
+    invalidationBus.publish(INVALIDATION_ENTITY, productIds);
+    afterCommit(() -> evict(productIds));
+  }
+
+  /** Like {@link #invalidate} when the stock must be exact, or else does nothing. */
+  public void invalidateStock(Collection<UUID> productIds) {
+    if (exactStock) {
+      invalidate(productIds);
+    }
+  }
+
+  /** Like {@link #invalidateStock} for the products whose ids are not known. */
+  public void invalidateAllStock() {
+    if (!exactStock) {
+      return;
+    }
+    invalidationBus.publishAll(INVALIDATION_ENTITY);
+    afterCommit(this::evictAll);
+  }
+
+  private void evict(Collection<UUID> productIds) {
+    for (UUID productId : productIds) {
+      generations.incrementAndGet(stripe(productId));
+    }
+    cache.invalidateAll(productIds);
+  }
+
+  private void evictAll() {
+    for (int i = 0; i < GENERATION_STRIPES; i++) {
+      generations.incrementAndGet(i);
+    }
+    cache.invalidateAll();
+  }
+
+  private CachedProduct loadProduct(UUID productId) throws ProductNotFound {
+    // Taken before reading, so that a commit during the read makes the result outdated.
+    long generation = generations.get(stripe(productId));
+    Product product = productRepository.findById(productId).orElseThrow(ProductNotFound::new);
+    return new CachedProduct(product, generation);
+  }
+
+  private static int stripe(UUID productId) {
+    return Math.floorMod(productId.hashCode(), GENERATION_STRIPES);
+  }
+
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+}
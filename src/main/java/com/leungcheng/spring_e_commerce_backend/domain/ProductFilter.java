@@ -0,0 +1,19 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * The filters of {@link ProductService#searchProducts}. A null filter is not applied.
+ *
+ * @param minPrice inclusive
+ * @param maxPrice inclusive
+ * @param inStockOnly leaves out the products that have no stock, sharded or not
+ * @param nameContains matched case-insensitively anywhere in the name
+ */
+public record ProductFilter(
+    UUID userId,
+    BigDecimal minPrice,
+    BigDecimal maxPrice,
+    boolean inStockOnly,
+    String nameContains) {}
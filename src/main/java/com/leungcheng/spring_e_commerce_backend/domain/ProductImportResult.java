@@ -0,0 +1,15 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import java.util.List;
+
+/**
+ * @param importedCount the rows saved as products
+ * @param rejectedCount the rows not saved, which can be more than the errors reported
+ * @param errors the first of the rejected rows, in line order
+ */
+public record ProductImportResult(long importedCount, long rejectedCount, List<RowError> errors) {
+  /**
+   * @param line the line of the row in the file, from 1
+   */
+  public record RowError(long line, String message) {}
+}
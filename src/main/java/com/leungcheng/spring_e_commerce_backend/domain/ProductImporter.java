@@ -0,0 +1,363 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import com.leungcheng.spring_e_commerce_backend.validation.ObjectValidator.ObjectValidationException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Imports the products of a seller from NDJSON or CSV, one product per line. The input is read a
+ * line at a time, each row is built with {@link Product.Builder} and so validated like a product
+ * created by POST /products, and the valid rows are inserted with a JDBC batch every {@code
+ * product.import.chunkSize} rows, so the memory used does not grow with the size of the input.
+ */
+@Component
+public class ProductImporter {
+  public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+  public static final String CSV_CONTENT_TYPE = "text/csv";
+
+  /** A longer line is rejected without being held in memory. */
+  static final int MAX_LINE_LENGTH = 8192;
+
+  private static final String INSERT_SQL =
+      "INSERT INTO products(id, user_id, name, price, quantity, stock_shards)"
+          + " VALUES (?, ?, ?, ?, ?, ?)";
+
+  public enum Format {
+    /** A JSON object per line, with the fields of POST /products. */
+    NDJSON,
+    /**
+     * A header line naming the columns, out of name, price, quantity and the optional stockShards,
+     * and then a row per line. A quoted field cannot span lines.
+     */
+    CSV
+  }
+
+  record ImportedRow(String name, BigDecimal price, int quantity, int stockShards) {}
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final ShardedStock shardedStock;
+  private final ObjectMapper objectMapper;
+  private final int chunkSize;
+  private final int maxReportedErrors;
+
+  ProductImporter(
+      JdbcTemplate jdbcTemplate,
+      TransactionTemplate transactionTemplate,
+      ShardedStock shardedStock,
+      ObjectMapper objectMapper,
+      @Value("${product.import.chunkSize}") int chunkSize,
+      @Value("${product.import.maxReportedErrors}") int maxReportedErrors) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.shardedStock = shardedStock;
+    this.objectMapper = objectMapper;
+    this.chunkSize = chunkSize;
+    this.maxReportedErrors = maxReportedErrors;
+  }
+
+  /**
+   * Each chunk is inserted in its own transaction, so the chunks before a failure to read the input
+   * stay imported. The ids are new, so no node can have cached them, and nothing is invalidated.
+   *
+   * @throws MyIllegalArgumentException if the CSV header is missing or invalid
+   * @throws UncheckedIOException if reading fails
+   */
+  public ProductImportResult importProducts(
+      UUID sellerUserId, Format format, InputStream inputStream) {
+    LineReader lineReader =
+        new LineReader(
+            new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)));
+    Import anImport = new Import(sellerUserId);
+    try {
+      RowParser rowParser =
+          format == Format.CSV ? CsvRowParser.fromHeader(lineReader) : this::parseJson;
+      String line;
+      while ((line = lineReader.readLine()) != null) {
+        if (line.length() > MAX_LINE_LENGTH) {
+          anImport.reject(
+              lineReader.lineNumber, "Line is longer than " + MAX_LINE_LENGTH + " characters");
+        } else if (!line.isBlank()) {
+          anImport.add(lineReader.lineNumber, rowParser, line);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    anImport.insertPending();
+    return anImport.result();
+  }
+
+  private ImportedRow parseJson(String line) {
+    ImportedRow row;
+    try {
+      row = objectMapper.readValue(line, ImportedRow.class);
+    } catch (JsonProcessingException e) {
+      throw new MyIllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+    }
+    if (row == null) {
+      throw new MyIllegalArgumentException("Row must be a JSON object");
+    }
+    return row;
+  }
+
+  private interface RowParser {
+    /**
+     * @throws MyIllegalArgumentException if the line is not a row
+     */
+    ImportedRow parse(String line);
+  }
+
+  /** The counts and the products not inserted yet. */
+  private class Import {
+    private final UUID sellerUserId;
+    private final List<Product> pending = new ArrayList<>();
+    private final List<ProductImportResult.RowError> errors = new ArrayList<>();
+    private long importedCount = 0;
+    private long rejectedCount = 0;
+
+    Import(UUID sellerUserId) {
+      this.sellerUserId = sellerUserId;
+    }
+
+    void add(long lineNumber, RowParser rowParser, String line) {
+      Product product;
+      try {
+        ImportedRow row = rowParser.parse(line);
+        product =
+            new Product.Builder()
+                .name(row.name())
+                .price(row.price())
+                .quantity(row.quantity())
+                .stockShards(row.stockShards())
+                .userId(sellerUserId)
+                .build();
+      } catch (MyIllegalArgumentException e) {
+        reject(lineNumber, e.getMessage());
+        return;
+      } catch (ObjectValidationException e) {
+        reject(lineNumber, e.getFirstErrorField() + ": " + e.getFirstErrorMessage());
+        return;
+      }
+
+      pending.add(product);
+      if (pending.size() >= chunkSize) {
+        insertPending();
+      }
+    }
+
+    void reject(long lineNumber, String message) {
+      rejectedCount++;
+      if (errors.size() < maxReportedErrors) {
+        errors.add(new ProductImportResult.RowError(lineNumber, message));
+      }
+    }
+
+    void insertPending() {
+      if (pending.isEmpty()) {
+        return;
+      }
+      transactionTemplate.executeWithoutResult(
+          status -> {
+            jdbcTemplate.batchUpdate(
+                INSERT_SQL,
+                pending,
+                pending.size(),
+                (ps, product) -> {
+                  ps.setObject(1, product.getId());
+                  ps.setObject(2, product.getUserId());
+                  ps.setString(3, product.getName());
+                  ps.setBigDecimal(4, product.getPrice());
+                  // The stock of a sharded product lives in the shards, like in createProduct.
+                  ps.setInt(5, product.isStockSharded() ? 0 : product.getQuantity());
+                  ps.setInt(6, product.getStockShards());
+                });
+            List<Product> shardedProducts =
+                pending.stream().filter(Product::isStockSharded).toList();
+            if (!shardedProducts.isEmpty()) {
+              shardedStock.createShards(shardedProducts);
+            }
+          });
+      importedCount += pending.size();
+      pending.clear();
+    }
+
+    ProductImportResult result() {
+      return new ProductImportResult(importedCount, rejectedCount, List.copyOf(errors));
+    }
+  }
+
+  private static class CsvRowParser implements RowParser {
+    private static final List<String> COLUMNS = List.of("name", "price", "quantity", "stockShards");
+    private static final List<String> REQUIRED_COLUMNS = List.of("name", "price", "quantity");
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final int fieldCount;
+    // The index of each of the COLUMNS in a row, or -1 if the column is absent.
+    private final int[] fieldIndexes = new int[COLUMNS.size()];
+
+    private CsvRowParser(List<String> header) {
+      fieldCount = header.size();
+      for (int i = 0; i < COLUMNS.size(); i++) {
+        fieldIndexes[i] = header.indexOf(COLUMNS.get(i));
+        if (fieldIndexes[i] != header.lastIndexOf(COLUMNS.get(i))) {
+          throw new MyIllegalArgumentException("Repeated CSV column: " + COLUMNS.get(i));
+        }
+      }
+      for (String column : header) {
+        if (!COLUMNS.contains(column)) {
+          throw new MyIllegalArgumentException("Unknown CSV column: " + column);
+        }
+      }
+      for (String column : REQUIRED_COLUMNS) {
+        if (!header.contains(column)) {
+          throw new MyIllegalArgumentException("Missing CSV column: " + column);
+        }
+      }
+    }
+
+    static CsvRowParser fromHeader(LineReader lineReader) throws IOException {
+      String line = lineReader.readLine();
+      if (line == null || line.isBlank()) {
+        throw new MyIllegalArgumentException("Missing CSV header");
+      }
+      if (line.length() > MAX_LINE_LENGTH) {
+        throw new MyIllegalArgumentException("CSV header is too long");
+      }
+      if (line.charAt(0) == BYTE_ORDER_MARK) {
+        line = line.substring(1);
+      }
+      return new CsvRowParser(splitFields(line).stream().map(String::strip).toList());
+    }
+
+    @Override
+    public ImportedRow parse(String line) {
+      List<String> fields = splitFields(line);
+      if (fields.size() != fieldCount) {
+        throw new MyIllegalArgumentException(
+            "Expected " + fieldCount + " fields but found " + fields.size());
+      }
+      String stockShards = field(fields, 3);
+      return new ImportedRow(
+          field(fields, 0),
+          parseDecimal("price", field(fields, 1)),
+          parseInt("quantity", field(fields, 2)),
+          stockShards == null || stockShards.isBlank() ? 0 : parseInt("stockShards", stockShards));
+    }
+
+    private String field(List<String> fields, int column) {
+      return fieldIndexes[column] < 0 ? null : fields.get(fieldIndexes[column]);
+    }
+
+    private static BigDecimal parseDecimal(String column, String value) {
+      try {
+        return new BigDecimal(value.strip());
+      } catch (NumberFormatException e) {
+        throw new MyIllegalArgumentException(column + ": must be a number");
+      }
+    }
+
+    private static int parseInt(String column, String value) {
+      try {
+        return Integer.parseInt(value.strip());
+      } catch (NumberFormatException e) {
+        throw new MyIllegalArgumentException(column + ": must be an integer");
+      }
+    }
+
+    /** Splits a line at the commas outside of quotes, where a quote in a quoted field is "". */
+    private static List<String> splitFields(String line) {
+      List<String> fields = new ArrayList<>();
+      StringBuilder field = new StringBuilder();
+      int i = 0;
+      while (true) {
+        if (i < line.length() && line.charAt(i) == '"') {
+          i++;
+          while (true) {
+            if (i >= line.length()) {
+              throw new MyIllegalArgumentException("Unterminated quoted field");
+            }
+            char c = line.charAt(i++);
+            if (c != '"') {
+              field.append(c);
+            } else if (i < line.length() && line.charAt(i) == '"') {
+              field.append('"');
+              i++;
+            } else {
+              break;
+            }
+          }
+          if (i < line.length() && line.charAt(i) != ',') {
+            throw new MyIllegalArgumentException("Unexpected character after quoted field");
+          }
+        } else {
+          while (i < line.length() && line.charAt(i) != ',') {
+            field.append(line.charAt(i++));
+          }
+        }
+
+        fields.add(field.toString());
+        field.setLength(0);
+        if (i >= line.length()) {
+          return fields;
+        }
+        i++;
+      }
+    }
+  }
+
+  /**
+   * Reads the lines of the input, keeping at most one char more than {@link #MAX_LINE_LENGTH} of a
+   * line, so that a longer line can be told apart without holding it.
+   */
+  private static class LineReader {
+    private final Reader reader;
+    private final StringBuilder line = new StringBuilder();
+    private long lineNumber = 0;
+
+    LineReader(Reader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * @return the line without its terminator, or null at the end of the input
+     */
+    String readLine() throws IOException {
+      line.setLength(0);
+      boolean truncated = false;
+      int c;
+      while ((c = reader.read()) != -1 && c != '\n') {
+        if (line.length() <= MAX_LINE_LENGTH) {
+          line.append((char) c);
+        } else {
+          truncated = true;
+        }
+      }
+      if (c == -1 && line.isEmpty()) {
+        return null;
+      }
+
+      lineNumber++;
+      if (!truncated && !line.isEmpty() && line.charAt(line.length() - 1) == '\r') {
+        line.setLength(line.length() - 1);
+      }
+      return line.toString();
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The products of a lookup by ids, in the order of the ids.
+ *
+ * @param missingIds the ids without a product, in the order of the ids
+ */
+public record ProductLookup(List<Product> products, List<UUID> missingIds) {}
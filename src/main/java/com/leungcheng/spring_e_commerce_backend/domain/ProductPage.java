@@ -0,0 +1,50 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A page of products in id order, or in price and then id order if the search has a price filter.
+ *
+ * @param nextCursor gets the next page, or null if this is the last page
+ */
+public record ProductPage(List<Product> products, String nextCursor) {
+  /**
+   * The position after a product, which is its id, and also its price in a listing in price order.
+   *
+   * @param price null in a listing in id order
+   */
+  record Cursor(BigDecimal price, UUID id) {
+    private static final String SEPARATOR = ",";
+
+    String encode() {
+      String position = price == null ? id.toString() : price.toPlainString() + SEPARATOR + id;
+      return Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws MyIllegalArgumentException if the cursor is invalid
+     */
+    static Cursor decode(String cursor) {
+      try {
+        String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = position.indexOf(SEPARATOR);
+        if (separator < 0) {
+          return new Cursor(null, UUID.fromString(position));
+        }
+        return new Cursor(
+            new BigDecimal(position.substring(0, separator)),
+            UUID.fromString(position.substring(separator + 1)));
+      } catch (IllegalArgumentException e) {
+        // Also a NumberFormatException
+        throw new MyIllegalArgumentException("Invalid cursor");
+      }
+    }
+  }
+}
@@ -1,6 +1,48 @@
 package com.leungcheng.spring_e_commerce_backend.domain;
 
+import jakarta.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
-public interface ProductRepository extends CrudRepository<Product, UUID> {}
+public interface ProductRepository extends CrudRepository<Product, UUID> {
+  interface EntityTagParts {
+    long getVersion();
+
+    Integer getShardedQuantity();
+  }
+
+  /** Finds the {@link Product#getEntityTag()} without loading the product. */
+  default Optional<String> findEntityTagById(UUID id) {
+    return findEntityTagPartsById(id)
+        .map(parts -> Product.entityTag(parts.getVersion(), parts.getShardedQuantity()));
+  }
+
+  @Query(
+      "select p.version as version, p.shardedQuantity as shardedQuantity from Product p"
+          + " where p.id = :id")
+  Optional<EntityTagParts> findEntityTagPartsById(UUID id);
+
+  /**
+   * Locks the rows in ascending id order, so concurrent callers cannot deadlock each other. The
+   * sharded products are left out, as their stock is in the shards and not in the row.
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select p from Product p where p.id in :ids and p.stockShards = 0 order by p.id")
+  List<Product> findUnshardedForUpdateByIdInOrderByIdAsc(Collection<UUID> ids);
+
+  /**
+   * @return 1 if the stock is reduced, or 0 if the product does not exist or its quantity is less
+   *     than {@code quantity}
+   */
+  @Modifying
+  @Query(
+      "update Product p set p.quantity = p.quantity - :quantity"
+          + " where p.id = :id and p.quantity >= :quantity")
+  int decrementQuantity(UUID id, int quantity);
+}
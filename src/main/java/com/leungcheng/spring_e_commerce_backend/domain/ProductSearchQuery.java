@@ -0,0 +1,71 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The query of the ids and prices of a page of {@link ProductService#searchProducts}. Only the
+ * filters that are set are part of the SQL, rather than written as {@code (? IS NULL OR ...)}, so
+ * that the planner can use the index of each filter, see V9__product_search_indexes.sql, and of a
+ * seller with a price range, see V14__product_search_seller_price_index.sql.
+ *
+ * <p>With a price filter, the page is in (price, id) order with (price, id) as the keyset, so that
+ * the page is a range of the (price, id) index read in order, however many products are in the
+ * price range. Otherwise the page is in id order. A name search has to sort its matches, since a
+ * trigram index has no order.
+ *
+ * @param inPriceOrder whether the page is in (price, id) order, and so its cursor has a price
+ */
+record ProductSearchQuery(String sql, List<Object> args, boolean inPriceOrder) {
+  /**
+   * @param after the cursor of the previous page, or null for the first page
+   * @throws MyIllegalArgumentException if the cursor is of a listing in the other order
+   */
+  static ProductSearchQuery of(ProductFilter filter, ProductPage.Cursor after, int limit) {
+    boolean inPriceOrder = filter.minPrice() != null || filter.maxPrice() != null;
+    if (after != null && (after.price() != null) != inPriceOrder) {
+      throw new MyIllegalArgumentException("Invalid cursor");
+    }
+    StringBuilder sql = new StringBuilder("SELECT p.id, p.price FROM products p WHERE true");
+    List<Object> args = new ArrayList<>();
+    if (after != null && inPriceOrder) {
+      sql.append(" AND (p.price, p.id) > (?, ?)");
+      args.add(after.price());
+      args.add(after.id());
+    } else if (after != null) {
+      sql.append(" AND p.id > ?");
+      args.add(after.id());
+    }
+    if (filter.userId() != null) {
+      sql.append(" AND p.user_id = ?");
+      args.add(filter.userId());
+    }
+    if (filter.minPrice() != null) {
+      sql.append(" AND p.price >= ?");
+      args.add(filter.minPrice());
+    }
+    if (filter.maxPrice() != null) {
+      sql.append(" AND p.price <= ?");
+      args.add(filter.maxPrice());
+    }
+    if (filter.nameContains() != null && !filter.nameContains().isBlank()) {
+      sql.append(" AND p.name ILIKE ?");
+      args.add("%" + escapeLikePattern(filter.nameContains()) + "%");
+    }
+    if (filter.inStockOnly()) {
+      sql.append(
+          " AND CASE WHEN p.stock_shards = 0 THEN p.quantity > 0 ELSE EXISTS ("
+              + "SELECT 1 FROM product_stock_shards s WHERE s.product_id = p.id AND s.quantity > 0)"
+              + " END");
+    }
+    sql.append(inPriceOrder ? " ORDER BY p.price, p.id LIMIT ?" : " ORDER BY p.id LIMIT ?");
+    args.add(limit);
+    return new ProductSearchQuery(sql.toString(), args, inPriceOrder);
+  }
+
+  /** Matches the characters that LIKE treats as wildcards literally. */
+  private static String escapeLikePattern(String value) {
+    return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+}
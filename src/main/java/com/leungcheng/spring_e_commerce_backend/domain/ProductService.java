@@ -0,0 +1,120 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class ProductService {
+  public static final int MAX_PAGE_SIZE = 100;
+  public static final int MAX_LOOKUP_SIZE = 100;
+  public static final int MAX_BULK_LOOKUP_SIZE = 1000;
+
+  private @Autowired ProductRepository productRepository;
+  private @Autowired ShardedStock shardedStock;
+  private @Autowired JdbcTemplate jdbcTemplate;
+  private @Autowired ProductCache productCache;
+  @PersistenceContext private EntityManager entityManager;
+
+  @Transactional
+  public Product createProduct(Product product) {
+    // A miss of the new id may have been loaded before the commit.
+    productCache.invalidate(List.of(product.getId()));
+    if (!product.isStockSharded()) {
+      return productRepository.save(product);
+    }
+
+    // The stock lives in the shards, so the quantity in the product row stays 0.
+    productRepository.save(product.toBuilder().quantity(0).build());
+    entityManager.flush();
+    shardedStock.createShards(product.getId(), product.getStockShards(), product.getQuantity());
+    return product;
+  }
+
+  /**
+   * Gets a page of the products that match the filter, in id order, or in price and then id order
+   * if filtered by price, with keyset pagination. The ids of the page are found with an index of
+   * the filter, and the products are then loaded by id.
+   *
+   * @param cursor the {@link ProductPage#nextCursor()} of the previous page of the same filter, or
+   *     null for the first page
+   */
+  public ProductPage searchProducts(ProductFilter filter, String cursor, int limit) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new MyIllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+
+    ProductPage.Cursor after = cursor == null ? null : ProductPage.Cursor.decode(cursor);
+    ProductSearchQuery query = ProductSearchQuery.of(filter, after, limit);
+    List<ProductPage.Cursor> positions =
+        jdbcTemplate.query(
+            query.sql(),
+            (rs, rowNum) ->
+                new ProductPage.Cursor(
+                    query.inPriceOrder() ? rs.getBigDecimal("price") : null,
+                    rs.getObject("id", UUID.class)),
+            query.args().toArray());
+    if (positions.isEmpty()) {
+      return new ProductPage(List.of(), null);
+    }
+
+    List<UUID> productIds = positions.stream().map(ProductPage.Cursor::id).toList();
+    Map<UUID, Product> idToProduct = new HashMap<>();
+    for (Product product : productRepository.findAllById(productIds)) {
+      idToProduct.put(product.getId(), product);
+    }
+    // A product deleted in between is left out.
+    List<Product> products =
+        productIds.stream().map(idToProduct::get).filter(Objects::nonNull).toList();
+
+    String nextCursor = positions.size() < limit ? null : positions.getLast().encode();
+    return new ProductPage(products, nextCursor);
+  }
+
+  /** Same as {@link #lookUpProducts(List, int)} with at most {@link #MAX_LOOKUP_SIZE} ids. */
+  public ProductLookup lookUpProducts(List<UUID> productIds) {
+    return lookUpProducts(productIds, MAX_LOOKUP_SIZE);
+  }
+
+  /**
+   * Gets the products by ids, from the {@link ProductCache} or else with one query. A repeated id
+   * is only looked up once.
+   *
+   * @param maxSize the most unique ids accepted
+   */
+  public ProductLookup lookUpProducts(List<UUID> productIds, int maxSize) {
+    if (productIds == null) {
+      throw new MyIllegalArgumentException("Product ids cannot be null");
+    }
+    Set<UUID> uniqueIds = new LinkedHashSet<>(productIds);
+    if (uniqueIds.size() > maxSize) {
+      throw new MyIllegalArgumentException(
+          "Cannot look up more than " + maxSize + " products at once");
+    }
+
+    Map<UUID, Product> idToProduct = productCache.getAll(uniqueIds);
+    List<Product> products = new ArrayList<>();
+    List<UUID> missingIds = new ArrayList<>();
+    for (UUID productId : uniqueIds) {
+      Product product = idToProduct.get(productId);
+      if (product != null) {
+        products.add(product);
+      } else {
+        missingIds.add(productId);
+      }
+    }
+    return new ProductLookup(products, missingIds);
+  }
+}
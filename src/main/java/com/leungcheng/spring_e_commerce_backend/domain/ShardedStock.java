@@ -0,0 +1,64 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import java.util.List;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The stock of a product whose {@link Product#getStockShards()} is positive. It lives in the
+ * product_stock_shards table instead of the product row, so concurrent orders of a hot product
+ * update different rows.
+ */
+@Component
+public class ShardedStock {
+  private static final String CREATE_SHARDS_SQL =
+      "INSERT INTO product_stock_shards(product_id, shard, quantity)"
+          + " SELECT ?, s, ? / ? + CASE WHEN s < ? % ? THEN 1 ELSE 0 END"
+          + " FROM generate_series(0, ? - 1) AS s";
+
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  /** Splits the quantity as evenly as possible over the shards of a newly saved product. */
+  @Transactional(propagation = Propagation.MANDATORY)
+  void createShards(UUID productId, int shards, int quantity) {
+    jdbcTemplate.update(CREATE_SHARDS_SQL, productId, quantity, shards, quantity, shards, shards);
+  }
+
+  /**
+   * Like {@link #createShards(UUID, int, int)} for each of the newly saved products, in one batch.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  void createShards(List<Product> products) {
+    jdbcTemplate.batchUpdate(
+        CREATE_SHARDS_SQL,
+        products,
+        products.size(),
+        (ps, product) -> {
+          int shards = product.getStockShards();
+          int quantity = product.getQuantity();
+          ps.setObject(1, product.getId());
+          ps.setInt(2, quantity);
+          ps.setInt(3, shards);
+          ps.setInt(4, quantity);
+          ps.setInt(5, shards);
+          ps.setInt(6, shards);
+        });
+  }
+
+  /**
+   * Takes the quantity from a randomly chosen shard, falling back to the other shards when it does
+   * not hold enough.
+   *
+   * @return false if the shards do not hold enough in total, in which case nothing is taken
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public boolean take(UUID productId, int quantity) {
+    return Boolean.TRUE.equals(
+        jdbcTemplate.queryForObject(
+            "SELECT take_sharded_stock(?, ?)", Boolean.class, productId, quantity));
+  }
+}
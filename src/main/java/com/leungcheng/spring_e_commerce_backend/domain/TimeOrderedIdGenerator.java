@@ -0,0 +1,47 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates version 7 UUIDs (RFC 9562): a 48-bit Unix timestamp in milliseconds, a 12-bit counter
+ * and 62 random bits. New ids sort after the earlier ones, so inserts go to the rightmost pages of
+ * the primary key index, which stay in memory, instead of to random pages.
+ *
+ * <p>The timestamp and the counter are taken together from one atomic value with compare-and-set,
+ * so the ids of one generator are strictly increasing without a lock. When more than 4096 ids are
+ * generated within a millisecond, or the clock goes back, the timestamp runs ahead of the clock
+ * until the clock catches up.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+  private static final int COUNTER_BITS = 12;
+
+  private final LongSupplier currentTimeMillis;
+
+  /** The timestamp shifted left by {@link #COUNTER_BITS}, plus the counter, of the last id. */
+  private final AtomicLong lastTimestampAndCounter = new AtomicLong();
+
+  public TimeOrderedIdGenerator() {
+    this(System::currentTimeMillis);
+  }
+
+  TimeOrderedIdGenerator(LongSupplier currentTimeMillis) {
+    this.currentTimeMillis = currentTimeMillis;
+  }
+
+  @Override
+  public UUID generate() {
+    long now = currentTimeMillis.getAsLong() << COUNTER_BITS;
+    long timestampAndCounter =
+        lastTimestampAndCounter.updateAndGet(last -> Math.max(now, last + 1));
+
+    long timestamp = timestampAndCounter >>> COUNTER_BITS;
+    long counter = timestampAndCounter & ((1L << COUNTER_BITS) - 1);
+    long mostSignificantBits = (timestamp << 16) | (0x7L << 12) | counter;
+    long leastSignificantBits =
+        (ThreadLocalRandom.current().nextLong() >>> 2) | 0x8000_0000_0000_0000L;
+    return new UUID(mostSignificantBits, leastSignificantBits);
+  }
+}
@@ -1,29 +1,38 @@
 package com.leungcheng.spring_e_commerce_backend.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.leungcheng.spring_e_commerce_backend.validation.ObjectValidator;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import org.hibernate.annotations.Formula;
+import org.springframework.data.domain.Persistable;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 @Entity
 @Table(name = "users")
-public class User implements UserDetails {
+public class User implements UserDetails, Persistable<UUID> {
   public static final BigDecimal INITIAL_BALANCE = new BigDecimal(100);
 
   public static class Builder {
     private String username;
     private String password;
     private BigDecimal balance;
-    private UUID id = java.util.UUID.randomUUID();
+    private UUID id = Ids.next();
+    private long version;
+    private boolean isNew = true;
 
     private Builder id(UUID id) {
       this.id = id;
@@ -52,6 +61,8 @@ public class User implements UserDetails {
       user.username = username;
       user.password = password;
       user.balance = balance;
+      user.version = version;
+      user.isNew = isNew;
       ObjectValidator.validate(user);
 
       return user;
@@ -60,8 +71,16 @@ public class User implements UserDetails {
 
   private User() {}
 
+  /**
+   * The built user keeps the id and the version, and is saved as an update if this user is
+   * persisted.
+   */
   public User.Builder toBuilder() {
-    return new User.Builder().username(username).password(password).balance(balance).id(id);
+    User.Builder builder =
+        new User.Builder().username(username).password(password).balance(balance).id(id);
+    builder.version = version;
+    builder.isNew = isNew;
+    return builder;
   }
 
   @Id private UUID id;
@@ -76,11 +95,37 @@ public class User implements UserDetails {
   @Column(precision = BigDecimalSettings.PRECISION, scale = BigDecimalSettings.SCALE)
   private BigDecimal balance;
 
+  @Formula(
+      "(balance + (select coalesce(sum(l.delta), 0) from balance_ledger l where l.user_id = id))")
+  private BigDecimal ledgerBalance;
+
+  /**
+   * Incremented by the updates of Hibernate. The SQL updates of the balance leave it alone, see
+   * {@link #getEntityTag()}.
+   */
+  @Version private long version;
+
+  /** See {@link Product#isNew()}. */
+  @Transient private boolean isNew = true;
+
+  @Override
+  @JsonIgnore
+  public boolean isNew() {
+    return isNew;
+  }
+
+  @PostLoad
+  @PostPersist
+  void markNotNew() {
+    isNew = false;
+  }
+
   @Override
   public Collection<? extends GrantedAuthority> getAuthorities() {
     return List.of(); // TODO: May be not return empty list
   }
 
+  @Override
   public UUID getId() {
     return id;
   }
@@ -95,7 +140,22 @@ public class User implements UserDetails {
     return username;
   }
 
+  /**
+   * Changes whenever the account info of the user does, which is the version and the balance
+   * including the credits that are still in the {@link BalanceLedger}. Moving the credits into the
+   * row keeps the entity tag.
+   */
+  @JsonIgnore
+  public String getEntityTag() {
+    return entityTag(version, getBalance());
+  }
+
+  static String entityTag(long version, BigDecimal balance) {
+    return version + "-" + balance.stripTrailingZeros().toPlainString();
+  }
+
+  /** Includes the credits that are still in the {@link BalanceLedger}. */
   public BigDecimal getBalance() {
-    return balance;
+    return ledgerBalance != null ? ledgerBalance : balance;
   }
 }
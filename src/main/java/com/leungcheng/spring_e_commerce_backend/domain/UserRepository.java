@@ -1,9 +1,47 @@
 package com.leungcheng.spring_e_commerce_backend.domain;
 
+import jakarta.persistence.LockModeType;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
 public interface UserRepository extends CrudRepository<User, UUID> {
+  interface EntityTagParts {
+    long getVersion();
+
+    BigDecimal getBalance();
+  }
+
   Optional<User> findByUsername(String username);
+
+  /** Finds the {@link User#getEntityTag()} without loading the user. */
+  default Optional<String> findEntityTagById(UUID id) {
+    return findEntityTagPartsById(id)
+        .map(parts -> User.entityTag(parts.getVersion(), parts.getBalance()));
+  }
+
+  @Query("select u.version as version, u.ledgerBalance as balance from User u where u.id = :id")
+  Optional<EntityTagParts> findEntityTagPartsById(UUID id);
+
+  /** Locks the rows in ascending id order, so concurrent callers cannot deadlock each other. */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  List<User> findForUpdateByIdInOrderByIdAsc(Collection<UUID> ids);
+
+  /**
+   * Only checks the users.balance snapshot, so {@link BalanceLedger#fold} the user first.
+   *
+   * @return 1 if the balance is debited, or 0 if the user does not exist or the balance is less
+   *     than {@code amount}
+   */
+  @Modifying
+  @Query(
+      "update User u set u.balance = u.balance - :amount"
+          + " where u.id = :id and u.balance >= :amount")
+  int debitBalance(UUID id, BigDecimal amount);
 }
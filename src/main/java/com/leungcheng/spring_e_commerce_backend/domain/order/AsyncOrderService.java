@@ -0,0 +1,138 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Queues order requests and creates them with a bounded pool of workers, so a burst of requests
+ * waits in the queue instead of holding web threads and database connections. The queue depth is
+ * exposed as the {@code order.async.queue.depth} metric.
+ */
+@Service
+public class AsyncOrderService {
+  private static final Logger logger = LoggerFactory.getLogger(AsyncOrderService.class);
+
+  private record Key(UUID buyerUserId, UUID requestId) {}
+
+  private final OrderService orderService;
+  private final OrderRepository orderRepository;
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Only needed until an order is created or has failed. A created order can still be found in the
+   * database after its status has expired or been evicted. The size bound keeps a burst of requests
+   * from growing the cache for the whole retention. The least recently used statuses are evicted
+   * first, and a request submitted again after its pending status was evicted still creates at most
+   * one order, as creating an order is idempotent.
+   */
+  private final Cache<Key, OrderRequestStatus> statuses;
+
+  AsyncOrderService(
+      OrderService orderService,
+      OrderRepository orderRepository,
+      @Value("${order.async.workers}") int workers,
+      @Value("${order.async.queueCapacity}") int queueCapacity,
+      @Value("${order.async.statusRetention}") Duration statusRetention,
+      @Value("${order.async.statusMaximumSize}") long statusMaximumSize,
+      MeterRegistry meterRegistry) {
+    this.orderService = orderService;
+    this.orderRepository = orderRepository;
+    this.executor =
+        new ThreadPoolExecutor(
+            workers,
+            workers,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            new ThreadFactoryBuilder().setNameFormat("order-worker-%d").build());
+    this.statuses =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(statusRetention)
+            .maximumSize(statusMaximumSize)
+            .build();
+
+    Gauge.builder("order.async.queue.depth", executor, e -> e.getQueue().size())
+        .description("Order requests waiting for a worker")
+        .register(meterRegistry);
+    Gauge.builder("order.async.active", executor, ThreadPoolExecutor::getActiveCount)
+        .description("Order requests being created by a worker")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Queues the order request unless a request with the same requestId is already pending or
+   * created, in which case its status is returned. A failed request can be submitted again.
+   *
+   * @throws OrderQueueFullException if the queue is full
+   */
+  public OrderRequestStatus submit(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+    if (requestId == null) {
+      throw new CreateOrderException("Request ID cannot be null");
+    }
+
+    Key key = new Key(buyerUserId, requestId);
+    OrderRequestStatus pending = OrderRequestStatus.pending(requestId);
+    ConcurrentMap<Key, OrderRequestStatus> statusMap = statuses.asMap();
+    OrderRequestStatus existing = statusMap.putIfAbsent(key, pending);
+    if (existing != null
+        && (existing.status() != OrderRequestStatus.Status.FAILED
+            || !statusMap.replace(key, existing, pending))) {
+      return statusMap.getOrDefault(key, existing);
+    }
+
+    try {
+      executor.execute(() -> createOrder(key, purchaseItems));
+    } catch (RejectedExecutionException e) {
+      statusMap.remove(key, pending);
+      throw new OrderQueueFullException();
+    }
+    return pending;
+  }
+
+  public Optional<OrderRequestStatus> getStatus(UUID buyerUserId, UUID requestId) {
+    OrderRequestStatus status = statuses.getIfPresent(new Key(buyerUserId, requestId));
+    if (status != null) {
+      return Optional.of(status);
+    }
+    return orderRepository
+        .findByBuyerUserIdAndRequestId(buyerUserId, requestId)
+        .map(OrderRequestStatus::created);
+  }
+
+  private void createOrder(Key key, PurchaseItems purchaseItems) {
+    OrderRequestStatus status;
+    try {
+      Order order = orderService.createOrder(key.buyerUserId(), purchaseItems, key.requestId());
+      status = OrderRequestStatus.created(order);
+    } catch (CreateOrderException | OrderConflictException | OrderTimeoutException e) {
+      status = OrderRequestStatus.failed(key.requestId(), e.getMessage());
+    } catch (RuntimeException e) {
+      logger.error("Failed to create order for request {}", key.requestId(), e);
+      status = OrderRequestStatus.failed(key.requestId(), "Failed to create the order");
+    }
+    statuses.put(key, status);
+  }
+
+  @PreDestroy
+  void shutdown() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+}
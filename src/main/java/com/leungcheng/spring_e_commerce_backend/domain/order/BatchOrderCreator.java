@@ -0,0 +1,93 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.leungcheng.spring_e_commerce_backend.domain.BalanceLedger;
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.OrderRequest;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Creates many orders of one buyer in one transaction, with the stock and balance updates of {@link
+ * OrderConcurrencyMode#GUARDED_UPDATE}. The products and the existing orders are looked up once for
+ * the whole batch, and the ledger credits and the orders are written in batches at the end.
+ */
+@Component
+class BatchOrderCreator {
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired GuardedUpdateOrderCreator guardedUpdateOrderCreator;
+  private @Autowired OrderSavepoints orderSavepoints;
+  private @Autowired BalanceLedger balanceLedger;
+
+  @Value("${order.purchaseItemsStorage}")
+  private PurchaseItemsStorage purchaseItemsStorage;
+
+  /**
+   * @return the result of each request, in request order. A request with the same requestId as an
+   *     earlier request in the batch gets the same result.
+   */
+  @Transactional(isolation = Isolation.READ_COMMITTED)
+  public List<OrderRequestStatus> createOrders(UUID buyerUserId, List<OrderRequest> requests) {
+    Set<UUID> requestIds = new HashSet<>();
+    Set<UUID> productIds = new HashSet<>();
+    for (OrderRequest request : requests) {
+      if (request.requestId() != null) {
+        requestIds.add(request.requestId());
+      }
+      productIds.addAll(request.purchaseItems().getProductIdToQuantity().keySet());
+    }
+
+    Map<UUID, OrderRequestStatus> requestIdToStatus = new HashMap<>();
+    for (Order order : orderRepository.findByBuyerUserIdAndRequestIdIn(buyerUserId, requestIds)) {
+      requestIdToStatus.put(order.getRequestId(), OrderRequestStatus.created(order));
+    }
+    Map<UUID, Product> products = guardedUpdateOrderCreator.findProducts(productIds);
+
+    List<Order> newOrders = new ArrayList<>();
+    Map<UUID, Map<UUID, BigDecimal>> orderIdToSellerProfit = new LinkedHashMap<>();
+    List<OrderRequestStatus> statuses = new ArrayList<>();
+    for (OrderRequest request : requests) {
+      if (request.requestId() == null) {
+        statuses.add(OrderRequestStatus.failed(null, "Request ID cannot be null"));
+        continue;
+      }
+
+      OrderRequestStatus status = requestIdToStatus.get(request.requestId());
+      if (status == null) {
+        try {
+          Map<UUID, BigDecimal> sellerIdToProfit =
+              orderSavepoints.rollbackIfRejected(
+                  () ->
+                      guardedUpdateOrderCreator.takeStockAndDebitBuyer(
+                          buyerUserId, request.purchaseItems(), products));
+          Order newOrder =
+              new Order(
+                  buyerUserId, request.purchaseItems(), request.requestId(), purchaseItemsStorage);
+          newOrders.add(newOrder);
+          orderIdToSellerProfit.put(newOrder.getId(), sellerIdToProfit);
+          status = OrderRequestStatus.created(newOrder);
+        } catch (CreateOrderException e) {
+          status = OrderRequestStatus.failed(request.requestId(), e.getMessage());
+        }
+        requestIdToStatus.put(request.requestId(), status);
+      }
+      statuses.add(status);
+    }
+
+    balanceLedger.credit(orderIdToSellerProfit);
+    orderRepository.saveAll(newOrders);
+    return statuses;
+  }
+}
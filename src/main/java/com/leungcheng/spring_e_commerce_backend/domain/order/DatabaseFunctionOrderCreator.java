@@ -0,0 +1,104 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.google.common.collect.ImmutableMap;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * @see OrderConcurrencyMode#DATABASE_FUNCTION
+ */
+@Component
+class DatabaseFunctionOrderCreator {
+  private @Autowired JdbcTemplate jdbcTemplate;
+  private @Autowired OrderRepository orderRepository;
+
+  @Value("${order.purchaseItemsStorage}")
+  private PurchaseItemsStorage purchaseItemsStorage;
+
+  private enum Failure {
+    BUYER_NOT_FOUND,
+    PRODUCT_NOT_FOUND,
+    INSUFFICIENT_STOCK,
+    INSUFFICIENT_BALANCE
+  }
+
+  private record PlaceOrderResult(UUID orderId, Failure failure, UUID productId) {
+    static PlaceOrderResult fromRow(ResultSet rs, int rowNum) throws SQLException {
+      String failure = rs.getString("result_failure");
+      return new PlaceOrderResult(
+          rs.getObject("result_order_id", UUID.class),
+          failure == null ? null : Failure.valueOf(failure),
+          rs.getObject("result_product_id", UUID.class));
+    }
+  }
+
+  /**
+   * Not transactional on purpose: the function runs as a single auto-committed statement, so
+   * placing a new order costs exactly one round trip.
+   */
+  public Order createOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+    ImmutableMap<UUID, Integer> productIdToQuantity = purchaseItems.getProductIdToQuantity();
+    if (productIdToQuantity.isEmpty()) {
+      throw new CreateOrderException("Purchase items cannot be empty");
+    }
+
+    Order newOrder = new Order(buyerUserId, purchaseItems, requestId, purchaseItemsStorage);
+    PlaceOrderResult result = placeOrder(newOrder, productIdToQuantity);
+    if (result.failure() != null) {
+      throw toException(result);
+    }
+    if (result.orderId().equals(newOrder.getId())) {
+      return newOrder;
+    }
+    return orderRepository.findById(result.orderId()).orElseThrow();
+  }
+
+  private PlaceOrderResult placeOrder(
+      Order order, ImmutableMap<UUID, Integer> productIdToQuantity) {
+    UUID[] productIds = new UUID[productIdToQuantity.size()];
+    Integer[] quantities = new Integer[productIdToQuantity.size()];
+    int i = 0;
+    for (Map.Entry<UUID, Integer> entry : productIdToQuantity.entrySet()) {
+      productIds[i] = entry.getKey();
+      quantities[i] = entry.getValue();
+      i++;
+    }
+
+    return jdbcTemplate
+        .query(
+            connection -> {
+              PreparedStatement ps =
+                  connection.prepareStatement("SELECT * FROM place_order(?, ?, ?, ?, ?, ?, ?)");
+              ps.setObject(1, order.getId());
+              ps.setObject(2, order.getBuyerUserId());
+              ps.setObject(3, order.getRequestId());
+              ps.setArray(4, connection.createArrayOf("uuid", productIds));
+              ps.setArray(5, connection.createArrayOf("integer", quantities));
+              ps.setString(6, purchaseItemsStorage.name());
+              ps.setTimestamp(7, Timestamp.from(order.getCreatedAt()));
+              return ps;
+            },
+            PlaceOrderResult::fromRow)
+        .getFirst();
+  }
+
+  private static CreateOrderException toException(PlaceOrderResult result) {
+    return switch (result.failure()) {
+      case BUYER_NOT_FOUND -> new CreateOrderException("Buyer does not exist");
+      case PRODUCT_NOT_FOUND ->
+          new CreateOrderException("Product: " + result.productId() + " does not exist");
+      case INSUFFICIENT_STOCK ->
+          new CreateOrderException(CreateOrderException.insufficientStockMsg(result.productId()));
+      case INSUFFICIENT_BALANCE -> new CreateOrderException("Insufficient balance");
+    };
+  }
+}
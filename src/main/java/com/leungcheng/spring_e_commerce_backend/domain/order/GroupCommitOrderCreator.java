@@ -0,0 +1,247 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * @see OrderConcurrencyMode#GROUP_COMMIT
+ */
+@Component
+class GroupCommitOrderCreator {
+  private static final Logger logger = LoggerFactory.getLogger(GroupCommitOrderCreator.class);
+
+  private record PendingOrder(
+      UUID buyerUserId,
+      PurchaseItems purchaseItems,
+      UUID requestId,
+      CompletableFuture<Order> result) {}
+
+  /** The result of one order in a batch, which is only reported after the batch has committed. */
+  private record Outcome(PendingOrder pendingOrder, Order order, CreateOrderException failure) {}
+
+  private final GuardedUpdateOrderCreator guardedUpdateOrderCreator;
+  private final OrderSavepoints orderSavepoints;
+  private final EntityManager entityManager;
+  private final TransactionTemplate transactionTemplate;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private final Duration maxWait;
+  private final DistributionSummary batchSizes;
+
+  private final BlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>();
+
+  /**
+   * A single committer, so the batches never wait for each other's locks. Within a batch the orders
+   * run one after another and can hold locks on different products in any order.
+   */
+  private final ExecutorService committer =
+      Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setNameFormat("order-group-commit").setDaemon(true).build());
+
+  GroupCommitOrderCreator(
+      GuardedUpdateOrderCreator guardedUpdateOrderCreator,
+      OrderSavepoints orderSavepoints,
+      EntityManager entityManager,
+      PlatformTransactionManager transactionManager,
+      @Value("${order.groupCommit.maxBatchSize}") int maxBatchSize,
+      @Value("${order.groupCommit.maxDelay}") Duration maxDelay,
+      @Value("${order.groupCommit.maxWait}") Duration maxWait,
+      MeterRegistry meterRegistry) {
+    this.guardedUpdateOrderCreator = guardedUpdateOrderCreator;
+    this.orderSavepoints = orderSavepoints;
+    this.entityManager = entityManager;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelay.toNanos();
+    this.maxWait = maxWait;
+    this.batchSizes =
+        DistributionSummary.builder("order.group_commit.batch.size")
+            .description("Orders committed together in one transaction")
+            .register(meterRegistry);
+
+    committer.execute(this::commitBatches);
+  }
+
+  /**
+   * Waits until the batch containing the order has committed, or at most {@code
+   * order.groupCommit.maxWait}. An order that is given up before its batch starts is left out of
+   * the batch. One given up while its batch is running may still be created, and is found by a
+   * request with the same request id.
+   *
+   * @throws OrderTimeoutException if the order was not committed in time
+   */
+  public Order createOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+    PendingOrder pendingOrder =
+        new PendingOrder(buyerUserId, purchaseItems, requestId, new CompletableFuture<>());
+    queue.add(pendingOrder);
+    try {
+      return pendingOrder.result().get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (TimeoutException e) {
+      OrderTimeoutException timeout = new OrderTimeoutException();
+      if (pendingOrder.result().completeExceptionally(timeout)) {
+        throw timeout;
+      }
+      // Completed just now.
+      return pendingOrder.result().join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      pendingOrder.result().cancel(false);
+      throw new IllegalStateException("Interrupted while waiting for the order to commit", e);
+    }
+  }
+
+  /**
+   * Runs until shutdown. A failure outside of {@link #commit}'s own handling, even an {@link
+   * Error}, fails the orders of that batch only, and the committer goes on with the next batch, so
+   * that it cannot die and leave every later caller waiting.
+   */
+  private void commitBatches() {
+    while (!Thread.currentThread().isInterrupted()) {
+      List<PendingOrder> batch = List.of();
+      try {
+        batch = nextBatch();
+        commit(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException | Error e) {
+        logger.error("Failed to commit a batch of {} orders", batch.size(), e);
+        for (PendingOrder pendingOrder : batch) {
+          pendingOrder.result().completeExceptionally(e);
+        }
+      }
+    }
+  }
+
+  /** Waits for the first order, and then at most the max delay for more orders to join it. */
+  private List<PendingOrder> nextBatch() throws InterruptedException {
+    List<PendingOrder> batch = new ArrayList<>();
+    batch.add(queue.take());
+    long deadline = System.nanoTime() + maxDelayNanos;
+    while (batch.size() < maxBatchSize) {
+      queue.drainTo(batch, maxBatchSize - batch.size());
+      long remaining = deadline - System.nanoTime();
+      if (batch.size() >= maxBatchSize || remaining <= 0) {
+        break;
+      }
+      PendingOrder pendingOrder = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (pendingOrder == null) {
+        break;
+      }
+      batch.add(pendingOrder);
+    }
+    return batch;
+  }
+
+  private void commit(List<PendingOrder> queuedOrders) {
+    // Left out if the caller has given up.
+    List<PendingOrder> batch =
+        queuedOrders.stream().filter(pendingOrder -> !pendingOrder.result().isDone()).toList();
+    if (batch.isEmpty()) {
+      return;
+    }
+    batchSizes.record(batch.size());
+    List<Outcome> outcomes;
+    try {
+      outcomes = transactionTemplate.execute(status -> placeOrders(batch));
+    } catch (RuntimeException e) {
+      // For example a deadlock with an order placed outside of the batch, or a concurrent order
+      // with the same request id. Place the orders one by one, so they do not fail each other.
+      logger.warn(
+          "Failed to commit a batch of {} orders, placing them one by one", batch.size(), e);
+      batch.forEach(this::placeAlone);
+      return;
+    }
+
+    for (Outcome outcome : outcomes) {
+      if (outcome.failure() != null) {
+        outcome.pendingOrder().result().completeExceptionally(outcome.failure());
+      } else {
+        outcome.pendingOrder().result().complete(outcome.order());
+      }
+    }
+  }
+
+  /**
+   * Places each order after a savepoint, see {@link OrderSavepoints}. An order with the same
+   * request id as an earlier order in the batch finds that order.
+   */
+  private List<Outcome> placeOrders(List<PendingOrder> batch) {
+    List<Outcome> outcomes = new ArrayList<>();
+    for (PendingOrder pendingOrder : batch) {
+      try {
+        Order order =
+            orderSavepoints.rollbackIfRejected(
+                () -> {
+                  Order placedOrder =
+                      guardedUpdateOrderCreator.placeOrder(
+                          pendingOrder.buyerUserId(),
+                          pendingOrder.purchaseItems(),
+                          pendingOrder.requestId());
+                  // Write the order within its savepoint rather than at commit, and keep the
+                  // persistence context from growing with the batch.
+                  entityManager.flush();
+                  entityManager.clear();
+                  return placedOrder;
+                });
+        outcomes.add(new Outcome(pendingOrder, order, null));
+      } catch (CreateOrderException e) {
+        outcomes.add(new Outcome(pendingOrder, null, e));
+      }
+    }
+    return outcomes;
+  }
+
+  private void placeAlone(PendingOrder pendingOrder) {
+    try {
+      pendingOrder
+          .result()
+          .complete(
+              guardedUpdateOrderCreator.createOrder(
+                  pendingOrder.buyerUserId(),
+                  pendingOrder.purchaseItems(),
+                  pendingOrder.requestId()));
+    } catch (RuntimeException e) {
+      pendingOrder.result().completeExceptionally(e);
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    committer.shutdownNow();
+    queue.forEach(
+        pendingOrder ->
+            pendingOrder
+                .result()
+                .completeExceptionally(
+                    new IllegalStateException("Order service is shutting down")));
+  }
+}
@@ -0,0 +1,177 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.google.common.collect.ImmutableMap;
+import com.leungcheng.spring_e_commerce_backend.domain.BalanceLedger;
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ShardedStock;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * @see OrderConcurrencyMode#GUARDED_UPDATE
+ */
+@Component
+class GuardedUpdateOrderCreator {
+  /** The JDBC form of {@link ProductRepository#decrementQuantity}, for a batch. */
+  private static final String DECREMENT_QUANTITY_SQL =
+      "UPDATE products SET quantity = quantity - ? WHERE id = ? AND quantity >= ?";
+
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ShardedStock shardedStock;
+  private @Autowired BalanceLedger balanceLedger;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  @Value("${order.purchaseItemsStorage}")
+  private PurchaseItemsStorage purchaseItemsStorage;
+
+  @Transactional(isolation = Isolation.READ_COMMITTED)
+  public Order createOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+    return placeOrder(buyerUserId, purchaseItems, requestId);
+  }
+
+  /**
+   * Places the order in the caller's transaction, which must be at READ COMMITTED. Throws {@link
+   * CreateOrderException} before the order is saved, so rolling back to a savepoint taken before
+   * the call leaves no trace of the rejected order.
+   */
+  Order placeOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+    Optional<Order> order = orderRepository.findByBuyerUserIdAndRequestId(buyerUserId, requestId);
+    if (order.isPresent()) {
+      return order.get();
+    }
+
+    Map<UUID, BigDecimal> sellerIdToProfit =
+        takeStockAndDebitBuyer(
+            buyerUserId,
+            purchaseItems,
+            findProducts(purchaseItems.getProductIdToQuantity().keySet()));
+    Order newOrder = new Order(buyerUserId, purchaseItems, requestId, purchaseItemsStorage);
+    balanceLedger.credit(newOrder.getId(), sellerIdToProfit);
+
+    return orderRepository.save(newOrder);
+  }
+
+  /** Loads the products with one query. Products that do not exist are left out. */
+  Map<UUID, Product> findProducts(Collection<UUID> productIds) {
+    Map<UUID, Product> products = new HashMap<>();
+    for (Product product : productRepository.findAllById(productIds)) {
+      products.put(product.getId(), product);
+    }
+    return products;
+  }
+
+  /**
+   * Takes the stock of the purchase items and debits the buyer with guarded updates.
+   *
+   * @param products the purchased products, which may have been loaded together with those of other
+   *     orders
+   * @return the profit of each seller
+   */
+  Map<UUID, BigDecimal> takeStockAndDebitBuyer(
+      UUID buyerUserId, PurchaseItems purchaseItems, Map<UUID, Product> products) {
+    Map<UUID, BigDecimal> sellerIdToProfit = takeStock(purchaseItems, products);
+    BigDecimal totalCost =
+        sellerIdToProfit.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+    debitBuyer(buyerUserId, totalCost);
+    return sellerIdToProfit;
+  }
+
+  /**
+   * Takes the stock of the purchase items with guarded updates.
+   *
+   * @return the profit of each seller
+   */
+  Map<UUID, BigDecimal> takeStock(PurchaseItems purchaseItems, Map<UUID, Product> products) {
+    ImmutableMap<UUID, Integer> productIdToQuantity = purchaseItems.getProductIdToQuantity();
+    if (productIdToQuantity.isEmpty()) {
+      throw new CreateOrderException("Purchase items cannot be empty");
+    }
+    for (UUID productId : productIdToQuantity.keySet()) {
+      if (!products.containsKey(productId)) {
+        throw new CreateOrderException("Product: " + productId + " does not exist");
+      }
+    }
+
+    // Update the rows in the same order as the other modes lock them: products in ascending id
+    // order first, then the stock shards, and then the buyer.
+    TreeMap<UUID, Integer> sortedProductIdToQuantity = new TreeMap<>(LockOrdering.UUID_ORDER);
+    sortedProductIdToQuantity.putAll(productIdToQuantity);
+
+    Map<UUID, BigDecimal> sellerIdToProfit = new HashMap<>();
+    List<Map.Entry<UUID, Integer>> unshardedDecrements = new ArrayList<>();
+    for (Map.Entry<UUID, Integer> entry : sortedProductIdToQuantity.entrySet()) {
+      Product product = products.get(entry.getKey());
+      int purchaseQuantity = entry.getValue();
+      if (!product.isStockSharded()) {
+        unshardedDecrements.add(entry);
+      }
+
+      BigDecimal itemCost = product.getPrice().multiply(BigDecimal.valueOf(purchaseQuantity));
+      sellerIdToProfit.merge(product.getUserId(), itemCost, BigDecimal::add);
+    }
+
+    // The update count of each product still tells which product is out of stock.
+    int[] updateCounts = decrementQuantities(unshardedDecrements);
+    for (int i = 0; i < updateCounts.length; i++) {
+      if (updateCounts[i] != 1) {
+        throw new CreateOrderException(
+            CreateOrderException.insufficientStockMsg(unshardedDecrements.get(i).getKey()));
+      }
+    }
+
+    for (Map.Entry<UUID, Integer> entry : sortedProductIdToQuantity.entrySet()) {
+      Product product = products.get(entry.getKey());
+      if (product.isStockSharded() && !shardedStock.take(product.getId(), entry.getValue())) {
+        throw new CreateOrderException(CreateOrderException.insufficientStockMsg(product.getId()));
+      }
+    }
+    return sellerIdToProfit;
+  }
+
+  /**
+   * Decrements the quantities of the products that keep their stock in their own row, in one round
+   * trip: with {@link ProductRepository#decrementQuantity} for a single product, or else with a
+   * JDBC batch of the same guarded update.
+   *
+   * @return the update count of each product, in order
+   */
+  private int[] decrementQuantities(List<Map.Entry<UUID, Integer>> productIdToQuantity) {
+    if (productIdToQuantity.size() == 1) {
+      Map.Entry<UUID, Integer> entry = productIdToQuantity.getFirst();
+      return new int[] {productRepository.decrementQuantity(entry.getKey(), entry.getValue())};
+    }
+    List<Object[]> rows = new ArrayList<>();
+    for (Map.Entry<UUID, Integer> entry : productIdToQuantity) {
+      rows.add(new Object[] {entry.getValue(), entry.getKey(), entry.getValue()});
+    }
+    return jdbcTemplate.batchUpdate(DECREMENT_QUANTITY_SQL, rows);
+  }
+
+  /** Locks the buyer, folds the buyer's ledger entries and debits the balance. */
+  void debitBuyer(UUID buyerUserId, BigDecimal totalCost) {
+    if (!balanceLedger.fold(buyerUserId)) {
+      throw new CreateOrderException("Buyer does not exist");
+    }
+    if (userRepository.debitBalance(buyerUserId, totalCost) == 0) {
+      throw new CreateOrderException("Insufficient balance");
+    }
+  }
+}
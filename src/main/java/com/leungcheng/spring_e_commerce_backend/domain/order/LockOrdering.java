@@ -0,0 +1,15 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+class LockOrdering {
+  /**
+   * Orders UUIDs the same way as PostgreSQL does (unsigned, byte by byte). Rows updated in this
+   * order are therefore locked in the same order as rows locked by {@code ORDER BY id FOR UPDATE}.
+   * Note that {@link UUID#compareTo} compares signed values and cannot be used for this purpose.
+   */
+  static final Comparator<UUID> UUID_ORDER =
+      Comparator.comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+          .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+}
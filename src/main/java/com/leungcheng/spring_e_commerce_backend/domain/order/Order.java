@@ -1,27 +1,71 @@
 package com.leungcheng.spring_e_commerce_backend.domain.order;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.leungcheng.spring_e_commerce_backend.domain.Ids;
 import jakarta.persistence.*;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
 import java.util.UUID;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
 
 @Entity
 @Table(
     name = "orders",
     uniqueConstraints = {@UniqueConstraint(columnNames = {"requestId", "buyerUserId"})})
-public class Order {
-  @Id private final UUID id = UUID.randomUUID();
+public class Order implements Persistable<UUID> {
+  @Id private final UUID id = Ids.next();
   private UUID buyerUserId;
+
+  /** Empty when the purchase items are stored as arrays. */
   private PurchaseItems purchaseItems;
 
+  /**
+   * With {@link #quantities}, the purchase items of an order stored as {@link
+   * PurchaseItemsStorage#ARRAYS}, or null for an order stored as rows.
+   */
+  @JdbcTypeCode(SqlTypes.ARRAY)
+  private UUID[] productIds;
+
+  @JdbcTypeCode(SqlTypes.ARRAY)
+  private Integer[] quantities;
+
   private UUID requestId;
 
+  private Instant createdAt;
+
+  /** See {@link com.leungcheng.spring_e_commerce_backend.domain.Product#isNew()}. */
+  @Transient private boolean isNew = true;
+
   private Order() {}
 
-  Order(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+  Order(
+      UUID buyerUserId,
+      PurchaseItems purchaseItems,
+      UUID requestId,
+      PurchaseItemsStorage purchaseItemsStorage) {
     this.buyerUserId = buyerUserId;
-    this.purchaseItems = purchaseItems;
+    switch (purchaseItemsStorage) {
+      case ROWS -> {
+        // A copy, since the caller may reuse the items for another order.
+        this.purchaseItems = new PurchaseItems();
+        purchaseItems.getProductIdToQuantity().forEach(this.purchaseItems::setPurchaseItem);
+      }
+      case ARRAYS -> {
+        Map<UUID, Integer> productIdToQuantity = purchaseItems.getProductIdToQuantity();
+        this.purchaseItems = new PurchaseItems();
+        this.productIds = productIdToQuantity.keySet().toArray(new UUID[0]);
+        this.quantities = productIdToQuantity.values().toArray(new Integer[0]);
+      }
+    }
     this.requestId = requestId;
+    // The database keeps microseconds.
+    this.createdAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
   }
 
+  @Override
   public UUID getId() {
     return id;
   }
@@ -31,10 +75,33 @@ public class Order {
   }
 
   public PurchaseItems getPurchaseItems() {
-    return purchaseItems;
+    if (productIds == null) {
+      return purchaseItems;
+    }
+    PurchaseItems items = new PurchaseItems();
+    for (int i = 0; i < productIds.length; i++) {
+      items.setPurchaseItem(productIds[i], quantities[i]);
+    }
+    return items;
   }
 
   public UUID getRequestId() {
     return requestId;
   }
+
+  public Instant getCreatedAt() {
+    return createdAt;
+  }
+
+  @Override
+  @JsonIgnore
+  public boolean isNew() {
+    return isNew;
+  }
+
+  @PostLoad
+  @PostPersist
+  void markNotNew() {
+    isNew = false;
+  }
 }
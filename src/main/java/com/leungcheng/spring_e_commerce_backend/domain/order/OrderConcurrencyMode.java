@@ -0,0 +1,43 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+public enum OrderConcurrencyMode {
+  /**
+   * Runs the order at SERIALIZABLE isolation and retries when the database aborts it due to a
+   * conflict with a concurrent order.
+   */
+  SERIALIZABLE,
+
+  /**
+   * Locks the product rows in ascending id order and then the buyer row up front with SELECT ...
+   * FOR UPDATE, and runs at READ COMMITTED. Since every order acquires its locks in the same global
+   * order, orders cannot deadlock each other and never need to be retried. The row of a sharded
+   * product is not locked, and its stock is taken from a single shard afterwards, in id order.
+   */
+  PESSIMISTIC_LOCKING,
+
+  /**
+   * Runs at READ COMMITTED and updates the stock and balances with single guarded statements such
+   * as {@code quantity = quantity - n WHERE quantity >= n} instead of reading and writing back the
+   * entities. The affected row count tells whether the update succeeded, so the stock and balances
+   * can never go negative, and the order is never retried.
+   */
+  GUARDED_UPDATE,
+
+  /**
+   * Places the whole order with one call to the {@code place_order} PL/pgSQL function, which takes
+   * the purchase items as arrays and returns the order id or a failure reason. It locks the rows in
+   * the same order as {@link #PESSIMISTIC_LOCKING}, so a new order costs a single round trip
+   * instead of one per lookup and write. Like there, a sharded product is not locked, see the V11
+   * migration.
+   */
+  DATABASE_FUNCTION,
+
+  /**
+   * Collects the orders arriving within {@code order.groupCommit.maxDelay}, up to {@code
+   * order.groupCommit.maxBatchSize} of them, and places them like {@link #GUARDED_UPDATE} in one
+   * transaction, so they share a single commit. Each order runs after its own savepoint, so a
+   * rejected order is rolled back alone. Every caller waits until its batch has committed. Keep the
+   * batch size at most 64, PostgreSQL's per-transaction cache of subtransactions.
+   */
+  GROUP_COMMIT
+}
@@ -0,0 +1,11 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+/**
+ * Thrown when an order fails on a conflict with concurrent orders, such as a serialization failure
+ * or a deadlock, that was not retried or kept failing. Running it again later can succeed.
+ */
+public class OrderConflictException extends RuntimeException {
+  OrderConflictException(Throwable cause) {
+    super("The order conflicted with concurrent orders, please retry later", cause);
+  }
+}
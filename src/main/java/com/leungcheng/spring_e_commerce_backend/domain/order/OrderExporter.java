@@ -0,0 +1,130 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes the order history of a buyer as NDJSON, one order per line, oldest first. The rows are
+ * read with a server-side cursor of {@code order.export.fetchSize} rows and written as they arrive,
+ * so the memory used does not grow with the number of orders. The purchase items are read from
+ * whichever {@link PurchaseItemsStorage} format the order was stored in.
+ */
+@Component
+public class OrderExporter {
+  public static final String CONTENT_TYPE = "application/x-ndjson";
+
+  /** Flushing every line would cost a write per order, flushing never would hide a disconnect. */
+  private static final int FLUSH_EVERY_ORDERS = 100;
+
+  public record ExportedOrder(
+      UUID id, UUID requestId, Instant createdAt, Map<UUID, Integer> productIdToQuantity) {}
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ObjectMapper objectMapper;
+  private final int fetchSize;
+
+  OrderExporter(
+      JdbcTemplate jdbcTemplate,
+      ObjectMapper objectMapper,
+      @Value("${order.export.fetchSize}") int fetchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.objectMapper = objectMapper;
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * Transactional because PostgreSQL only uses a cursor outside of auto-commit. Stops reading as
+   * soon as writing fails, for example when the client has disconnected.
+   *
+   * @throws UncheckedIOException if writing fails
+   */
+  @Transactional(readOnly = true)
+  public void export(UUID buyerUserId, OutputStream outputStream) {
+    OrderLineWriter writer = new OrderLineWriter(outputStream);
+    jdbcTemplate.query(
+        connection -> {
+          PreparedStatement ps =
+              connection.prepareStatement(
+                  "SELECT o.id, o.request_id, o.created_at, i.product_id, i.quantity"
+                      + " FROM orders o CROSS JOIN LATERAL ("
+                      + "  SELECT r.product_id, r.quantity FROM purchase_items r"
+                      + "  WHERE r.order_id = o.id"
+                      + "  UNION ALL"
+                      + "  SELECT a.product_id, a.quantity"
+                      + "  FROM UNNEST(o.product_ids, o.quantities) AS a(product_id, quantity)"
+                      + " ) i"
+                      + " WHERE o.buyer_user_id = ? ORDER BY o.created_at, o.id");
+          ps.setObject(1, buyerUserId);
+          ps.setFetchSize(fetchSize);
+          return ps;
+        },
+        writer);
+    writer.finish();
+  }
+
+  /** Collects the rows of one order, and writes the order when the rows of the next one start. */
+  private class OrderLineWriter implements RowCallbackHandler {
+    private final OutputStream outputStream;
+    private ExportedOrder current;
+    private int written = 0;
+
+    OrderLineWriter(OutputStream outputStream) {
+      this.outputStream = outputStream;
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+      UUID orderId = rs.getObject("id", UUID.class);
+      if (current == null || !current.id().equals(orderId)) {
+        writeCurrent();
+        current =
+            new ExportedOrder(
+                orderId,
+                rs.getObject("request_id", UUID.class),
+                rs.getTimestamp("created_at").toInstant(),
+                new LinkedHashMap<>());
+      }
+      current
+          .productIdToQuantity()
+          .put(rs.getObject("product_id", UUID.class), rs.getInt("quantity"));
+    }
+
+    void finish() {
+      writeCurrent();
+      try {
+        outputStream.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void writeCurrent() {
+      if (current == null) {
+        return;
+      }
+      try {
+        outputStream.write(objectMapper.writeValueAsBytes(current));
+        outputStream.write('\n');
+        if (++written % FLUSH_EVERY_ORDERS == 0) {
+          outputStream.flush();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Remembers the id of the order created for each (buyerUserId, requestId), so retries of a request
+ * can be answered without opening a write transaction. Hits, misses and evictions are exposed as
+ * the {@code cache.*} metrics tagged with {@code cache=order.idempotency}.
+ */
+@Component
+class OrderIdempotencyCache {
+  private record Key(UUID buyerUserId, UUID requestId) {}
+
+  private final Cache<Key, UUID> cache;
+
+  OrderIdempotencyCache(
+      @Value("${order.idempotencyCache.maximumSize}") long maximumSize,
+      MeterRegistry meterRegistry) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    GuavaCacheMetrics.monitor(meterRegistry, cache, "order.idempotency");
+  }
+
+  Optional<UUID> getOrderId(UUID buyerUserId, UUID requestId) {
+    return Optional.ofNullable(cache.getIfPresent(new Key(buyerUserId, requestId)));
+  }
+
+  /** Puts the order once the current transaction, if any, has committed. */
+  void put(Order order) {
+    Key key = new Key(order.getBuyerUserId(), order.getRequestId());
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      cache.put(key, order.getId());
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            cache.put(key, order.getId());
+          }
+        });
+  }
+
+  void invalidate(UUID buyerUserId, UUID requestId) {
+    cache.invalidate(new Key(buyerUserId, requestId));
+  }
+}
@@ -0,0 +1,42 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A page of the orders of a buyer, newest first.
+ *
+ * @param nextCursor gets the next page, or null if this is the last page
+ */
+public record OrderPage(List<Order> orders, String nextCursor) {
+  /** The position after an order, which is its creation time and then its id to break ties. */
+  record Cursor(Instant createdAt, UUID id) {
+    static Cursor after(Order order) {
+      return new Cursor(order.getCreatedAt(), order.getId());
+    }
+
+    String encode() {
+      String value = ChronoUnit.MICROS.between(Instant.EPOCH, createdAt) + "_" + id;
+      return Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decode(String cursor) {
+      try {
+        String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] parts = value.split("_", 2);
+        return new Cursor(
+            Instant.EPOCH.plus(Long.parseLong(parts[0]), ChronoUnit.MICROS),
+            UUID.fromString(parts[1]));
+      } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+        throw new MyIllegalArgumentException("Invalid cursor");
+      }
+    }
+  }
+}
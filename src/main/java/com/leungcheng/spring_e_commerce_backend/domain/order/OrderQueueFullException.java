@@ -0,0 +1,7 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+public class OrderQueueFullException extends RuntimeException {
+  OrderQueueFullException() {
+    super("Too many pending orders, please retry later");
+  }
+}
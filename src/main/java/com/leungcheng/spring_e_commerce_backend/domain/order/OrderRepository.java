@@ -1,9 +1,44 @@
 package com.leungcheng.spring_e_commerce_backend.domain.order;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface OrderRepository extends CrudRepository<Order, UUID> {
+  @Transactional(readOnly = true)
   Optional<Order> findByBuyerUserIdAndRequestId(UUID buyerUserId, UUID requestId);
+
+  List<Order> findByBuyerUserIdAndRequestIdIn(UUID buyerUserId, Collection<UUID> requestIds);
+
+  /** The ids of the newest orders of the buyer, newest first. */
+  @Query(
+      value =
+          "SELECT o.id FROM orders o WHERE o.buyer_user_id = :buyerUserId"
+              + " ORDER BY o.created_at DESC, o.id DESC LIMIT :limit",
+      nativeQuery = true)
+  List<UUID> findLatestIds(UUID buyerUserId, int limit);
+
+  /**
+   * The ids of the orders of the buyer that come after the given order in the newest first order.
+   * The row comparison matches the index on (buyer_user_id, created_at, id), so the page is read
+   * with a single index range scan.
+   */
+  @Query(
+      value =
+          "SELECT o.id FROM orders o WHERE o.buyer_user_id = :buyerUserId"
+              + " AND (o.created_at, o.id) < (:createdAt, :id)"
+              + " ORDER BY o.created_at DESC, o.id DESC LIMIT :limit",
+      nativeQuery = true)
+  List<UUID> findIdsBefore(UUID buyerUserId, Instant createdAt, UUID id, int limit);
+
+  /** Loads the orders and their purchase items with one query. */
+  @Query(
+      "select distinct o from Order o left join fetch o.purchaseItems.productIdToQuantity"
+          + " where o.id in :ids")
+  List<Order> findWithPurchaseItemsByIdIn(Collection<UUID> ids);
 }
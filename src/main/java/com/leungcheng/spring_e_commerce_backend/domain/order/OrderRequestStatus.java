@@ -0,0 +1,31 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.UUID;
+
+/**
+ * The progress of an order request submitted with {@link AsyncOrderService#submit}.
+ *
+ * @param order only set when the status is {@link Status#CREATED}
+ * @param reason only set when the status is {@link Status#FAILED}
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record OrderRequestStatus(UUID requestId, Status status, Order order, String reason) {
+  public enum Status {
+    PENDING,
+    CREATED,
+    FAILED
+  }
+
+  static OrderRequestStatus pending(UUID requestId) {
+    return new OrderRequestStatus(requestId, Status.PENDING, null, null);
+  }
+
+  static OrderRequestStatus created(Order order) {
+    return new OrderRequestStatus(order.getRequestId(), Status.CREATED, order, null);
+  }
+
+  public static OrderRequestStatus failed(UUID requestId, String reason) {
+    return new OrderRequestStatus(requestId, Status.FAILED, null, reason);
+  }
+}
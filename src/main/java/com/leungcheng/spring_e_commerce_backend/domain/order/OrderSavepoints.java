@@ -0,0 +1,42 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Places several orders in one transaction, where a rejected order is rolled back to a savepoint
+ * without affecting the others. JDBC savepoints are used since the JPA transaction manager does not
+ * support them, which is fine as long as a rejected order leaves no pending entity changes.
+ */
+@Component
+class OrderSavepoints {
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  /**
+   * Runs {@code placeOrder} after a savepoint in the current transaction.
+   *
+   * @throws CreateOrderException after rolling back to the savepoint if {@code placeOrder} throws
+   *     it
+   */
+  <T> T rollbackIfRejected(Supplier<T> placeOrder) {
+    Savepoint savepoint =
+        jdbcTemplate.execute((ConnectionCallback<Savepoint>) Connection::setSavepoint);
+    try {
+      return placeOrder.get();
+    } catch (CreateOrderException e) {
+      jdbcTemplate.execute(
+          (ConnectionCallback<Void>)
+              connection -> {
+                connection.rollback(savepoint);
+                return null;
+              });
+      throw e;
+    }
+  }
+}
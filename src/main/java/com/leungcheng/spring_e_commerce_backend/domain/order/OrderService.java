@@ -1,26 +1,40 @@
 package com.leungcheng.spring_e_commerce_backend.domain.order;
 
-import com.google.common.collect.ImmutableMap;
-import com.leungcheng.spring_e_commerce_backend.domain.Product;
-import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
-import com.leungcheng.spring_e_commerce_backend.domain.User;
-import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductCache;
+import com.leungcheng.spring_e_commerce_backend.retry.TransientDatabaseFailures;
 import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
-import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.retry.annotation.Retryable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.TransactionException;
 
 @Service
 public class OrderService {
-  private @Autowired UserRepository userRepository;
-  private @Autowired ProductRepository productRepository;
+  public static final int MAX_PAGE_SIZE = 100;
+
+  private @Autowired SerializableOrderCreator serializableOrderCreator;
+  private @Autowired PessimisticLockingOrderCreator pessimisticLockingOrderCreator;
+  private @Autowired GuardedUpdateOrderCreator guardedUpdateOrderCreator;
+  private @Autowired DatabaseFunctionOrderCreator databaseFunctionOrderCreator;
+  private @Autowired GroupCommitOrderCreator groupCommitOrderCreator;
+  private @Autowired BatchOrderCreator batchOrderCreator;
   private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderIdempotencyCache idempotencyCache;
+  private @Autowired ProductCache productCache;
+
+  @Value("${order.concurrencyMode}")
+  private OrderConcurrencyMode concurrencyMode;
+
+  @Value("${order.batch.maxSize}")
+  private int maxBatchSize;
 
   public static class CreateOrderException extends MyIllegalArgumentException {
     // Add this static method to reduce duplication because one test in api level is interested in
@@ -35,85 +49,186 @@ public class OrderService {
     }
   }
 
-  @Retryable(noRetryFor = CreateOrderException.class)
-  @Transactional(isolation = Isolation.SERIALIZABLE)
+  /** Creates the order using the concurrency mode configured by {@code order.concurrencyMode}. */
   public Order createOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+    return createOrder(buyerUserId, purchaseItems, requestId, concurrencyMode);
+  }
+
+  /**
+   * @throws OrderConflictException if the order failed on a conflict with concurrent orders, after
+   *     the retries of {@link OrderConcurrencyMode#SERIALIZABLE} if any
+   */
+  public Order createOrder(
+      UUID buyerUserId,
+      PurchaseItems purchaseItems,
+      UUID requestId,
+      OrderConcurrencyMode concurrencyMode) {
     if (requestId == null) {
       throw new CreateOrderException("Request ID cannot be null");
     }
 
-    Optional<Order> order = orderRepository.findByBuyerUserIdAndRequestId(buyerUserId, requestId);
-    if (order.isPresent()) {
-      return order.get();
+    Optional<Order> existingOrder = findExistingOrder(buyerUserId, requestId);
+    if (existingOrder.isPresent()) {
+      return existingOrder.get();
     }
 
-    User buyer =
-        getUser(buyerUserId).orElseThrow(() -> new CreateOrderException("Buyer does not exist"));
+    Order order;
+    try {
+      order = createNewOrder(buyerUserId, purchaseItems, requestId, concurrencyMode);
+    } catch (DataAccessException | TransactionException e) {
+      if (TransientDatabaseFailures.isTransient(e)) {
+        throw new OrderConflictException(e);
+      }
+      throw e;
+    }
+    idempotencyCache.put(order);
+    productCache.invalidateStock(purchaseItems.getProductIdToQuantity().keySet());
+    return order;
+  }
 
-    BigDecimal totalCost = processPurchaseItems(purchaseItems);
+  private Order createNewOrder(
+      UUID buyerUserId,
+      PurchaseItems purchaseItems,
+      UUID requestId,
+      OrderConcurrencyMode concurrencyMode) {
+    return switch (concurrencyMode) {
+      case SERIALIZABLE ->
+          serializableOrderCreator.createOrder(buyerUserId, purchaseItems, requestId);
+      case PESSIMISTIC_LOCKING ->
+          pessimisticLockingOrderCreator.createOrder(buyerUserId, purchaseItems, requestId);
+      case GUARDED_UPDATE ->
+          getExistingOrderIfDuplicated(
+              buyerUserId,
+              requestId,
+              () -> guardedUpdateOrderCreator.createOrder(buyerUserId, purchaseItems, requestId));
+      case DATABASE_FUNCTION ->
+          databaseFunctionOrderCreator.createOrder(buyerUserId, purchaseItems, requestId);
+      case GROUP_COMMIT ->
+          getExistingOrderIfDuplicated(
+              buyerUserId,
+              requestId,
+              () -> groupCommitOrderCreator.createOrder(buyerUserId, purchaseItems, requestId));
+    };
+  }
 
-    if (buyer.getBalance().compareTo(totalCost) < 0) {
-      throw new CreateOrderException("Insufficient balance");
+  public record OrderRequest(UUID requestId, PurchaseItems purchaseItems) {}
+
+  /**
+   * Creates the orders of one buyer in one transaction, where each order may fail on its own. Each
+   * request has the same idempotency as {@link #createOrder}.
+   *
+   * @return the result of each request, in request order
+   */
+  public List<OrderRequestStatus> createOrders(UUID buyerUserId, List<OrderRequest> requests) {
+    if (requests.size() > maxBatchSize) {
+      throw new CreateOrderException("Cannot create more than " + maxBatchSize + " orders at once");
     }
-    saveNewBalance(buyer, buyer.getBalance().subtract(totalCost));
 
-    return addNewOrder(buyerUserId, purchaseItems, requestId);
-  }
+    List<OrderRequestStatus> statuses;
+    try {
+      statuses = batchOrderCreator.createOrders(buyerUserId, requests);
+    } catch (DataAccessException | TransactionException e) {
+      // For example a deadlock with a concurrent order, or a concurrent request with one of the
+      // request ids. Create the orders one by one, so they do not fail each other.
+      statuses = requests.stream().map(request -> createOrderAlone(buyerUserId, request)).toList();
+    }
 
-  private Optional<User> getUser(UUID userId) {
-    return userRepository.findById(userId);
+    for (OrderRequestStatus status : statuses) {
+      if (status.order() != null) {
+        idempotencyCache.put(status.order());
+        productCache.invalidateStock(
+            status.order().getPurchaseItems().getProductIdToQuantity().keySet());
+      }
+    }
+    return statuses;
   }
 
-  private void saveNewBalance(User buyer, BigDecimal newBalance) {
-    User updatedBuyer = buyer.toBuilder().balance(newBalance).build();
-    userRepository.save(updatedBuyer);
+  private OrderRequestStatus createOrderAlone(UUID buyerUserId, OrderRequest request) {
+    try {
+      return OrderRequestStatus.created(
+          createOrder(buyerUserId, request.purchaseItems(), request.requestId()));
+    } catch (CreateOrderException | OrderConflictException | OrderTimeoutException e) {
+      // Also a transient failure, so that it fails only this order of the batch.
+      return OrderRequestStatus.failed(request.requestId(), e.getMessage());
+    }
   }
 
-  private Order addNewOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
-    Order order = new Order(buyerUserId, purchaseItems, requestId);
-    return orderRepository.save(order);
+  /**
+   * @return empty if the order does not exist or is not the buyer's
+   */
+  public Optional<Order> getOrder(UUID buyerUserId, UUID orderId) {
+    return orderRepository
+        .findById(orderId)
+        .filter(order -> order.getBuyerUserId().equals(buyerUserId));
   }
 
-  private BigDecimal processPurchaseItems(PurchaseItems purchaseItems) {
-    ImmutableMap<UUID, Integer> productIdToQuantity = purchaseItems.getProductIdToQuantity();
-    if (productIdToQuantity.isEmpty()) {
-      throw new CreateOrderException("Purchase items cannot be empty");
+  /**
+   * Gets a page of the orders of the buyer, newest first, with keyset pagination. The page and its
+   * purchase items take two queries, however many orders the buyer has.
+   *
+   * @param cursor the {@link OrderPage#nextCursor()} of the previous page, or null for the first
+   *     page
+   */
+  public OrderPage getOrders(UUID buyerUserId, String cursor, int limit) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new MyIllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
     }
 
-    BigDecimal totalCost = BigDecimal.ZERO;
-    for (Map.Entry<UUID, Integer> entry : productIdToQuantity.entrySet()) {
-      UUID productId = entry.getKey();
-      int purchaseQuantity = entry.getValue();
-      Product product = getProduct(productId);
+    List<UUID> orderIds;
+    if (cursor == null) {
+      orderIds = orderRepository.findLatestIds(buyerUserId, limit);
+    } else {
+      OrderPage.Cursor after = OrderPage.Cursor.decode(cursor);
+      orderIds = orderRepository.findIdsBefore(buyerUserId, after.createdAt(), after.id(), limit);
+    }
 
-      reduceProductStock(product, purchaseQuantity);
-      addProfitToSeller(product, purchaseQuantity);
+    if (orderIds.isEmpty()) {
+      return new OrderPage(List.of(), null);
+    }
 
-      BigDecimal itemCost = product.getPrice().multiply(BigDecimal.valueOf(purchaseQuantity));
-      totalCost = totalCost.add(itemCost);
+    Map<UUID, Order> idToOrder = new HashMap<>();
+    for (Order order : orderRepository.findWithPurchaseItemsByIdIn(orderIds)) {
+      idToOrder.put(order.getId(), order);
     }
-    return totalCost;
+    List<Order> orders = orderIds.stream().map(idToOrder::get).toList();
+
+    String nextCursor =
+        orders.size() < limit ? null : OrderPage.Cursor.after(orders.getLast()).encode();
+    return new OrderPage(orders, nextCursor);
   }
 
-  private void reduceProductStock(Product product, int purchaseQuantity) {
-    if (purchaseQuantity > product.getQuantity()) {
-      throw new CreateOrderException(CreateOrderException.insufficientStockMsg(product.getId()));
+  /**
+   * Answers a retried request from the idempotency cache, or with a read-only lookup on a cache
+   * miss, so that only new requests open a write transaction.
+   */
+  private Optional<Order> findExistingOrder(UUID buyerUserId, UUID requestId) {
+    Optional<UUID> cachedOrderId = idempotencyCache.getOrderId(buyerUserId, requestId);
+    if (cachedOrderId.isPresent()) {
+      Optional<Order> order = orderRepository.findById(cachedOrderId.get());
+      if (order.isPresent()) {
+        return order;
+      }
+      idempotencyCache.invalidate(buyerUserId, requestId);
     }
-    int newQuantity = product.getQuantity() - purchaseQuantity;
-    Product updatedProduct = product.toBuilder().quantity(newQuantity).build();
-    productRepository.save(updatedProduct);
-  }
 
-  private void addProfitToSeller(Product product, int purchaseQuantity) {
-    User seller = getUser(product.getUserId()).orElseThrow();
-    BigDecimal profit = product.getPrice().multiply(BigDecimal.valueOf(purchaseQuantity));
-    BigDecimal newBalance = seller.getBalance().add(profit);
-    saveNewBalance(seller, newBalance);
+    Optional<Order> order = orderRepository.findByBuyerUserIdAndRequestId(buyerUserId, requestId);
+    order.ifPresent(idempotencyCache::put);
+    return order;
   }
 
-  private Product getProduct(UUID productId) {
-    return productRepository
-        .findById(productId)
-        .orElseThrow(() -> new CreateOrderException("Product: " + productId + " does not exist"));
+  /**
+   * Without retry or locking of the buyer, a concurrent request with the same requestId can create
+   * the order first. Our insert is then rejected by the unique constraint, and the order created by
+   * that request is the result.
+   */
+  private Order getExistingOrderIfDuplicated(
+      UUID buyerUserId, UUID requestId, Supplier<Order> createOrder) {
+    try {
+      return createOrder.get();
+    } catch (DataIntegrityViolationException e) {
+      return orderRepository
+          .findByBuyerUserIdAndRequestId(buyerUserId, requestId)
+          .orElseThrow(() -> e);
+    }
   }
 }
@@ -0,0 +1,13 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+/**
+ * Thrown when an order was not committed in time. Its outcome is unknown, since it may still be
+ * created, so it is to be retried with the same request id, which returns the order if it was.
+ */
+public class OrderTimeoutException extends RuntimeException {
+  OrderTimeoutException() {
+    super(
+        "The order was not committed in time and may still be created, please retry with the same"
+            + " request id");
+  }
+}
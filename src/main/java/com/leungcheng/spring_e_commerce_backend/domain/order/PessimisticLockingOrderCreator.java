@@ -0,0 +1,124 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.google.common.collect.ImmutableMap;
+import com.leungcheng.spring_e_commerce_backend.domain.BalanceLedger;
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ShardedStock;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * @see OrderConcurrencyMode#PESSIMISTIC_LOCKING
+ */
+@Component
+class PessimisticLockingOrderCreator {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ShardedStock shardedStock;
+  private @Autowired BalanceLedger balanceLedger;
+
+  @Value("${order.purchaseItemsStorage}")
+  private PurchaseItemsStorage purchaseItemsStorage;
+
+  @Transactional(isolation = Isolation.READ_COMMITTED)
+  public Order createOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+    Optional<Order> order = orderRepository.findByBuyerUserIdAndRequestId(buyerUserId, requestId);
+    if (order.isPresent()) {
+      return order.get();
+    }
+
+    ImmutableMap<UUID, Integer> productIdToQuantity = purchaseItems.getProductIdToQuantity();
+    if (productIdToQuantity.isEmpty()) {
+      throw new CreateOrderException("Purchase items cannot be empty");
+    }
+
+    Map<UUID, Product> products = lockProducts(productIdToQuantity);
+    // The sellers are credited through the ledger, so only the buyer needs to be locked.
+    if (userRepository.findForUpdateByIdInOrderByIdAsc(List.of(buyerUserId)).isEmpty()) {
+      throw new CreateOrderException("Buyer does not exist");
+    }
+
+    // A concurrent request with the same requestId holds the buyer lock until it commits, so check
+    // again now that we own the lock.
+    order = orderRepository.findByBuyerUserIdAndRequestId(buyerUserId, requestId);
+    if (order.isPresent()) {
+      return order.get();
+    }
+
+    Map<UUID, BigDecimal> sellerIdToProfit = new HashMap<>();
+    BigDecimal totalCost = BigDecimal.ZERO;
+    // In id order, so that the shards of different products are also taken in a global order.
+    TreeMap<UUID, Integer> sortedProductIdToQuantity = new TreeMap<>(LockOrdering.UUID_ORDER);
+    sortedProductIdToQuantity.putAll(productIdToQuantity);
+    for (Map.Entry<UUID, Integer> entry : sortedProductIdToQuantity.entrySet()) {
+      Product product = products.get(entry.getKey());
+      int purchaseQuantity = entry.getValue();
+
+      reduceProductStock(product, purchaseQuantity);
+
+      BigDecimal itemCost = product.getPrice().multiply(BigDecimal.valueOf(purchaseQuantity));
+      sellerIdToProfit.merge(product.getUserId(), itemCost, BigDecimal::add);
+      totalCost = totalCost.add(itemCost);
+    }
+
+    balanceLedger.fold(buyerUserId);
+    if (userRepository.debitBalance(buyerUserId, totalCost) == 0) {
+      throw new CreateOrderException("Insufficient balance");
+    }
+    Order newOrder = new Order(buyerUserId, purchaseItems, requestId, purchaseItemsStorage);
+    balanceLedger.credit(newOrder.getId(), sellerIdToProfit);
+
+    return orderRepository.save(newOrder);
+  }
+
+  private Map<UUID, Product> lockProducts(ImmutableMap<UUID, Integer> productIdToQuantity) {
+    Map<UUID, Product> products = new HashMap<>();
+    for (Product product :
+        productRepository.findUnshardedForUpdateByIdInOrderByIdAsc(productIdToQuantity.keySet())) {
+      products.put(product.getId(), product);
+    }
+    // A sharded product row is not locked, only the one shard that ShardedStock#take updates, so
+    // that concurrent orders of a hot product do not wait for each other.
+    if (products.size() < productIdToQuantity.size()) {
+      List<UUID> otherIds =
+          productIdToQuantity.keySet().stream().filter(id -> !products.containsKey(id)).toList();
+      for (Product product : productRepository.findAllById(otherIds)) {
+        products.put(product.getId(), product);
+      }
+    }
+    for (UUID productId : productIdToQuantity.keySet()) {
+      if (!products.containsKey(productId)) {
+        throw new CreateOrderException("Product: " + productId + " does not exist");
+      }
+    }
+    return products;
+  }
+
+  private void reduceProductStock(Product product, int purchaseQuantity) {
+    if (product.isStockSharded()) {
+      if (!shardedStock.take(product.getId(), purchaseQuantity)) {
+        throw new CreateOrderException(CreateOrderException.insufficientStockMsg(product.getId()));
+      }
+      return;
+    }
+    if (purchaseQuantity > product.getQuantity()) {
+      throw new CreateOrderException(CreateOrderException.insufficientStockMsg(product.getId()));
+    }
+    int newQuantity = product.getQuantity() - purchaseQuantity;
+    productRepository.save(product.toBuilder().quantity(newQuantity).build());
+  }
+}
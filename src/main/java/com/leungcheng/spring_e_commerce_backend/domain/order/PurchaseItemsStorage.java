@@ -0,0 +1,20 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+/**
+ * How the purchase items of new orders are stored, as configured by {@code
+ * order.purchaseItemsStorage}. Orders stored in either format are read the same way, so the format
+ * can be switched back and forth while older orders keep their rows.
+ *
+ * <p>The default stays {@link #ROWS} until every node reads {@link #ARRAYS}, since a node that does
+ * not would read an order stored as arrays as having no items.
+ */
+public enum PurchaseItemsStorage {
+  /** One {@code purchase_items} row per item, with a foreign key to the product. */
+  ROWS,
+
+  /**
+   * The product ids and quantities as two parallel arrays on the order row. An order is a single
+   * inserted row, and placing it does not lock the purchased products for a foreign key check.
+   */
+  ARRAYS
+}
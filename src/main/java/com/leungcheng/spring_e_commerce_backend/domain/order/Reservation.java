@@ -0,0 +1,12 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Stock held for a buyer until {@link #expiresAt()}.
+ *
+ * @see ReservationService
+ */
+public record Reservation(
+    UUID id, UUID buyerUserId, PurchaseItems purchaseItems, Instant expiresAt) {}
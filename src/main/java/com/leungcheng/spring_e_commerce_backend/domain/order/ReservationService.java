@@ -0,0 +1,156 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.google.common.collect.ImmutableMap;
+import com.leungcheng.spring_e_commerce_backend.domain.BalanceLedger;
+import com.leungcheng.spring_e_commerce_backend.domain.Ids;
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductCache;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Two-phase checkout. Reserving takes the stock with the guarded updates of {@link
+ * OrderConcurrencyMode#GUARDED_UPDATE} and records it in the stock_reservations table. Confirming
+ * only locks the reservation and the buyer, so it never waits for other buyers of the same
+ * products. A reservation that is not confirmed in time gives its stock back, see {@link
+ * ReservationSweeper}.
+ */
+@Service
+public class ReservationService {
+  private @Autowired JdbcTemplate jdbcTemplate;
+  private @Autowired UserRepository userRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired GuardedUpdateOrderCreator guardedUpdateOrderCreator;
+  private @Autowired BalanceLedger balanceLedger;
+  private @Autowired ProductCache productCache;
+
+  @Value("${order.purchaseItemsStorage}")
+  private PurchaseItemsStorage purchaseItemsStorage;
+
+  @Value("${reservation.ttl}")
+  private Duration ttl;
+
+  @Transactional(isolation = Isolation.READ_COMMITTED)
+  public Reservation reserve(UUID buyerUserId, PurchaseItems purchaseItems) {
+    if (!userRepository.existsById(buyerUserId)) {
+      throw new CreateOrderException("Buyer does not exist");
+    }
+
+    ImmutableMap<UUID, Integer> productIdToQuantity = purchaseItems.getProductIdToQuantity();
+    guardedUpdateOrderCreator.takeStock(
+        purchaseItems, guardedUpdateOrderCreator.findProducts(productIdToQuantity.keySet()));
+    productCache.invalidateStock(productIdToQuantity.keySet());
+
+    Reservation reservation =
+        new Reservation(
+            Ids.next(),
+            buyerUserId,
+            purchaseItems,
+            Instant.now().plus(ttl).truncatedTo(ChronoUnit.MICROS));
+    jdbcTemplate.update(
+        "INSERT INTO stock_reservations(id, buyer_user_id, expires_at) VALUES (?, ?, ?)",
+        reservation.id(),
+        buyerUserId,
+        Timestamp.from(reservation.expiresAt()));
+    List<Object[]> rows = new ArrayList<>();
+    for (Map.Entry<UUID, Integer> entry : productIdToQuantity.entrySet()) {
+      rows.add(new Object[] {reservation.id(), entry.getKey(), entry.getValue()});
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO stock_reservation_items(reservation_id, product_id, quantity)"
+            + " VALUES (?, ?, ?)",
+        rows);
+    return reservation;
+  }
+
+  /**
+   * Turns the reservation into an order, charged at the current prices. The reservation id is the
+   * request id of the order, so confirming the same reservation again returns the same order.
+   *
+   * @return empty if the buyer has no such reservation, or it has expired
+   */
+  @Transactional(isolation = Isolation.READ_COMMITTED)
+  public Optional<Order> confirm(UUID buyerUserId, UUID reservationId) {
+    Optional<Order> order =
+        orderRepository.findByBuyerUserIdAndRequestId(buyerUserId, reservationId);
+    if (order.isPresent()) {
+      return order;
+    }
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    jdbcTemplate.query(
+        "WITH r AS (DELETE FROM stock_reservations r"
+            + " WHERE r.id = ? AND r.buyer_user_id = ? AND r.expires_at > now() RETURNING r.id)"
+            + " DELETE FROM stock_reservation_items i USING r WHERE i.reservation_id = r.id"
+            + " RETURNING i.product_id, i.quantity",
+        rs -> {
+          purchaseItems.setPurchaseItem(
+              rs.getObject("product_id", UUID.class), rs.getInt("quantity"));
+        },
+        reservationId,
+        buyerUserId);
+    if (purchaseItems.getProductIdToQuantity().isEmpty()) {
+      return Optional.empty();
+    }
+
+    Map<UUID, Product> products =
+        guardedUpdateOrderCreator.findProducts(purchaseItems.getProductIdToQuantity().keySet());
+    Map<UUID, BigDecimal> sellerIdToProfit = new HashMap<>();
+    for (Map.Entry<UUID, Integer> entry : purchaseItems.getProductIdToQuantity().entrySet()) {
+      Product product = products.get(entry.getKey());
+      if (product == null) {
+        throw new CreateOrderException("Product: " + entry.getKey() + " does not exist");
+      }
+      BigDecimal itemCost = product.getPrice().multiply(BigDecimal.valueOf(entry.getValue()));
+      sellerIdToProfit.merge(product.getUserId(), itemCost, BigDecimal::add);
+    }
+    BigDecimal totalCost =
+        sellerIdToProfit.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+
+    guardedUpdateOrderCreator.debitBuyer(buyerUserId, totalCost);
+    Order newOrder = new Order(buyerUserId, purchaseItems, reservationId, purchaseItemsStorage);
+    balanceLedger.credit(newOrder.getId(), sellerIdToProfit);
+    return Optional.of(orderRepository.save(newOrder));
+  }
+
+  /**
+   * Gives the stock of up to {@code batchSize} expired reservations back.
+   *
+   * @return the number of reservations released
+   */
+  @Transactional
+  public int releaseExpired(int batchSize) {
+    List<UUID> productIds = new ArrayList<>();
+    Integer released =
+        jdbcTemplate.queryForObject(
+            "SELECT released_count, product_ids FROM release_expired_reservations(?)",
+            (rs, rowNum) -> {
+              productIds.addAll(Arrays.asList((UUID[]) rs.getArray("product_ids").getArray()));
+              return rs.getInt("released_count");
+            },
+            batchSize);
+    if (released == null || released == 0) {
+      return 0;
+    }
+    productCache.invalidateStock(productIds);
+    return released;
+  }
+}
@@ -0,0 +1,36 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/** Gives the stock of expired reservations back in batches. */
+@Component
+class ReservationSweeper {
+  private final ReservationService reservationService;
+  private final int batchSize;
+  private final Counter releasedReservations;
+
+  ReservationSweeper(
+      ReservationService reservationService,
+      @Value("${reservation.sweepBatchSize}") int batchSize,
+      MeterRegistry meterRegistry) {
+    this.reservationService = reservationService;
+    this.batchSize = batchSize;
+    this.releasedReservations =
+        Counter.builder("reservation.released")
+            .description("Expired reservations whose stock was given back")
+            .register(meterRegistry);
+  }
+
+  @Scheduled(fixedDelayString = "${reservation.sweepInterval}")
+  void sweep() {
+    int released;
+    do {
+      released = reservationService.releaseExpired(batchSize);
+      releasedReservations.increment(released);
+    } while (released == batchSize); // A full batch means that there may be more to release.
+  }
+}
@@ -0,0 +1,113 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import com.google.common.collect.ImmutableMap;
+import com.leungcheng.spring_e_commerce_backend.domain.BalanceLedger;
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ShardedStock;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.retry.annotation.Retryable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * @see OrderConcurrencyMode#SERIALIZABLE
+ */
+@Component
+class SerializableOrderCreator {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ShardedStock shardedStock;
+  private @Autowired BalanceLedger balanceLedger;
+
+  @Value("${order.purchaseItemsStorage}")
+  private PurchaseItemsStorage purchaseItemsStorage;
+
+  @Retryable(interceptor = "orderRetryInterceptor")
+  @Transactional(isolation = Isolation.SERIALIZABLE)
+  public Order createOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
+    Optional<Order> order = orderRepository.findByBuyerUserIdAndRequestId(buyerUserId, requestId);
+    if (order.isPresent()) {
+      return order.get();
+    }
+
+    if (!userRepository.existsById(buyerUserId)) {
+      throw new CreateOrderException("Buyer does not exist");
+    }
+
+    Order newOrder = new Order(buyerUserId, purchaseItems, requestId, purchaseItemsStorage);
+    Map<UUID, BigDecimal> sellerIdToProfit = processPurchaseItems(purchaseItems);
+    BigDecimal totalCost =
+        sellerIdToProfit.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+
+    balanceLedger.fold(buyerUserId);
+    if (userRepository.debitBalance(buyerUserId, totalCost) == 0) {
+      throw new CreateOrderException("Insufficient balance");
+    }
+    balanceLedger.credit(newOrder.getId(), sellerIdToProfit);
+
+    return orderRepository.save(newOrder);
+  }
+
+  /**
+   * @return the profit of each seller
+   */
+  private Map<UUID, BigDecimal> processPurchaseItems(PurchaseItems purchaseItems) {
+    ImmutableMap<UUID, Integer> productIdToQuantity = purchaseItems.getProductIdToQuantity();
+    if (productIdToQuantity.isEmpty()) {
+      throw new CreateOrderException("Purchase items cannot be empty");
+    }
+
+    Map<UUID, Product> products = getProducts(productIdToQuantity);
+    Map<UUID, BigDecimal> sellerIdToProfit = new HashMap<>();
+    for (Map.Entry<UUID, Integer> entry : productIdToQuantity.entrySet()) {
+      Product product = products.get(entry.getKey());
+      int purchaseQuantity = entry.getValue();
+
+      reduceProductStock(product, purchaseQuantity);
+
+      BigDecimal itemCost = product.getPrice().multiply(BigDecimal.valueOf(purchaseQuantity));
+      sellerIdToProfit.merge(product.getUserId(), itemCost, BigDecimal::add);
+    }
+    return sellerIdToProfit;
+  }
+
+  private void reduceProductStock(Product product, int purchaseQuantity) {
+    if (product.isStockSharded()) {
+      if (!shardedStock.take(product.getId(), purchaseQuantity)) {
+        throw new CreateOrderException(CreateOrderException.insufficientStockMsg(product.getId()));
+      }
+      return;
+    }
+    if (purchaseQuantity > product.getQuantity()) {
+      throw new CreateOrderException(CreateOrderException.insufficientStockMsg(product.getId()));
+    }
+    int newQuantity = product.getQuantity() - purchaseQuantity;
+    Product updatedProduct = product.toBuilder().quantity(newQuantity).build();
+    productRepository.save(updatedProduct);
+  }
+
+  /** Loads the products with one query. */
+  private Map<UUID, Product> getProducts(ImmutableMap<UUID, Integer> productIdToQuantity) {
+    Map<UUID, Product> products = new HashMap<>();
+    for (Product product : productRepository.findAllById(productIdToQuantity.keySet())) {
+      products.put(product.getId(), product);
+    }
+    for (UUID productId : productIdToQuantity.keySet()) {
+      if (!products.containsKey(productId)) {
+        throw new CreateOrderException("Product: " + productId + " does not exist");
+      }
+    }
+    return products;
+  }
+}
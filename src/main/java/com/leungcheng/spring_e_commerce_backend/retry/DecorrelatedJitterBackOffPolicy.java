@@ -0,0 +1,60 @@
+package com.leungcheng.spring_e_commerce_backend.retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.BackOffContext;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.BackOffPolicy;
+import org.springframework.retry.backoff.Sleeper;
+import org.springframework.retry.backoff.ThreadWaitSleeper;
+
+/**
+ * Exponential backoff with decorrelated jitter: each delay is drawn uniformly between the base
+ * delay and three times the previous delay, capped at the max delay. Unlike a fixed or purely
+ * exponential backoff, threads that conflicted with each other do not retry in lockstep.
+ */
+public class DecorrelatedJitterBackOffPolicy implements BackOffPolicy {
+  private final long baseMillis;
+  private final long maxMillis;
+  private final Sleeper sleeper;
+
+  public DecorrelatedJitterBackOffPolicy(Duration baseDelay, Duration maxDelay) {
+    this(baseDelay, maxDelay, new ThreadWaitSleeper());
+  }
+
+  DecorrelatedJitterBackOffPolicy(Duration baseDelay, Duration maxDelay, Sleeper sleeper) {
+    this.baseMillis = baseDelay.toMillis();
+    this.maxMillis = maxDelay.toMillis();
+    this.sleeper = sleeper;
+  }
+
+  private static class Context implements BackOffContext {
+    private long previousMillis;
+
+    Context(long previousMillis) {
+      this.previousMillis = previousMillis;
+    }
+  }
+
+  @Override
+  public BackOffContext start(RetryContext context) {
+    return new Context(baseMillis);
+  }
+
+  @Override
+  public void backOff(BackOffContext backOffContext) throws BackOffInterruptedException {
+    Context context = (Context) backOffContext;
+    long delay =
+        Math.min(
+            maxMillis,
+            ThreadLocalRandom.current().nextLong(baseMillis, context.previousMillis * 3 + 1));
+    context.previousMillis = delay;
+    try {
+      sleeper.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BackOffInterruptedException("Thread interrupted while sleeping", e);
+    }
+  }
+}
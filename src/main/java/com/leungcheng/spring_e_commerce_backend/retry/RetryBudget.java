@@ -0,0 +1,31 @@
+package com.leungcheng.spring_e_commerce_backend.retry;
+
+/**
+ * A token bucket shared by all the calls of a retry policy. Every call deposits {@code
+ * tokensPerCall} tokens and every retry withdraws one, so under sustained failures the retries are
+ * limited to that fraction of the calls and cannot amplify an overload. The bucket starts full so
+ * that occasional bursts of conflicts are still retried.
+ */
+public class RetryBudget {
+  private final double tokensPerCall;
+  private final double maxTokens;
+  private double tokens;
+
+  public RetryBudget(double tokensPerCall, double maxTokens) {
+    this.tokensPerCall = tokensPerCall;
+    this.maxTokens = maxTokens;
+    this.tokens = maxTokens;
+  }
+
+  synchronized void deposit() {
+    tokens = Math.min(maxTokens, tokens + tokensPerCall);
+  }
+
+  synchronized boolean tryWithdraw() {
+    if (tokens < 1) {
+      return false;
+    }
+    tokens -= 1;
+    return true;
+  }
+}
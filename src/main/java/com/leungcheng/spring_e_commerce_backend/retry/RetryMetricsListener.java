@@ -0,0 +1,45 @@
+package com.leungcheng.spring_e_commerce_backend.retry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+
+/**
+ * Counts the attempts ({@code <name>.attempts}), the successes per attempt number ({@code
+ * <name>.successes} tagged with {@code attempt}) and the transient failures that were given up
+ * ({@code <name>.give_ups} tagged with the {@link TransientFailureRetryPolicy#GIVE_UP_REASON}).
+ */
+public class RetryMetricsListener implements RetryListener {
+  private final String name;
+  private final MeterRegistry meterRegistry;
+
+  public RetryMetricsListener(String name, MeterRegistry meterRegistry) {
+    this.name = name;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public <T, E extends Throwable> void onSuccess(
+      RetryContext context, RetryCallback<T, E> callback, T result) {
+    meterRegistry.counter(name + ".attempts").increment();
+    meterRegistry
+        .counter(name + ".successes", "attempt", String.valueOf(context.getRetryCount() + 1))
+        .increment();
+  }
+
+  @Override
+  public <T, E extends Throwable> void onError(
+      RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+    meterRegistry.counter(name + ".attempts").increment();
+  }
+
+  @Override
+  public <T, E extends Throwable> void close(
+      RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+    Object reason = context.getAttribute(TransientFailureRetryPolicy.GIVE_UP_REASON);
+    if (throwable != null && reason != null) {
+      meterRegistry.counter(name + ".give_ups", "reason", reason.toString()).increment();
+    }
+  }
+}
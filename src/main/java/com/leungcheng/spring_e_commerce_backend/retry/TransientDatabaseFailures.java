@@ -0,0 +1,25 @@
+package com.leungcheng.spring_e_commerce_backend.retry;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+public final class TransientDatabaseFailures {
+  /** serialization_failure and deadlock_detected. */
+  private static final Set<String> SQL_STATES = Set.of("40001", "40P01");
+
+  private TransientDatabaseFailures() {}
+
+  /**
+   * @return true if the throwable is caused by a serialization failure or a deadlock, in which case
+   *     the transaction can succeed if it is simply run again
+   */
+  public static boolean isTransient(Throwable throwable) {
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException sqlException
+          && SQL_STATES.contains(sqlException.getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,67 @@
+package com.leungcheng.spring_e_commerce_backend.retry;
+
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryPolicy;
+import org.springframework.retry.context.RetryContextSupport;
+
+/**
+ * Retries only the failures classified by {@link TransientDatabaseFailures}, up to {@code
+ * maxAttempts} attempts and as long as the {@link RetryBudget} allows.
+ */
+public class TransientFailureRetryPolicy implements RetryPolicy {
+  /** The context attribute telling why a transient failure was not retried. */
+  public static final String GIVE_UP_REASON = "giveUpReason";
+
+  public static final String EXHAUSTED = "exhausted";
+  public static final String BUDGET = "budget";
+
+  private static final String RETRY_ALLOWED = "retryAllowed";
+
+  private final int maxAttempts;
+  private final RetryBudget budget;
+
+  public TransientFailureRetryPolicy(int maxAttempts, RetryBudget budget) {
+    this.maxAttempts = maxAttempts;
+    this.budget = budget;
+  }
+
+  @Override
+  public boolean canRetry(RetryContext context) {
+    return context.getLastThrowable() == null
+        || Boolean.TRUE.equals(context.getAttribute(RETRY_ALLOWED));
+  }
+
+  @Override
+  public RetryContext open(RetryContext parent) {
+    budget.deposit();
+    return new RetryContextSupport(parent);
+  }
+
+  @Override
+  public void close(RetryContext context) {}
+
+  /**
+   * Decides here rather than in {@link #canRetry}, which the template may call several times per
+   * failure, so that each retry withdraws from the budget exactly once.
+   */
+  @Override
+  public void registerThrowable(RetryContext context, Throwable throwable) {
+    ((RetryContextSupport) context).registerThrowable(throwable);
+    context.setAttribute(RETRY_ALLOWED, isRetryAllowed(context, throwable));
+  }
+
+  private boolean isRetryAllowed(RetryContext context, Throwable throwable) {
+    if (!TransientDatabaseFailures.isTransient(throwable)) {
+      return false;
+    }
+    if (context.getRetryCount() >= maxAttempts) {
+      context.setAttribute(GIVE_UP_REASON, EXHAUSTED);
+      return false;
+    }
+    if (!budget.tryWithdraw()) {
+      context.setAttribute(GIVE_UP_REASON, BUDGET);
+      return false;
+    }
+    return true;
+  }
+}
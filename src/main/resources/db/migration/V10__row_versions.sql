@@ -0,0 +1,27 @@
+-- Versions of the product and user rows, for optimistic locking by Hibernate and for the entity
+-- tags of GET /products/{id} and GET /me.
+ALTER TABLE
+    products ADD version BIGINT NOT NULL DEFAULT 0;
+
+-- Only incremented by Hibernate. The balance of a user is only changed by SQL, and is part of the
+-- entity tag instead. The ledger compaction moves credits into users.balance every second, which
+-- would change the version without changing the balance shown.
+ALTER TABLE
+    users ADD version BIGINT NOT NULL DEFAULT 0;
+
+-- Increments the version of a row updated by SQL that does not set it, such as the guarded stock
+-- updates and the functions of the order path. An update by Hibernate has already incremented it,
+-- and is left alone.
+CREATE
+    FUNCTION increment_row_version() RETURNS TRIGGER LANGUAGE plpgsql AS $$ BEGIN IF NEW.version = OLD.version THEN NEW.version := OLD.version + 1;
+END IF;
+
+RETURN NEW;
+END;
+
+$$;
+
+CREATE
+    TRIGGER trg_products_version BEFORE UPDATE
+        ON
+        products FOR EACH ROW EXECUTE FUNCTION increment_row_version();
@@ -0,0 +1,111 @@
+-- Same as the V6 function except that it also returns the ids of the products whose stock was given
+-- back, so that only those are evicted from the product caches. The return type changes, so the
+-- function is dropped first.
+DROP
+    FUNCTION release_expired_reservations(INTEGER);
+
+CREATE
+    FUNCTION release_expired_reservations(
+        p_batch_size INTEGER,
+        OUT released_count INTEGER,
+        OUT product_ids UUID []
+    ) LANGUAGE plpgsql AS $$ DECLARE v_reservation_ids UUID [];
+
+BEGIN SELECT
+    array_agg(e.id) INTO
+        v_reservation_ids
+    FROM
+        (
+            SELECT
+                r.id
+            FROM
+                stock_reservations r
+            WHERE
+                r.expires_at <= now()
+            ORDER BY
+                r.expires_at LIMIT p_batch_size FOR UPDATE
+                    SKIP LOCKED
+        ) e;
+
+IF v_reservation_ids IS NULL THEN released_count := 0;
+
+product_ids := '{}';
+
+RETURN;
+END IF;
+
+PERFORM 1
+FROM
+products p
+WHERE
+p.id IN(
+    SELECT
+        i.product_id
+    FROM
+        stock_reservation_items i
+    WHERE
+        i.reservation_id = ANY(v_reservation_ids)
+)
+ORDER BY
+p.id FOR UPDATE;
+    
+    WITH released AS(
+        DELETE
+        FROM
+            stock_reservation_items i
+        WHERE
+            i.reservation_id = ANY(v_reservation_ids) RETURNING i.product_id,
+            i.quantity
+    ),
+    totals AS(
+        SELECT
+            r.product_id,
+            SUM( r.quantity ) AS quantity
+        FROM
+            released r
+        GROUP BY
+            r.product_id
+    ),
+    restocked AS(
+        UPDATE
+            products p
+        SET
+            quantity = p.quantity + t.quantity
+        FROM
+            totals t
+        WHERE
+            p.id = t.product_id
+            AND p.stock_shards = 0
+    ),
+    restocked_shards AS(
+        UPDATE
+            product_stock_shards s
+        SET
+            quantity = s.quantity + t.quantity
+        FROM
+            totals t
+        WHERE
+            s.product_id = t.product_id
+            AND s.shard = 0
+    ) SELECT
+        COALESCE(
+            array_agg(t.product_id),
+            '{}'
+        ) INTO
+            product_ids
+        FROM
+            totals t;
+
+DELETE
+FROM
+    stock_reservations r
+WHERE
+    r.id = ANY(v_reservation_ids);
+
+released_count := array_length(
+    v_reservation_ids,
+    1
+);
+END;
+
+$$;
@@ -0,0 +1,302 @@
+-- Same as the V11 function except that the order is stored with the given p_created_at instead of
+-- the now() default, so the order returned to the caller carries the same creation time as the one
+-- read back later. A new parameter makes a new function, so the old one is dropped first.
+DROP
+    FUNCTION place_order(
+        UUID,
+        UUID,
+        UUID,
+        UUID [],
+        INTEGER [],
+        VARCHAR
+    );
+
+CREATE
+    FUNCTION place_order(
+        p_order_id UUID,
+        p_buyer_user_id UUID,
+        p_request_id UUID,
+        p_product_ids UUID [],
+        p_quantities INTEGER [],
+        p_storage VARCHAR,
+        p_created_at TIMESTAMP WITH TIME ZONE
+    ) RETURNS TABLE
+        (
+            result_order_id UUID,
+            result_failure VARCHAR,
+            result_product_id UUID
+        ) LANGUAGE plpgsql AS $$ DECLARE v_item RECORD;
+
+v_total NUMERIC := 0;
+
+v_balance NUMERIC;
+
+v_has_sharded BOOLEAN := FALSE;
+
+v_failed_product_id UUID;
+
+BEGIN SELECT
+    o.id INTO
+        result_order_id
+    FROM
+        orders o
+    WHERE
+        o.buyer_user_id = p_buyer_user_id
+        AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF NOT EXISTS(
+    SELECT
+        1
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id
+) THEN result_failure := 'BUYER_NOT_FOUND';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+PERFORM 1
+FROM
+products p
+WHERE
+p.id = ANY(p_product_ids)
+AND p.stock_shards = 0
+ORDER BY
+p.id FOR UPDATE;
+    
+    FOR v_item IN SELECT
+        i.product_id,
+        i.quantity,
+        p.id AS found_id,
+        CASE
+            WHEN p.stock_shards = 0 THEN p.quantity
+            ELSE(
+                SELECT
+                    COALESCE(
+                        SUM( s.quantity ),
+                        0
+                    )
+                FROM
+                    product_stock_shards s
+                WHERE
+                    s.product_id = p.id
+            )
+        END AS stock,
+        p.price,
+        p.stock_shards
+    FROM
+        UNNEST(
+            p_product_ids,
+            p_quantities
+        ) WITH ORDINALITY AS i(
+            product_id,
+            quantity,
+            seq
+        )
+    LEFT JOIN products p ON
+        p.id = i.product_id
+    ORDER BY
+        i.seq LOOP IF v_item.found_id IS NULL THEN result_failure := 'PRODUCT_NOT_FOUND';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF v_item.stock < v_item.quantity THEN result_failure := 'INSUFFICIENT_STOCK';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+v_has_sharded := v_has_sharded
+OR v_item.stock_shards > 0;
+
+v_total := v_total + v_item.price * v_item.quantity;
+END LOOP;
+
+PERFORM fold_balance_ledger(p_buyer_user_id);
+
+SELECT
+    o.id INTO
+        result_order_id
+    FROM
+        orders o
+    WHERE
+        o.buyer_user_id = p_buyer_user_id
+        AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+SELECT
+    u.balance INTO
+        v_balance
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id;
+
+IF v_balance < v_total THEN result_failure := 'INSUFFICIENT_BALANCE';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF v_has_sharded THEN BEGIN FOR v_item IN SELECT
+    i.product_id,
+    i.quantity
+FROM
+    UNNEST(
+        p_product_ids,
+        p_quantities
+    ) AS i(
+        product_id,
+        quantity
+    )
+JOIN products p ON
+    p.id = i.product_id
+WHERE
+    p.stock_shards > 0
+ORDER BY
+    i.product_id LOOP IF NOT take_sharded_stock(
+        v_item.product_id,
+        v_item.quantity
+    ) THEN v_failed_product_id := v_item.product_id;
+
+RAISE EXCEPTION 'INSUFFICIENT_STOCK';
+END IF;
+END LOOP;
+
+EXCEPTION
+WHEN raise_exception THEN result_failure := 'INSUFFICIENT_STOCK';
+
+result_product_id := v_failed_product_id;
+
+RETURN NEXT;
+
+RETURN;
+END;
+END IF;
+
+UPDATE
+    products p
+SET
+    quantity = p.quantity - i.quantity
+FROM
+    UNNEST(
+        p_product_ids,
+        p_quantities
+    ) AS i(
+        product_id,
+        quantity
+    )
+WHERE
+    p.id = i.product_id
+    AND p.stock_shards = 0;
+
+UPDATE
+    users u
+SET
+    balance = u.balance - v_total
+WHERE
+    u.id = p_buyer_user_id;
+
+INSERT
+    INTO
+        balance_ledger(
+            user_id,
+            order_id,
+            delta
+        ) SELECT
+            p.user_id,
+            p_order_id,
+            SUM( p.price * i.quantity )
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            )
+        JOIN products p ON
+            p.id = i.product_id
+        GROUP BY
+            p.user_id;
+
+IF p_storage = 'ARRAYS' THEN INSERT
+    INTO
+        orders(
+            buyer_user_id,
+            id,
+            request_id,
+            product_ids,
+            quantities,
+            created_at
+        )
+    VALUES(
+        p_buyer_user_id,
+        p_order_id,
+        p_request_id,
+        p_product_ids,
+        p_quantities,
+        p_created_at
+    );
+ELSE INSERT
+    INTO
+        orders(
+            buyer_user_id,
+            id,
+            request_id,
+            created_at
+        )
+    VALUES(
+        p_buyer_user_id,
+        p_order_id,
+        p_request_id,
+        p_created_at
+    );
+
+INSERT
+    INTO
+        purchase_items(
+            quantity,
+            order_id,
+            product_id
+        ) SELECT
+            i.quantity,
+            p_order_id,
+            i.product_id
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            );
+END IF;
+
+result_order_id := p_order_id;
+
+RETURN NEXT;
+END;
+
+$$;
@@ -0,0 +1,24 @@
+-- A seller's products in a price range are listed in (price, id) order, like any price range. With
+-- (user_id, id) or (price, id) alone the planner either sorts all of the seller's products in the
+-- range, or reads the whole price range and filters out the other sellers. The (user_id, price, id)
+-- index has the page as a range of it read in order.
+CREATE
+    INDEX idx_products_user_id_price_id ON
+    products(
+        user_id,
+        price,
+        id
+    );
+
+-- The listing reads the price along with the id, so the new index covers a seller's listing in id
+-- order, which the planner would then rather read from it and sort. The (user_id, id) index
+-- includes the price as well, so that it covers the listing in its order.
+DROP
+    INDEX idx_products_user_id_id;
+
+CREATE
+    INDEX idx_products_user_id_id ON
+    products(
+        user_id,
+        id
+    ) INCLUDE(price);
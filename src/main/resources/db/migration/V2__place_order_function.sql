@@ -0,0 +1,227 @@
+-- Places an order in a single statement. See OrderConcurrencyMode.DATABASE_FUNCTION.
+-- Returns the id of the created (or previously created) order, or a failure reason.
+CREATE
+    FUNCTION place_order(
+        p_order_id UUID,
+        p_buyer_user_id UUID,
+        p_request_id UUID,
+        p_product_ids UUID [],
+        p_quantities INTEGER []
+    ) RETURNS TABLE
+        (
+            result_order_id UUID,
+            result_failure VARCHAR,
+            result_product_id UUID
+        ) LANGUAGE plpgsql AS $$ DECLARE v_item RECORD;
+
+v_total NUMERIC := 0;
+
+v_balance NUMERIC;
+
+BEGIN SELECT
+    o.id INTO
+        result_order_id
+    FROM
+        orders o
+    WHERE
+        o.buyer_user_id = p_buyer_user_id
+        AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF NOT EXISTS(
+    SELECT
+        1
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id
+) THEN result_failure := 'BUYER_NOT_FOUND';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+-- Lock the products and then the users, each in ascending id order, like PESSIMISTIC_LOCKING.
+
+PERFORM 1
+FROM
+products p
+WHERE
+p.id = ANY(p_product_ids)
+ORDER BY
+p.id FOR UPDATE;
+    
+    FOR v_item IN SELECT
+        i.product_id,
+        i.quantity,
+        p.quantity AS stock,
+        p.price
+    FROM
+        UNNEST(
+            p_product_ids,
+            p_quantities
+        ) WITH ORDINALITY AS i(
+            product_id,
+            quantity,
+            seq
+        )
+    LEFT JOIN products p ON
+        p.id = i.product_id
+    ORDER BY
+        i.seq LOOP IF v_item.stock IS NULL THEN result_failure := 'PRODUCT_NOT_FOUND';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF v_item.stock < v_item.quantity THEN result_failure := 'INSUFFICIENT_STOCK';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+v_total := v_total + v_item.price * v_item.quantity;
+END LOOP;
+
+PERFORM 1
+FROM
+users u
+WHERE
+u.id = p_buyer_user_id
+OR u.id IN(
+    SELECT
+        p.user_id
+    FROM
+        products p
+    WHERE
+        p.id = ANY(p_product_ids)
+)
+ORDER BY
+u.id FOR UPDATE;
+    
+    -- A concurrent request with the same request id holds the buyer lock until it commits.
+SELECT
+        o.id INTO
+            result_order_id
+        FROM
+            orders o
+        WHERE
+            o.buyer_user_id = p_buyer_user_id
+            AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+SELECT
+    u.balance INTO
+        v_balance
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id;
+
+IF v_balance < v_total THEN result_failure := 'INSUFFICIENT_BALANCE';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+UPDATE
+    products p
+SET
+    quantity = p.quantity - i.quantity
+FROM
+    UNNEST(
+        p_product_ids,
+        p_quantities
+    ) AS i(
+        product_id,
+        quantity
+    )
+WHERE
+    p.id = i.product_id;
+
+UPDATE
+    users u
+SET
+    balance = u.balance + c.profit
+FROM
+    (
+        SELECT
+            p.user_id,
+            SUM( p.price * i.quantity ) AS profit
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            )
+        JOIN products p ON
+            p.id = i.product_id
+        GROUP BY
+            p.user_id
+    ) c
+WHERE
+    u.id = c.user_id;
+
+UPDATE
+    users u
+SET
+    balance = u.balance - v_total
+WHERE
+    u.id = p_buyer_user_id;
+
+INSERT
+    INTO
+        orders(
+            buyer_user_id,
+            id,
+            request_id
+        )
+    VALUES(
+        p_buyer_user_id,
+        p_order_id,
+        p_request_id
+    );
+
+INSERT
+    INTO
+        purchase_items(
+            quantity,
+            order_id,
+            product_id
+        ) SELECT
+            i.quantity,
+            p_order_id,
+            i.product_id
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            );
+
+result_order_id := p_order_id;
+
+RETURN NEXT;
+END;
+
+$$;
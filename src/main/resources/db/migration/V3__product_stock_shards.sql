@@ -0,0 +1,395 @@
+ALTER TABLE
+    products ADD stock_shards INTEGER NOT NULL DEFAULT 0;
+
+CREATE
+    TABLE
+        product_stock_shards(
+            product_id UUID NOT NULL,
+            shard INTEGER NOT NULL,
+            quantity INTEGER NOT NULL,
+            PRIMARY KEY(
+                product_id,
+                shard
+            ),
+            CONSTRAINT FK_product_stock_shards_product_id FOREIGN KEY(product_id) REFERENCES products(id) ON
+            DELETE
+                CASCADE
+        );
+
+-- Takes the quantity from the shards in shard order, assuming the caller has locked them and
+-- checked that they hold enough in total.
+CREATE
+    FUNCTION drain_stock_shards(
+        p_product_id UUID,
+        p_quantity INTEGER
+    ) RETURNS VOID LANGUAGE plpgsql AS $$ DECLARE v_shard RECORD;
+
+v_remaining INTEGER := p_quantity;
+
+BEGIN FOR v_shard IN SELECT
+    s.shard,
+    s.quantity
+FROM
+    product_stock_shards s
+WHERE
+    s.product_id = p_product_id
+    AND s.quantity > 0
+ORDER BY
+    s.shard LOOP UPDATE
+        product_stock_shards s
+    SET
+        quantity = s.quantity - LEAST(
+            v_shard.quantity,
+            v_remaining
+        )
+    WHERE
+        s.product_id = p_product_id
+        AND s.shard = v_shard.shard;
+
+v_remaining := v_remaining - LEAST(
+    v_shard.quantity,
+    v_remaining
+);
+
+EXIT
+WHEN v_remaining = 0;
+END LOOP;
+END;
+
+$$;
+
+-- Takes the quantity from a randomly chosen shard, falling back to the other shards when it does
+-- not hold enough, and to several shards when none of them holds enough alone. Returns false and
+-- changes nothing if all the shards together do not hold enough.
+CREATE
+    FUNCTION take_sharded_stock(
+        p_product_id UUID,
+        p_quantity INTEGER
+    ) RETURNS BOOLEAN LANGUAGE plpgsql AS $$ DECLARE v_shards INTEGER;
+
+v_start INTEGER;
+
+BEGIN SELECT
+    p.stock_shards INTO
+        v_shards
+    FROM
+        products p
+    WHERE
+        p.id = p_product_id;
+
+IF NOT FOUND
+OR v_shards = 0 THEN RETURN FALSE;
+END IF;
+
+v_start := FLOOR( random()* v_shards );
+
+FOR i IN 0.. v_shards - 1 LOOP UPDATE
+    product_stock_shards s
+SET
+    quantity = s.quantity - p_quantity
+WHERE
+    s.product_id = p_product_id
+    AND s.shard =(
+        v_start + i
+    )% v_shards
+    AND s.quantity >= p_quantity;
+
+IF FOUND THEN RETURN TRUE;
+END IF;
+END LOOP;
+
+IF(
+    SELECT
+        COALESCE(
+            SUM( l.quantity ),
+            0
+        )
+    FROM
+        (
+            SELECT
+                s.quantity
+            FROM
+                product_stock_shards s
+            WHERE
+                s.product_id = p_product_id
+            ORDER BY
+                s.shard FOR UPDATE
+        ) l
+)< p_quantity THEN RETURN FALSE;
+END IF;
+
+PERFORM drain_stock_shards(
+    p_product_id,
+    p_quantity
+);
+
+RETURN TRUE;
+END;
+
+$$;
+
+-- Same as V2 except that the stock of a sharded product is the sum of its shards. The shards are
+-- locked after the products and before the users.
+CREATE
+    OR REPLACE FUNCTION place_order(
+        p_order_id UUID,
+        p_buyer_user_id UUID,
+        p_request_id UUID,
+        p_product_ids UUID [],
+        p_quantities INTEGER []
+    ) RETURNS TABLE
+        (
+            result_order_id UUID,
+            result_failure VARCHAR,
+            result_product_id UUID
+        ) LANGUAGE plpgsql AS $$ DECLARE v_item RECORD;
+
+v_total NUMERIC := 0;
+
+v_balance NUMERIC;
+
+BEGIN SELECT
+    o.id INTO
+        result_order_id
+    FROM
+        orders o
+    WHERE
+        o.buyer_user_id = p_buyer_user_id
+        AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF NOT EXISTS(
+    SELECT
+        1
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id
+) THEN result_failure := 'BUYER_NOT_FOUND';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+PERFORM 1
+FROM
+products p
+WHERE
+p.id = ANY(p_product_ids)
+ORDER BY
+p.id FOR UPDATE;
+    
+    PERFORM 1
+FROM
+    product_stock_shards s
+WHERE
+    s.product_id = ANY(p_product_ids)
+ORDER BY
+    s.product_id,
+    s.shard FOR UPDATE;
+        
+        FOR v_item IN SELECT
+            i.product_id,
+            i.quantity,
+            p.id AS found_id,
+            CASE
+                WHEN p.stock_shards = 0 THEN p.quantity
+                ELSE(
+                    SELECT
+                        COALESCE(
+                            SUM( s.quantity ),
+                            0
+                        )
+                    FROM
+                        product_stock_shards s
+                    WHERE
+                        s.product_id = p.id
+                )
+            END AS stock,
+            p.price
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) WITH ORDINALITY AS i(
+                product_id,
+                quantity,
+                seq
+            )
+        LEFT JOIN products p ON
+            p.id = i.product_id
+        ORDER BY
+            i.seq LOOP IF v_item.found_id IS NULL THEN result_failure := 'PRODUCT_NOT_FOUND';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF v_item.stock < v_item.quantity THEN result_failure := 'INSUFFICIENT_STOCK';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+v_total := v_total + v_item.price * v_item.quantity;
+END LOOP;
+
+PERFORM 1
+FROM
+users u
+WHERE
+u.id = p_buyer_user_id
+OR u.id IN(
+    SELECT
+        p.user_id
+    FROM
+        products p
+    WHERE
+        p.id = ANY(p_product_ids)
+)
+ORDER BY
+u.id FOR UPDATE;
+    
+    SELECT
+        o.id INTO
+            result_order_id
+        FROM
+            orders o
+        WHERE
+            o.buyer_user_id = p_buyer_user_id
+            AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+SELECT
+    u.balance INTO
+        v_balance
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id;
+
+IF v_balance < v_total THEN result_failure := 'INSUFFICIENT_BALANCE';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+UPDATE
+    products p
+SET
+    quantity = p.quantity - i.quantity
+FROM
+    UNNEST(
+        p_product_ids,
+        p_quantities
+    ) AS i(
+        product_id,
+        quantity
+    )
+WHERE
+    p.id = i.product_id
+    AND p.stock_shards = 0;
+
+PERFORM drain_stock_shards(
+    i.product_id,
+    i.quantity
+)
+FROM
+UNNEST(
+    p_product_ids,
+    p_quantities
+) AS i(
+    product_id,
+    quantity
+)
+JOIN products p ON
+p.id = i.product_id
+WHERE
+p.stock_shards > 0;
+
+UPDATE
+    users u
+SET
+    balance = u.balance + c.profit
+FROM
+    (
+        SELECT
+            p.user_id,
+            SUM( p.price * i.quantity ) AS profit
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            )
+        JOIN products p ON
+            p.id = i.product_id
+        GROUP BY
+            p.user_id
+    ) c
+WHERE
+    u.id = c.user_id;
+
+UPDATE
+    users u
+SET
+    balance = u.balance - v_total
+WHERE
+    u.id = p_buyer_user_id;
+
+INSERT
+    INTO
+        orders(
+            buyer_user_id,
+            id,
+            request_id
+        )
+    VALUES(
+        p_buyer_user_id,
+        p_order_id,
+        p_request_id
+    );
+
+INSERT
+    INTO
+        purchase_items(
+            quantity,
+            order_id,
+            product_id
+        ) SELECT
+            i.quantity,
+            p_order_id,
+            i.product_id
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            );
+
+result_order_id := p_order_id;
+
+RETURN NEXT;
+END;
+
+$$;
@@ -0,0 +1,375 @@
+-- Credits to users, see BalanceLedger. There is no foreign key to users on purpose: checking it
+-- would lock the user row in KEY SHARE mode for every insert, and the row of a popular seller
+-- would become a hotspot again.
+CREATE
+    TABLE
+        balance_ledger(
+            id BIGSERIAL NOT NULL,
+            user_id UUID NOT NULL,
+            order_id UUID NOT NULL,
+            delta NUMERIC(
+                19,
+                10
+            ) NOT NULL,
+            PRIMARY KEY(id)
+        );
+
+CREATE
+    INDEX idx_balance_ledger_user_id ON
+    balance_ledger(user_id);
+
+-- Locks the user and moves the user's ledger entries into users.balance, so the balance can be
+-- checked and debited in place. Returns false if the user does not exist.
+CREATE
+    FUNCTION fold_balance_ledger(
+        p_user_id UUID
+    ) RETURNS BOOLEAN LANGUAGE plpgsql AS $$ BEGIN PERFORM 1
+FROM
+    users u
+WHERE
+    u.id = p_user_id FOR NO KEY UPDATE;
+        
+        IF NOT FOUND THEN RETURN FALSE;
+END IF;
+
+WITH folded AS(
+    DELETE
+    FROM
+        balance_ledger l
+    WHERE
+        l.user_id = p_user_id RETURNING l.delta
+) UPDATE
+    users u
+SET
+    balance = u.balance +(
+        SELECT
+            SUM( f.delta )
+        FROM
+            folded f
+    )
+WHERE
+    u.id = p_user_id
+    AND EXISTS(
+        SELECT
+            1
+        FROM
+            folded
+    );
+
+RETURN TRUE;
+END;
+
+$$;
+
+-- Folds the ledger entries of up to p_batch_size users. Users locked by running orders are skipped
+-- and left for the next run. Returns the number of users folded.
+CREATE
+    FUNCTION compact_balance_ledger(
+        p_batch_size INTEGER
+    ) RETURNS INTEGER LANGUAGE plpgsql AS $$ DECLARE v_user_ids UUID [];
+
+BEGIN SELECT
+    array_agg(c.id) INTO
+        v_user_ids
+    FROM
+        (
+            SELECT
+                u.id
+            FROM
+                users u
+            WHERE
+                u.id IN(
+                    SELECT
+                        DISTINCT l.user_id
+                    FROM
+                        balance_ledger l
+                )
+            ORDER BY
+                u.id LIMIT p_batch_size FOR NO KEY UPDATE
+                    SKIP LOCKED
+        ) c;
+
+IF v_user_ids IS NULL THEN RETURN 0;
+END IF;
+
+WITH folded AS(
+    DELETE
+    FROM
+        balance_ledger l
+    WHERE
+        l.user_id = ANY(v_user_ids) RETURNING l.user_id,
+        l.delta
+) UPDATE
+    users u
+SET
+    balance = u.balance + f.total
+FROM
+    (
+        SELECT
+            f.user_id,
+            SUM( f.delta ) AS total
+        FROM
+            folded f
+        GROUP BY
+            f.user_id
+    ) f
+WHERE
+    u.id = f.user_id;
+
+RETURN array_length(
+    v_user_ids,
+    1
+);
+END;
+
+$$;
+
+-- Same as V3 except that only the buyer is locked and debited in place. The sellers are credited
+-- through the ledger.
+CREATE
+    OR REPLACE FUNCTION place_order(
+        p_order_id UUID,
+        p_buyer_user_id UUID,
+        p_request_id UUID,
+        p_product_ids UUID [],
+        p_quantities INTEGER []
+    ) RETURNS TABLE
+        (
+            result_order_id UUID,
+            result_failure VARCHAR,
+            result_product_id UUID
+        ) LANGUAGE plpgsql AS $$ DECLARE v_item RECORD;
+
+v_total NUMERIC := 0;
+
+v_balance NUMERIC;
+
+BEGIN SELECT
+    o.id INTO
+        result_order_id
+    FROM
+        orders o
+    WHERE
+        o.buyer_user_id = p_buyer_user_id
+        AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF NOT EXISTS(
+    SELECT
+        1
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id
+) THEN result_failure := 'BUYER_NOT_FOUND';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+PERFORM 1
+FROM
+products p
+WHERE
+p.id = ANY(p_product_ids)
+ORDER BY
+p.id FOR UPDATE;
+    
+    PERFORM 1
+FROM
+    product_stock_shards s
+WHERE
+    s.product_id = ANY(p_product_ids)
+ORDER BY
+    s.product_id,
+    s.shard FOR UPDATE;
+        
+        FOR v_item IN SELECT
+            i.product_id,
+            i.quantity,
+            p.id AS found_id,
+            CASE
+                WHEN p.stock_shards = 0 THEN p.quantity
+                ELSE(
+                    SELECT
+                        COALESCE(
+                            SUM( s.quantity ),
+                            0
+                        )
+                    FROM
+                        product_stock_shards s
+                    WHERE
+                        s.product_id = p.id
+                )
+            END AS stock,
+            p.price
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) WITH ORDINALITY AS i(
+                product_id,
+                quantity,
+                seq
+            )
+        LEFT JOIN products p ON
+            p.id = i.product_id
+        ORDER BY
+            i.seq LOOP IF v_item.found_id IS NULL THEN result_failure := 'PRODUCT_NOT_FOUND';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF v_item.stock < v_item.quantity THEN result_failure := 'INSUFFICIENT_STOCK';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+v_total := v_total + v_item.price * v_item.quantity;
+END LOOP;
+
+PERFORM fold_balance_ledger(p_buyer_user_id);
+
+SELECT
+    o.id INTO
+        result_order_id
+    FROM
+        orders o
+    WHERE
+        o.buyer_user_id = p_buyer_user_id
+        AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+SELECT
+    u.balance INTO
+        v_balance
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id;
+
+IF v_balance < v_total THEN result_failure := 'INSUFFICIENT_BALANCE';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+UPDATE
+    products p
+SET
+    quantity = p.quantity - i.quantity
+FROM
+    UNNEST(
+        p_product_ids,
+        p_quantities
+    ) AS i(
+        product_id,
+        quantity
+    )
+WHERE
+    p.id = i.product_id
+    AND p.stock_shards = 0;
+
+PERFORM drain_stock_shards(
+    i.product_id,
+    i.quantity
+)
+FROM
+UNNEST(
+    p_product_ids,
+    p_quantities
+) AS i(
+    product_id,
+    quantity
+)
+JOIN products p ON
+p.id = i.product_id
+WHERE
+p.stock_shards > 0;
+
+UPDATE
+    users u
+SET
+    balance = u.balance - v_total
+WHERE
+    u.id = p_buyer_user_id;
+
+INSERT
+    INTO
+        balance_ledger(
+            user_id,
+            order_id,
+            delta
+        ) SELECT
+            p.user_id,
+            p_order_id,
+            SUM( p.price * i.quantity )
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            )
+        JOIN products p ON
+            p.id = i.product_id
+        GROUP BY
+            p.user_id;
+
+INSERT
+    INTO
+        orders(
+            buyer_user_id,
+            id,
+            request_id
+        )
+    VALUES(
+        p_buyer_user_id,
+        p_order_id,
+        p_request_id
+    );
+
+INSERT
+    INTO
+        purchase_items(
+            quantity,
+            order_id,
+            product_id
+        ) SELECT
+            i.quantity,
+            p_order_id,
+            i.product_id
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            );
+
+result_order_id := p_order_id;
+
+RETURN NEXT;
+END;
+
+$$;
@@ -0,0 +1,10 @@
+-- An order credits each seller at most once, so a credit can never be applied twice.
+ALTER TABLE
+    balance_ledger ADD CONSTRAINT UK_balance_ledger_order_id_user_id UNIQUE(
+        order_id,
+        user_id
+    );
+
+-- Used to measure how long the oldest credit has been waiting to be folded into users.balance.
+ALTER TABLE
+    balance_ledger ADD created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now();
@@ -0,0 +1,124 @@
+-- Stock held for a buyer until the reservation is confirmed into an order or expires. The stock is
+-- taken from the products when reserving, so the items do not reference the products, which would
+-- take a KEY SHARE lock on the product row with every insert.
+CREATE
+    TABLE
+        stock_reservations(
+            id UUID NOT NULL,
+            buyer_user_id UUID NOT NULL,
+            expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+            PRIMARY KEY(id)
+        );
+
+CREATE
+    INDEX idx_stock_reservations_expires_at ON
+    stock_reservations(expires_at);
+
+CREATE
+    TABLE
+        stock_reservation_items(
+            reservation_id UUID NOT NULL,
+            product_id UUID NOT NULL,
+            quantity INTEGER NOT NULL,
+            PRIMARY KEY(
+                reservation_id,
+                product_id
+            ),
+            CONSTRAINT FK_stock_reservation_items_reservation_id FOREIGN KEY(reservation_id) REFERENCES stock_reservations(id) ON
+            DELETE
+                CASCADE
+        );
+
+-- Deletes up to p_batch_size expired reservations and gives their stock back. Reservations being
+-- confirmed are skipped. The products are locked in ascending id order and before the shards, like
+-- the orders lock them. The stock of a sharded product goes back to its first shard. Returns the
+-- number of reservations released.
+CREATE
+    FUNCTION release_expired_reservations(
+        p_batch_size INTEGER
+    ) RETURNS INTEGER LANGUAGE plpgsql AS $$ DECLARE v_reservation_ids UUID [];
+
+BEGIN SELECT
+    array_agg(e.id) INTO
+        v_reservation_ids
+    FROM
+        (
+            SELECT
+                r.id
+            FROM
+                stock_reservations r
+            WHERE
+                r.expires_at <= now()
+            ORDER BY
+                r.expires_at LIMIT p_batch_size FOR UPDATE
+                    SKIP LOCKED
+        ) e;
+
+IF v_reservation_ids IS NULL THEN RETURN 0;
+END IF;
+
+PERFORM 1
+FROM
+products p
+WHERE
+p.id IN(
+    SELECT
+        i.product_id
+    FROM
+        stock_reservation_items i
+    WHERE
+        i.reservation_id = ANY(v_reservation_ids)
+)
+ORDER BY
+p.id FOR UPDATE;
+    
+    WITH released AS(
+        DELETE
+        FROM
+            stock_reservation_items i
+        WHERE
+            i.reservation_id = ANY(v_reservation_ids) RETURNING i.product_id,
+            i.quantity
+    ),
+    totals AS(
+        SELECT
+            r.product_id,
+            SUM( r.quantity ) AS quantity
+        FROM
+            released r
+        GROUP BY
+            r.product_id
+    ),
+    restocked AS(
+        UPDATE
+            products p
+        SET
+            quantity = p.quantity + t.quantity
+        FROM
+            totals t
+        WHERE
+            p.id = t.product_id
+            AND p.stock_shards = 0
+    ) UPDATE
+        product_stock_shards s
+    SET
+        quantity = s.quantity + t.quantity
+    FROM
+        totals t
+    WHERE
+        s.product_id = t.product_id
+        AND s.shard = 0;
+
+DELETE
+FROM
+    stock_reservations r
+WHERE
+    r.id = ANY(v_reservation_ids);
+
+RETURN array_length(
+    v_reservation_ids,
+    1
+);
+END;
+
+$$;
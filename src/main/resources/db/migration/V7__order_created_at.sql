@@ -0,0 +1,12 @@
+-- Orders are listed newest first per buyer, with (created_at, id) as the keyset. The index lets a
+-- page be read with an index range scan of the page size, however many orders the buyer has.
+ALTER TABLE
+    orders ADD created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now();
+
+CREATE
+    INDEX idx_orders_buyer_user_id_created_at_id ON
+    orders(
+        buyer_user_id,
+        created_at DESC,
+        id DESC
+    );
@@ -0,0 +1,278 @@
+-- The purchase items of an order can be kept on the order row itself as two parallel arrays,
+-- instead of one purchase_items row per item. An order then costs one inserted row and one primary
+-- key update, and no foreign key check, which takes a share lock on each purchased product. The
+-- arrays are null for the orders stored as purchase_items rows, which are read as before.
+ALTER TABLE
+    orders ADD product_ids UUID [],
+    ADD quantities INTEGER [],
+    ADD CONSTRAINT CK_orders_purchase_items_arrays CHECK(
+        CARDINALITY(product_ids)= CARDINALITY(quantities)
+    );
+
+-- Same as the V4 function except that the purchase items are stored as given by p_storage, either
+-- 'ROWS' or 'ARRAYS'. The V4 function is kept, for the servers that have not been upgraded yet.
+CREATE
+    FUNCTION place_order(
+        p_order_id UUID,
+        p_buyer_user_id UUID,
+        p_request_id UUID,
+        p_product_ids UUID [],
+        p_quantities INTEGER [],
+        p_storage VARCHAR
+    ) RETURNS TABLE
+        (
+            result_order_id UUID,
+            result_failure VARCHAR,
+            result_product_id UUID
+        ) LANGUAGE plpgsql AS $$ DECLARE v_item RECORD;
+
+v_total NUMERIC := 0;
+
+v_balance NUMERIC;
+
+BEGIN SELECT
+    o.id INTO
+        result_order_id
+    FROM
+        orders o
+    WHERE
+        o.buyer_user_id = p_buyer_user_id
+        AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF NOT EXISTS(
+    SELECT
+        1
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id
+) THEN result_failure := 'BUYER_NOT_FOUND';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+PERFORM 1
+FROM
+products p
+WHERE
+p.id = ANY(p_product_ids)
+ORDER BY
+p.id FOR UPDATE;
+    
+    PERFORM 1
+FROM
+    product_stock_shards s
+WHERE
+    s.product_id = ANY(p_product_ids)
+ORDER BY
+    s.product_id,
+    s.shard FOR UPDATE;
+        
+        FOR v_item IN SELECT
+            i.product_id,
+            i.quantity,
+            p.id AS found_id,
+            CASE
+                WHEN p.stock_shards = 0 THEN p.quantity
+                ELSE(
+                    SELECT
+                        COALESCE(
+                            SUM( s.quantity ),
+                            0
+                        )
+                    FROM
+                        product_stock_shards s
+                    WHERE
+                        s.product_id = p.id
+                )
+            END AS stock,
+            p.price
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) WITH ORDINALITY AS i(
+                product_id,
+                quantity,
+                seq
+            )
+        LEFT JOIN products p ON
+            p.id = i.product_id
+        ORDER BY
+            i.seq LOOP IF v_item.found_id IS NULL THEN result_failure := 'PRODUCT_NOT_FOUND';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+IF v_item.stock < v_item.quantity THEN result_failure := 'INSUFFICIENT_STOCK';
+
+result_product_id := v_item.product_id;
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+v_total := v_total + v_item.price * v_item.quantity;
+END LOOP;
+
+PERFORM fold_balance_ledger(p_buyer_user_id);
+
+SELECT
+    o.id INTO
+        result_order_id
+    FROM
+        orders o
+    WHERE
+        o.buyer_user_id = p_buyer_user_id
+        AND o.request_id = p_request_id;
+
+IF FOUND THEN RETURN NEXT;
+
+RETURN;
+END IF;
+
+SELECT
+    u.balance INTO
+        v_balance
+    FROM
+        users u
+    WHERE
+        u.id = p_buyer_user_id;
+
+IF v_balance < v_total THEN result_failure := 'INSUFFICIENT_BALANCE';
+
+RETURN NEXT;
+
+RETURN;
+END IF;
+
+UPDATE
+    products p
+SET
+    quantity = p.quantity - i.quantity
+FROM
+    UNNEST(
+        p_product_ids,
+        p_quantities
+    ) AS i(
+        product_id,
+        quantity
+    )
+WHERE
+    p.id = i.product_id
+    AND p.stock_shards = 0;
+
+PERFORM drain_stock_shards(
+    i.product_id,
+    i.quantity
+)
+FROM
+UNNEST(
+    p_product_ids,
+    p_quantities
+) AS i(
+    product_id,
+    quantity
+)
+JOIN products p ON
+p.id = i.product_id
+WHERE
+p.stock_shards > 0;
+
+UPDATE
+    users u
+SET
+    balance = u.balance - v_total
+WHERE
+    u.id = p_buyer_user_id;
+
+INSERT
+    INTO
+        balance_ledger(
+            user_id,
+            order_id,
+            delta
+        ) SELECT
+            p.user_id,
+            p_order_id,
+            SUM( p.price * i.quantity )
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            )
+        JOIN products p ON
+            p.id = i.product_id
+        GROUP BY
+            p.user_id;
+
+IF p_storage = 'ARRAYS' THEN INSERT
+    INTO
+        orders(
+            buyer_user_id,
+            id,
+            request_id,
+            product_ids,
+            quantities
+        )
+    VALUES(
+        p_buyer_user_id,
+        p_order_id,
+        p_request_id,
+        p_product_ids,
+        p_quantities
+    );
+ELSE INSERT
+    INTO
+        orders(
+            buyer_user_id,
+            id,
+            request_id
+        )
+    VALUES(
+        p_buyer_user_id,
+        p_order_id,
+        p_request_id
+    );
+
+INSERT
+    INTO
+        purchase_items(
+            quantity,
+            order_id,
+            product_id
+        ) SELECT
+            i.quantity,
+            p_order_id,
+            i.product_id
+        FROM
+            UNNEST(
+                p_product_ids,
+                p_quantities
+            ) AS i(
+                product_id,
+                quantity
+            );
+END IF;
+
+result_order_id := p_order_id;
+
+RETURN NEXT;
+END;
+
+$$;
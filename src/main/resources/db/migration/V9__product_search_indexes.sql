@@ -0,0 +1,26 @@
+-- Products are listed in id order, with the id as the keyset. Each filter of the listing has an
+-- index: the seller's products are a range of (user_id, id), a price range is a range of
+-- (price, id), and a name search is a trigram lookup, which supports ILIKE '%...%'.
+CREATE
+    EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE
+    INDEX idx_products_user_id_id ON
+    products(
+        user_id,
+        id
+    );
+
+CREATE
+    INDEX idx_products_price_id ON
+    products(
+        price,
+        id
+    );
+
+CREATE
+    INDEX idx_products_name_trgm ON
+    products
+        USING gin(
+        name gin_trgm_ops
+    );
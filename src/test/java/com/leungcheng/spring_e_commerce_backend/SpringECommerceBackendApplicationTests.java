@@ -3,19 +3,25 @@ package com.leungcheng.spring_e_commerce_backend;
 import static com.leungcheng.spring_e_commerce_backend.domain.order.PurchaseItems.INVALID_QUANTITY_MSG;
 import static com.leungcheng.spring_e_commerce_backend.testutil.CustomAssertions.assertBigDecimalEquals;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import com.google.common.collect.ImmutableMap;
 import com.jayway.jsonpath.JsonPath;
 import com.leungcheng.spring_e_commerce_backend.domain.Product;
 import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductService;
 import com.leungcheng.spring_e_commerce_backend.domain.User;
 import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
 import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
 import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService;
 import com.leungcheng.spring_e_commerce_backend.validation.ObjectValidator.ObjectValidationException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
@@ -93,6 +99,191 @@ class SpringECommerceBackendApplicationTests {
         .andExpect(jsonPath("$.quantity").value(params.quantity));
   }
 
+  @Test
+  void shouldGetSumOfShardsAsQuantity_WhenProductStockIsSharded() throws Exception {
+    useNewUserAccessToken();
+
+    CreateProductParams params = CreateProductParams.sample();
+    params.quantity = 50;
+    params.stockShards = 8;
+    String productId = createProductAndGetId(params);
+
+    getProduct(productId).andExpect(status().isOk()).andExpect(jsonPath("$.quantity").value(50));
+  }
+
+  @Test
+  void shouldAnswerConditionalGetOfProduct_UntilProductChanges() throws Exception {
+    useNewUserAccessToken();
+
+    CreateProductParams params = CreateProductParams.sample();
+    params.price = "1";
+    params.quantity = 99;
+    String productId = createProductAndGetId(params);
+    String eTag =
+        getProduct(productId)
+            .andExpect(status().isOk())
+            .andExpect(header().exists("ETag"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+
+    getProduct(productId, eTag)
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", eTag))
+        .andExpect(content().string(""));
+
+    createOrder(new CreateOrderParams(UUID.randomUUID().toString(), ImmutableMap.of(productId, 1)))
+        .andExpect(status().isCreated());
+
+    getProduct(productId, eTag)
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", not(eTag)))
+        .andExpect(jsonPath("$.quantity").value(98));
+  }
+
+  @Test
+  void shouldLookUpProductsByIds() throws Exception {
+    useNewUserAccessToken();
+
+    String productId1 = createProductAndGetId(CreateProductParams.sample());
+    String productId2 = createProductAndGetId(CreateProductParams.sample());
+    String missingId = UUID.randomUUID().toString();
+
+    MockHttpServletRequestBuilder getBuilder =
+        get("/products").param("ids", productId2, missingId, productId1);
+    addAuthHeader(getBuilder);
+    mockMvc
+        .perform(getBuilder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(2))
+        .andExpect(jsonPath("$.products[0].id").value(productId2))
+        .andExpect(jsonPath("$.products[1].id").value(productId1))
+        .andExpect(jsonPath("$.missingIds[0]").value(missingId));
+
+    MockHttpServletRequestBuilder postBuilder =
+        post("/products/lookup")
+            .contentType("application/json")
+            .content("{\"ids\": [\"" + productId1 + "\", \"" + missingId + "\"]}");
+    addAuthHeader(postBuilder);
+    mockMvc
+        .perform(postBuilder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(1))
+        .andExpect(jsonPath("$.products[0].id").value(productId1))
+        .andExpect(jsonPath("$.missingIds[0]").value(missingId));
+
+    List<String> manyIds = new ArrayList<>();
+    while (manyIds.size() <= ProductService.MAX_LOOKUP_SIZE) {
+      manyIds.add("\"" + UUID.randomUUID() + "\"");
+    }
+    MockHttpServletRequestBuilder bulkPostBuilder =
+        post("/products/lookup")
+            .contentType("application/json")
+            .content("{\"ids\": [" + String.join(", ", manyIds) + "]}");
+    addAuthHeader(bulkPostBuilder);
+    mockMvc
+        .perform(bulkPostBuilder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.missingIds.length()").value(manyIds.size()));
+  }
+
+  @Test
+  void shouldImportProductsFromCsv_AndReportInvalidRows() throws Exception {
+    UUID userId = useNewUserAccessToken();
+
+    String csv = "name,price,quantity\nProduct 1,1.5,3\nProduct 2,-1,3\n";
+    MockHttpServletRequestBuilder builder =
+        post("/products/import").contentType("text/csv").content(csv);
+    addAuthHeader(builder);
+
+    mockMvc
+        .perform(builder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.importedCount").value(1))
+        .andExpect(jsonPath("$.rejectedCount").value(1))
+        .andExpect(jsonPath("$.errors[0].line").value(3))
+        .andExpect(jsonPath("$.errors[0].message").value(startsWith("price: ")));
+    Product product = productRepository.findAll().iterator().next();
+    assertEquals("Product 1", product.getName());
+    assertEquals(userId, product.getUserId());
+  }
+
+  @Test
+  void shouldImportProductsFromNdjson() throws Exception {
+    useNewUserAccessToken();
+
+    String ndjson =
+        "{\"name\": \"Product 1\", \"price\": 1, \"quantity\": 3}\n"
+            + "{\"name\": \"Product 2\", \"price\": 2, \"quantity\": 4}\n";
+    MockHttpServletRequestBuilder builder =
+        post("/products/import").contentType("application/x-ndjson").content(ndjson);
+    addAuthHeader(builder);
+
+    mockMvc
+        .perform(builder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.importedCount").value(2))
+        .andExpect(jsonPath("$.rejectedCount").value(0));
+    assertEquals(2, productRepository.count());
+  }
+
+  @Test
+  void shouldSearchProducts() throws Exception {
+    UUID sellerId = useNewUserAccessToken();
+
+    CreateProductParams cheapParams = CreateProductParams.sample();
+    cheapParams.name = "Blue Mug";
+    cheapParams.price = "5";
+    String cheapProductId = createProductAndGetId(cheapParams);
+    CreateProductParams expensiveParams = CreateProductParams.sample();
+    expensiveParams.name = "Blue Lamp";
+    expensiveParams.price = "50";
+    String expensiveProductId = createProductAndGetId(expensiveParams);
+
+    MockHttpServletRequestBuilder firstPageBuilder =
+        get("/products")
+            .param("userId", sellerId.toString())
+            .param("q", "blue")
+            .param("limit", "1");
+    addAuthHeader(firstPageBuilder);
+    String nextCursor =
+        JsonPath.read(
+            mockMvc
+                .perform(firstPageBuilder)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.products.length()").value(1))
+                .andExpect(jsonPath("$.products[0].id").value(cheapProductId))
+                .andReturn()
+                .getResponse()
+                .getContentAsString(),
+            "$.nextCursor");
+
+    MockHttpServletRequestBuilder secondPageBuilder =
+        get("/products")
+            .param("userId", sellerId.toString())
+            .param("q", "blue")
+            .param("limit", "1")
+            .param("cursor", nextCursor);
+    addAuthHeader(secondPageBuilder);
+    mockMvc
+        .perform(secondPageBuilder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products[0].id").value(expensiveProductId));
+
+    MockHttpServletRequestBuilder priceBuilder = get("/products").param("minPrice", "10");
+    addAuthHeader(priceBuilder);
+    mockMvc
+        .perform(priceBuilder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.products.length()").value(1))
+        .andExpect(jsonPath("$.products[0].id").value(expensiveProductId))
+        .andExpect(jsonPath("$.nextCursor").isEmpty());
+
+    MockHttpServletRequestBuilder invalidCursorBuilder = get("/products").param("cursor", "x");
+    addAuthHeader(invalidCursorBuilder);
+    mockMvc.perform(invalidCursorBuilder).andExpect(status().isBadRequest());
+  }
+
   @Test
   void shouldIgnoreIdWhenCreateProduct() throws Exception {
     useNewUserAccessToken();
@@ -264,6 +455,39 @@ class SpringECommerceBackendApplicationTests {
     assertBigDecimalEquals(User.INITIAL_BALANCE, actualBalance);
   }
 
+  @Test
+  void shouldAnswerConditionalGetOfAccountInfo_UntilBalanceChanges() throws Exception {
+    useNewUserAccessToken();
+    CreateProductParams productParams = CreateProductParams.sample();
+    productParams.price = "3";
+    String productId = createProductAndGetId(productParams);
+
+    UserCredentials buyerCredentials = new UserCredentials("buyer001", "sample-password");
+    signup(buyerCredentials).andExpect(status().isCreated());
+    MvcResult result = login(buyerCredentials).andReturn();
+    setAccessToken(JsonPath.read(result.getResponse().getContentAsString(), "$.accessToken"));
+    String eTag =
+        getAccountInfo()
+            .andExpect(status().isOk())
+            .andExpect(header().exists("ETag"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+
+    getAccountInfo(eTag)
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", eTag))
+        .andExpect(content().string(""));
+
+    createOrder(new CreateOrderParams(UUID.randomUUID().toString(), ImmutableMap.of(productId, 1)))
+        .andExpect(status().isCreated());
+
+    getAccountInfo(eTag)
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", not(eTag)))
+        .andExpect(jsonPath("$.balance").value(97));
+  }
+
   @Test
   void shouldCreateOrder() throws Exception {
     UUID userId = useNewUserAccessToken();
@@ -293,6 +517,218 @@ class SpringECommerceBackendApplicationTests {
         .andExpect(jsonPath("$.buyerUserId").value(userId.toString()));
   }
 
+  @Test
+  void shouldCreateOrdersInBatch_WithResultOfEachOrder() throws Exception {
+    useNewUserAccessToken();
+
+    CreateProductParams productParams = CreateProductParams.sample();
+    productParams.price = "1";
+    String productId = createProductAndGetId(productParams);
+
+    String requestId1 = UUID.randomUUID().toString();
+    String requestId2 = UUID.randomUUID().toString();
+    String content =
+        "["
+            + new CreateOrderParams(requestId1, ImmutableMap.of(productId, 2)).toContent()
+            + ","
+            + new CreateOrderParams(requestId2, ImmutableMap.of(productId, -1)).toContent()
+            + "]";
+    MockHttpServletRequestBuilder builder =
+        post("/orders/batch").contentType("application/json").content(content);
+    addAuthHeader(builder);
+
+    mockMvc
+        .perform(builder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].requestId").value(requestId1))
+        .andExpect(jsonPath("$[0].status").value("CREATED"))
+        .andExpect(jsonPath("$[0].order.purchaseItems.productIdToQuantity." + productId).value(2))
+        .andExpect(jsonPath("$[1].requestId").value(requestId2))
+        .andExpect(jsonPath("$[1].status").value("FAILED"))
+        .andExpect(jsonPath("$[1].reason").value(INVALID_QUANTITY_MSG));
+  }
+
+  @Test
+  void shouldReserveAndConfirmOrder() throws Exception {
+    useNewUserAccessToken();
+
+    CreateProductParams productParams = CreateProductParams.sample();
+    productParams.price = "1";
+    productParams.quantity = 5;
+    String productId = createProductAndGetId(productParams);
+
+    MockHttpServletRequestBuilder reserveBuilder =
+        post("/reservations")
+            .contentType("application/json")
+            .content("{\"productIdToQuantity\":{\"" + productId + "\":2}}");
+    addAuthHeader(reserveBuilder);
+    String reservation =
+        mockMvc
+            .perform(reserveBuilder)
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.purchaseItems.productIdToQuantity." + productId).value(2))
+            .andExpect(jsonPath("$.expiresAt").exists())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+    String reservationId = JsonPath.read(reservation, "$.id");
+
+    MockHttpServletRequestBuilder confirmBuilder =
+        post("/reservations/" + reservationId + "/confirm");
+    addAuthHeader(confirmBuilder);
+    mockMvc
+        .perform(confirmBuilder)
+        .andExpect(status().isCreated())
+        .andExpect(jsonPath("$.requestId").value(reservationId))
+        .andExpect(jsonPath("$.purchaseItems.productIdToQuantity." + productId).value(2));
+  }
+
+  @Test
+  void shouldGet404WhenConfirmingUnknownReservation() throws Exception {
+    useNewUserAccessToken();
+
+    MockHttpServletRequestBuilder builder = post("/reservations/" + UUID.randomUUID() + "/confirm");
+    addAuthHeader(builder);
+    mockMvc.perform(builder).andExpect(status().isNotFound());
+  }
+
+  @Test
+  void shouldGetOwnOrders() throws Exception {
+    useNewUserAccessToken();
+
+    CreateProductParams productParams = CreateProductParams.sample();
+    productParams.price = "1";
+    String productId = createProductAndGetId(productParams);
+    String orderId =
+        JsonPath.read(
+            createOrder(
+                    new CreateOrderParams(
+                        UUID.randomUUID().toString(), ImmutableMap.of(productId, 1)))
+                .andReturn()
+                .getResponse()
+                .getContentAsString(),
+            "$.id");
+    createOrder(new CreateOrderParams(UUID.randomUUID().toString(), ImmutableMap.of(productId, 2)));
+
+    MockHttpServletRequestBuilder oneBuilder = get("/orders/" + orderId);
+    addAuthHeader(oneBuilder);
+    mockMvc
+        .perform(oneBuilder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.id").value(orderId))
+        .andExpect(jsonPath("$.createdAt").exists());
+
+    MockHttpServletRequestBuilder firstPageBuilder = get("/orders").param("limit", "1");
+    addAuthHeader(firstPageBuilder);
+    String nextCursor =
+        JsonPath.read(
+            mockMvc
+                .perform(firstPageBuilder)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orders.length()").value(1))
+                .andExpect(
+                    jsonPath("$.orders[0].purchaseItems.productIdToQuantity." + productId).value(2))
+                .andReturn()
+                .getResponse()
+                .getContentAsString(),
+            "$.nextCursor");
+
+    MockHttpServletRequestBuilder secondPageBuilder =
+        get("/orders").param("limit", "1").param("cursor", nextCursor);
+    addAuthHeader(secondPageBuilder);
+    mockMvc
+        .perform(secondPageBuilder)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.orders[0].id").value(orderId));
+
+    MockHttpServletRequestBuilder notFoundBuilder = get("/orders/" + UUID.randomUUID());
+    addAuthHeader(notFoundBuilder);
+    mockMvc.perform(notFoundBuilder).andExpect(status().isNotFound());
+  }
+
+  @Test
+  void shouldExportOrdersAsNdjson() throws Exception {
+    useNewUserAccessToken();
+
+    CreateProductParams productParams = CreateProductParams.sample();
+    productParams.price = "1";
+    String productId = createProductAndGetId(productParams);
+    for (int i = 0; i < 2; i++) {
+      createOrder(
+              new CreateOrderParams(UUID.randomUUID().toString(), ImmutableMap.of(productId, 1)))
+          .andExpect(status().isCreated());
+    }
+
+    MockHttpServletRequestBuilder builder = get("/orders/export");
+    addAuthHeader(builder);
+    MvcResult result = mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+
+    String content =
+        mockMvc
+            .perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson"))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+    String[] lines = content.split("\n");
+    assertEquals(2, lines.length);
+    assertEquals(1, (int) JsonPath.read(lines[0], "$.productIdToQuantity." + productId));
+  }
+
+  @Test
+  void shouldCreateOrderAsynchronously() throws Exception {
+    useNewUserAccessToken();
+
+    CreateProductParams productParams = CreateProductParams.sample();
+    productParams.price = "1";
+    String productId = createProductAndGetId(productParams);
+
+    String requestId = UUID.randomUUID().toString();
+    submitOrder(new CreateOrderParams(requestId, ImmutableMap.of(productId, 4)))
+        .andExpect(status().isAccepted())
+        .andExpect(jsonPath("$.requestId").value(requestId))
+        .andExpect(jsonPath("$.status").value("PENDING"));
+
+    waitUntilOrderRequestIsDone(requestId)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("CREATED"))
+        .andExpect(jsonPath("$.order.id").exists())
+        .andExpect(jsonPath("$.order.purchaseItems.productIdToQuantity." + productId).value(4))
+        .andExpect(jsonPath("$.reason").doesNotExist());
+  }
+
+  @Test
+  void shouldReportReason_WhenAsyncOrderFails() throws Exception {
+    useNewUserAccessToken();
+
+    CreateProductParams productParams = CreateProductParams.sample();
+    productParams.quantity = 0;
+    String productId = createProductAndGetId(productParams);
+
+    String requestId = UUID.randomUUID().toString();
+    submitOrder(new CreateOrderParams(requestId, ImmutableMap.of(productId, 1)))
+        .andExpect(status().isAccepted());
+
+    waitUntilOrderRequestIsDone(requestId)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("FAILED"))
+        .andExpect(
+            jsonPath("$.reason")
+                .value(
+                    OrderService.CreateOrderException.insufficientStockMsg(
+                        UUID.fromString(productId))))
+        .andExpect(jsonPath("$.order").doesNotExist());
+  }
+
+  @Test
+  void shouldGet404WhenOrderRequestNotFound() throws Exception {
+    useNewUserAccessToken();
+
+    getOrderRequestStatus(UUID.randomUUID().toString()).andExpect(status().isNotFound());
+  }
+
   @Test
   void shouldCreateOrderApiHandleExceptionDueToNegativeQuantity() throws Exception {
     useNewUserAccessToken();
@@ -330,6 +766,7 @@ class SpringECommerceBackendApplicationTests {
     String name;
     String price;
     int quantity;
+    int stockShards;
 
     static CreateProductParams sample() {
       return new CreateProductParams("Product 1", "10", 50);
@@ -348,6 +785,8 @@ class SpringECommerceBackendApplicationTests {
           + this.price
           + ", \"quantity\": "
           + this.quantity
+          + ", \"stockShards\": "
+          + this.stockShards
           + "}";
     }
   }
@@ -370,6 +809,13 @@ class SpringECommerceBackendApplicationTests {
     return mockMvc.perform(builder);
   }
 
+  private ResultActions getProduct(String id, String ifNoneMatch) throws Exception {
+    MockHttpServletRequestBuilder builder =
+        get("/products/" + id).header("If-None-Match", ifNoneMatch);
+    addAuthHeader(builder);
+    return mockMvc.perform(builder);
+  }
+
   private static class UserCredentials {
     String username;
     String password;
@@ -404,6 +850,12 @@ class SpringECommerceBackendApplicationTests {
     return mockMvc.perform(builder);
   }
 
+  private ResultActions getAccountInfo(String ifNoneMatch) throws Exception {
+    MockHttpServletRequestBuilder builder = get("/me").header("If-None-Match", ifNoneMatch);
+    addAuthHeader(builder);
+    return mockMvc.perform(builder);
+  }
+
   private ResultActions createOrder(CreateOrderParams createOrderParams) throws Exception {
     MockHttpServletRequestBuilder builder =
         post("/orders").contentType("application/json").content(createOrderParams.toContent());
@@ -411,6 +863,34 @@ class SpringECommerceBackendApplicationTests {
     return mockMvc.perform(builder);
   }
 
+  private ResultActions submitOrder(CreateOrderParams createOrderParams) throws Exception {
+    MockHttpServletRequestBuilder builder =
+        post("/orders/async")
+            .contentType("application/json")
+            .content(createOrderParams.toContent());
+    addAuthHeader(builder);
+    return mockMvc.perform(builder);
+  }
+
+  private ResultActions getOrderRequestStatus(String requestId) throws Exception {
+    MockHttpServletRequestBuilder builder = get("/orders/requests/" + requestId);
+    addAuthHeader(builder);
+    return mockMvc.perform(builder);
+  }
+
+  private ResultActions waitUntilOrderRequestIsDone(String requestId) throws Exception {
+    for (int i = 0; i < 100; i++) {
+      ResultActions resultActions = getOrderRequestStatus(requestId);
+      String status =
+          JsonPath.read(resultActions.andReturn().getResponse().getContentAsString(), "$.status");
+      if (!status.equals("PENDING")) {
+        return resultActions;
+      }
+      Thread.sleep(50);
+    }
+    throw new AssertionError("Order request " + requestId + " is still pending");
+  }
+
   private static class CreateOrderParams {
     String requestId;
     ImmutableMap<String, Integer> productIdToQuantity;
@@ -0,0 +1,76 @@
+package com.leungcheng.spring_e_commerce_backend.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs an operation a fixed number of times across a fixed number of threads and reports the
+ * throughput and latency. The benchmarks are only run by the {@code benchmark} gradle task.
+ */
+class BenchmarkRunner {
+  record Result(String name, int succeeded, int failed, Duration elapsed, long[] sortedNanos) {
+    double operationsPerSecond() {
+      return succeeded / (elapsed.toNanos() / 1e9);
+    }
+
+    double percentileMillis(double percentile) {
+      int index = (int) Math.ceil(percentile / 100 * sortedNanos.length) - 1;
+      return sortedNanos[Math.max(index, 0)] / 1e6;
+    }
+
+    void print() {
+      System.out.printf(
+          "%-50s %8.1f ops/s  p50=%.2fms p99=%.2fms succeeded=%d failed=%d elapsed=%dms%n",
+          name,
+          operationsPerSecond(),
+          percentileMillis(50),
+          percentileMillis(99),
+          succeeded,
+          failed,
+          elapsed.toMillis());
+    }
+  }
+
+  /**
+   * @param operation receives the index of the operation, from 0 to {@code operations - 1}
+   */
+  static Result run(String name, int threads, int operations, IntConsumer operation)
+      throws Exception {
+    AtomicInteger failed = new AtomicInteger();
+    long[] nanos = new long[operations];
+    long start = System.nanoTime();
+    try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < operations; i++) {
+        int index = i;
+        futures.add(
+            executor.submit(
+                () -> {
+                  long operationStart = System.nanoTime();
+                  try {
+                    operation.accept(index);
+                  } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                  }
+                  nanos[index] = System.nanoTime() - operationStart;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    Arrays.sort(nanos);
+    Result result = new Result(name, operations - failed.get(), failed.get(), elapsed, nanos);
+    result.print();
+    return result;
+  }
+}
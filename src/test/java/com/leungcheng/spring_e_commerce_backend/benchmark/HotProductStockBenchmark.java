@@ -0,0 +1,128 @@
+package com.leungcheng.spring_e_commerce_backend.benchmark;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductService;
+import com.leungcheng.spring_e_commerce_backend.domain.ShardedStock;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderConcurrencyMode;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService;
+import com.leungcheng.spring_e_commerce_backend.domain.order.PurchaseItems;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compares a single hot product whose stock is kept in its own row with the same product whose
+ * stock is split over {@link #SHARDS} shards.
+ */
+@Tag("benchmark")
+@SpringBootTest
+class HotProductStockBenchmark {
+  private static final int THREADS = 16;
+  private static final int ORDERS = 2000;
+  private static final int SHARDS = 16;
+
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ProductService productService;
+  private @Autowired OrderService orderService;
+  private @Autowired ShardedStock shardedStock;
+  private @Autowired TransactionTemplate transactionTemplate;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  private final List<User> buyers = new ArrayList<>();
+  private Product singleRowProduct;
+  private Product shardedProduct;
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    productRepository.deleteAll();
+    userRepository.deleteAll();
+
+    User seller = userBuilder().username("seller").build();
+    userRepository.save(seller);
+    for (int i = 0; i < THREADS; i++) {
+      buyers.add(userBuilder().username("buyer" + i).balance(new BigDecimal(1_000_000)).build());
+    }
+    userRepository.saveAll(buyers);
+
+    singleRowProduct = productService.createProduct(hotProductBuilder(seller).build());
+    shardedProduct =
+        productService.createProduct(hotProductBuilder(seller).stockShards(SHARDS).build());
+  }
+
+  /**
+   * Takes the stock in a transaction that keeps running for 1ms afterward, like the rest of an
+   * order would, so the row lock of the single row is held for that long.
+   */
+  @Test
+  void stockOnly() throws Exception {
+    BenchmarkRunner.run(
+        "stock only, single row",
+        THREADS,
+        ORDERS,
+        i ->
+            transactionTemplate.executeWithoutResult(
+                status -> {
+                  productRepository.decrementQuantity(singleRowProduct.getId(), 1);
+                  jdbcTemplate.execute("SELECT pg_sleep(0.001)");
+                }));
+    BenchmarkRunner.run(
+        "stock only, " + SHARDS + " shards",
+        THREADS,
+        ORDERS,
+        i ->
+            transactionTemplate.executeWithoutResult(
+                status -> {
+                  shardedStock.take(shardedProduct.getId(), 1);
+                  jdbcTemplate.execute("SELECT pg_sleep(0.001)");
+                }));
+  }
+
+  /**
+   * The seller of the hot product is credited by every order, so its row stays a hotspot that
+   * limits how much the shards help.
+   */
+  @ParameterizedTest
+  @EnumSource(OrderConcurrencyMode.class)
+  void fullOrder(OrderConcurrencyMode mode) throws Exception {
+    BenchmarkRunner.run(
+        "hot product, single row, " + mode,
+        THREADS,
+        ORDERS / 2,
+        i -> createOrder(buyers.get(i % buyers.size()), singleRowProduct, mode));
+    BenchmarkRunner.run(
+        "hot product, " + SHARDS + " shards, " + mode,
+        THREADS,
+        ORDERS / 2,
+        i -> createOrder(buyers.get(i % buyers.size()), shardedProduct, mode));
+  }
+
+  private static Product.Builder hotProductBuilder(User seller) {
+    return productBuilder().quantity(1_000_000).price(BigDecimal.ONE).userId(seller.getId());
+  }
+
+  private void createOrder(User buyer, Product product, OrderConcurrencyMode mode) {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+    orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID(), mode);
+  }
+}
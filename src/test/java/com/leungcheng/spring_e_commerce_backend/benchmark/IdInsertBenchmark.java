@@ -0,0 +1,82 @@
+package com.leungcheng.spring_e_commerce_backend.benchmark;
+
+import com.leungcheng.spring_e_commerce_backend.domain.IdGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Inserts millions of rows keyed by random and by time-ordered UUIDs into a table shaped like
+ * orders, and reports the throughput of each slice of {@link #SLICE_ROWS} rows, the WAL written and
+ * the size of the primary key index. Random keys slow down as the index outgrows the cache, since
+ * each insert then dirties a random index page. The number of rows can be set with {@code
+ * -Dbenchmark.idInsert.rows}.
+ */
+@Tag("benchmark")
+@SpringBootTest
+class IdInsertBenchmark {
+  private static final int ROWS = Integer.getInteger("benchmark.idInsert.rows", 2_000_000);
+  private static final int SLICE_ROWS = 250_000;
+  private static final int BATCH_ROWS = 1000;
+  private static final int THREADS = 4;
+
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate.execute("DROP TABLE IF EXISTS id_insert_benchmark");
+    jdbcTemplate.execute(
+        "CREATE TABLE id_insert_benchmark("
+            + "id UUID PRIMARY KEY, buyer_user_id UUID NOT NULL, request_id UUID NOT NULL,"
+            + " created_at TIMESTAMPTZ NOT NULL DEFAULT now())");
+  }
+
+  @AfterEach
+  void tearDown() {
+    jdbcTemplate.execute("DROP TABLE IF EXISTS id_insert_benchmark");
+  }
+
+  @ParameterizedTest
+  @EnumSource(IdGenerator.Type.class)
+  void insert(IdGenerator.Type generatorType) throws Exception {
+    IdGenerator generator = generatorType.create();
+    long walBefore = currentWalLsn();
+
+    for (int inserted = 0; inserted < ROWS; inserted += SLICE_ROWS) {
+      BenchmarkRunner.run(
+          String.format("%s ids, rows %,d+ (1000 rows/op)", generatorType, inserted),
+          THREADS,
+          SLICE_ROWS / BATCH_ROWS,
+          i -> insertBatch(generator));
+    }
+
+    System.out.printf(
+        "%s ids: WAL %,d MB, primary key index %,d MB%n",
+        generatorType,
+        (currentWalLsn() - walBefore) / 1024 / 1024,
+        jdbcTemplate.queryForObject(
+                "SELECT pg_relation_size('id_insert_benchmark_pkey')", Long.class)
+            / 1024
+            / 1024);
+  }
+
+  private void insertBatch(IdGenerator generator) {
+    List<Object[]> rows = new ArrayList<>(BATCH_ROWS);
+    for (int i = 0; i < BATCH_ROWS; i++) {
+      rows.add(new Object[] {generator.generate(), generator.generate(), generator.generate()});
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO id_insert_benchmark(id, buyer_user_id, request_id) VALUES (?, ?, ?)", rows);
+  }
+
+  private long currentWalLsn() {
+    return jdbcTemplate.queryForObject("SELECT pg_current_wal_lsn() - '0/0'::pg_lsn", Long.class);
+  }
+}
@@ -0,0 +1,125 @@
+package com.leungcheng.spring_e_commerce_backend.benchmark;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderConcurrencyMode;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService;
+import com.leungcheng.spring_e_commerce_backend.domain.order.PurchaseItems;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/** Compares the order throughput of the concurrency modes of {@link OrderService}. */
+@Tag("benchmark")
+@SpringBootTest
+class OrderThroughputBenchmark {
+  private static final int THREADS = 8;
+  private static final int ORDERS = 1000;
+  private static final int PRODUCTS = 50;
+
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+
+  private final List<User> buyers = new ArrayList<>();
+  private final List<Product> products = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    productRepository.deleteAll();
+    userRepository.deleteAll();
+
+    User seller = userBuilder().username("seller").build();
+    userRepository.save(seller);
+    for (int i = 0; i < THREADS; i++) {
+      buyers.add(userBuilder().username("buyer" + i).balance(new BigDecimal(1_000_000)).build());
+    }
+    userRepository.saveAll(buyers);
+    for (int i = 0; i < PRODUCTS; i++) {
+      products.add(
+          productBuilder()
+              .quantity(1_000_000)
+              .price(BigDecimal.ONE)
+              .userId(seller.getId())
+              .build());
+    }
+    productRepository.saveAll(products);
+  }
+
+  @ParameterizedTest
+  @EnumSource(OrderConcurrencyMode.class)
+  void singleHotProduct(OrderConcurrencyMode mode) throws Exception {
+    BenchmarkRunner.run(
+        "single hot product, " + mode,
+        THREADS,
+        ORDERS,
+        i -> createOrder(buyers.get(i % buyers.size()), products.getFirst(), mode));
+  }
+
+  @ParameterizedTest
+  @EnumSource(OrderConcurrencyMode.class)
+  void spreadOverProducts(OrderConcurrencyMode mode) throws Exception {
+    BenchmarkRunner.run(
+        PRODUCTS + " products, " + mode,
+        THREADS,
+        ORDERS,
+        i -> createOrder(buyers.get(i % buyers.size()), products.get(i % products.size()), mode));
+  }
+
+  /**
+   * Shows the cost of committing each order separately. Many clients ordering different products
+   * contend on little but the commits, which {@link OrderConcurrencyMode#GROUP_COMMIT} shares.
+   */
+  @ParameterizedTest
+  @EnumSource(
+      value = OrderConcurrencyMode.class,
+      names = {"GUARDED_UPDATE", "GROUP_COMMIT"})
+  void manyClients(OrderConcurrencyMode mode) throws Exception {
+    int clients = 64;
+    BenchmarkRunner.run(
+        clients + " clients, " + PRODUCTS + " products, " + mode,
+        clients,
+        ORDERS * 4,
+        i -> createOrder(buyers.get(i % buyers.size()), products.get(i % products.size()), mode));
+  }
+
+  /** Shows the cost of the SQL round trips, which grows with the number of line items. */
+  @ParameterizedTest
+  @EnumSource(OrderConcurrencyMode.class)
+  void singleThreadWithTwelveLineItems(OrderConcurrencyMode mode) throws Exception {
+    int lineItems = 12;
+    BenchmarkRunner.run(
+        lineItems + " line items, single thread, " + mode,
+        1,
+        ORDERS / 2,
+        i -> {
+          PurchaseItems purchaseItems = new PurchaseItems();
+          for (int j = 0; j < lineItems; j++) {
+            purchaseItems.setPurchaseItem(products.get((i + j) % products.size()).getId(), 1);
+          }
+          orderService.createOrder(
+              buyers.getFirst().getId(), purchaseItems, UUID.randomUUID(), mode);
+        });
+  }
+
+  private void createOrder(User buyer, Product product, OrderConcurrencyMode mode) {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+    orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID(), mode);
+  }
+}
@@ -0,0 +1,143 @@
+package com.leungcheng.spring_e_commerce_backend.benchmark;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.PurchaseItemsStorage;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compares writing and reading orders of {@link #ITEMS_PER_ORDER} items in each {@link
+ * PurchaseItemsStorage} format. Only the statements that store and load the orders are run, so the
+ * difference is not hidden by the stock and balance updates of a full order.
+ */
+@Tag("benchmark")
+@SpringBootTest
+class PurchaseItemsStorageBenchmark {
+  private static final int THREADS = 16;
+  private static final int ORDERS = 4000;
+  private static final int ITEMS_PER_ORDER = 5;
+  private static final int PRODUCTS = 50;
+  private static final int PAGE_SIZE = 20;
+
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired TransactionTemplate transactionTemplate;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  private final List<User> buyers = new ArrayList<>();
+  private final List<UUID> productIds = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    productRepository.deleteAll();
+    userRepository.deleteAll();
+
+    for (int i = 0; i < THREADS; i++) {
+      buyers.add(userBuilder().username("buyer" + i).build());
+    }
+    userRepository.saveAll(buyers);
+    for (int i = 0; i < PRODUCTS; i++) {
+      Product product = productBuilder().price(BigDecimal.ONE).build();
+      productRepository.save(product);
+      productIds.add(product.getId());
+    }
+  }
+
+  @ParameterizedTest
+  @EnumSource(PurchaseItemsStorage.class)
+  void writeAndRead(PurchaseItemsStorage storage) throws Exception {
+    BenchmarkRunner.run(
+        "write, " + storage,
+        THREADS,
+        ORDERS,
+        i -> transactionTemplate.executeWithoutResult(status -> insertOrder(i, storage)));
+    BenchmarkRunner.run(
+        "read page of " + PAGE_SIZE + ", " + storage,
+        THREADS,
+        ORDERS / 4,
+        i -> readPage(buyers.get(i % buyers.size()).getId(), storage));
+  }
+
+  /** The same statements as Hibernate runs for an order, with the rows batched. */
+  private void insertOrder(int index, PurchaseItemsStorage storage) {
+    UUID orderId = UUID.randomUUID();
+    UUID buyerUserId = buyers.get(index % buyers.size()).getId();
+    UUID[] itemProductIds = new UUID[ITEMS_PER_ORDER];
+    Integer[] quantities = new Integer[ITEMS_PER_ORDER];
+    for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+      itemProductIds[i] = productIds.get((index + i) % PRODUCTS);
+      quantities[i] = i + 1;
+    }
+
+    switch (storage) {
+      case ROWS -> {
+        jdbcTemplate.update(
+            "INSERT INTO orders(id, buyer_user_id, request_id) VALUES (?, ?, ?)",
+            orderId,
+            buyerUserId,
+            UUID.randomUUID());
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+          rows.add(new Object[] {orderId, itemProductIds[i], quantities[i]});
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO purchase_items(order_id, product_id, quantity) VALUES (?, ?, ?)", rows);
+      }
+      case ARRAYS ->
+          jdbcTemplate.update(
+              "INSERT INTO orders(id, buyer_user_id, request_id, product_ids, quantities)"
+                  + " VALUES (?, ?, ?, ?::uuid[], ?::integer[])",
+              orderId,
+              buyerUserId,
+              UUID.randomUUID(),
+              toArrayLiteral(itemProductIds),
+              toArrayLiteral(quantities));
+    }
+  }
+
+  private void readPage(UUID buyerUserId, PurchaseItemsStorage storage) {
+    switch (storage) {
+      case ROWS ->
+          jdbcTemplate.queryForList(
+              "SELECT o.id, i.product_id, i.quantity FROM ("
+                  + " SELECT o.id, o.created_at FROM orders o WHERE o.buyer_user_id = ?"
+                  + " ORDER BY o.created_at DESC, o.id DESC LIMIT ?"
+                  + ") o JOIN purchase_items i ON i.order_id = o.id",
+              buyerUserId,
+              PAGE_SIZE);
+      case ARRAYS ->
+          jdbcTemplate.queryForList(
+              "SELECT o.id, o.product_ids, o.quantities FROM orders o WHERE o.buyer_user_id = ?"
+                  + " ORDER BY o.created_at DESC, o.id DESC LIMIT ?",
+              buyerUserId,
+              PAGE_SIZE);
+    }
+  }
+
+  private static String toArrayLiteral(Object[] values) {
+    StringBuilder literal = new StringBuilder("{");
+    for (int i = 0; i < values.length; i++) {
+      literal.append(i == 0 ? "" : ",").append(values[i]);
+    }
+    return literal.append('}').toString();
+  }
+}
@@ -0,0 +1,181 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.CustomAssertions.assertBigDecimalEquals;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Only run the compactor when the tests ask for it.
+@SpringBootTest(properties = "balanceLedger.compactionInterval=PT1H")
+class BalanceLedgerTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired BalanceLedger balanceLedger;
+  private @Autowired JdbcTemplate jdbcTemplate;
+  private @Autowired TransactionTemplate transactionTemplate;
+  private @Autowired BalanceLedgerCompactor balanceLedgerCompactor;
+  private @Autowired MeterRegistry meterRegistry;
+
+  private final User seller = userBuilder().username("seller").balance(new BigDecimal(5)).build();
+
+  @BeforeEach
+  void setUp() {
+    userRepository.deleteAll();
+    jdbcTemplate.update("DELETE FROM balance_ledger");
+
+    userRepository.save(seller);
+  }
+
+  @Test
+  void shouldIncludeCreditsInBalance() {
+    credit(seller.getId(), new BigDecimal(3));
+    credit(seller.getId(), new BigDecimal("1.5"));
+
+    assertBigDecimalEquals(new BigDecimal("9.5"), getBalance(seller.getId()));
+  }
+
+  @Test
+  void shouldKeepBalance_WhenCreditsAreFolded() {
+    credit(seller.getId(), new BigDecimal(3));
+
+    assertTrue(fold(seller.getId()));
+    assertEquals(0, countEntries());
+    assertBigDecimalEquals(new BigDecimal(8), getBalance(seller.getId()));
+
+    assertFalse(fold(UUID.randomUUID()));
+  }
+
+  @Test
+  void shouldKeepBalance_WhenLedgerIsCompacted() {
+    User anotherSeller = userBuilder().username("another").balance(BigDecimal.ZERO).build();
+    userRepository.save(anotherSeller);
+    credit(seller.getId(), new BigDecimal(3));
+    credit(anotherSeller.getId(), new BigDecimal(4));
+    credit(anotherSeller.getId(), new BigDecimal(4));
+
+    balanceLedger.compact(100);
+
+    assertEquals(0, countEntries());
+    assertBigDecimalEquals(new BigDecimal(8), getBalance(seller.getId()));
+    assertBigDecimalEquals(new BigDecimal(8), getBalance(anotherSeller.getId()));
+  }
+
+  @Test
+  void shouldRejectSecondCreditToSameUserForSameOrder() {
+    UUID orderId = UUID.randomUUID();
+    Map<UUID, BigDecimal> credits = Map.of(seller.getId(), BigDecimal.ONE);
+    transactionTemplate.executeWithoutResult(status -> balanceLedger.credit(orderId, credits));
+
+    assertThrows(
+        DataIntegrityViolationException.class,
+        () ->
+            transactionTemplate.executeWithoutResult(
+                status -> balanceLedger.credit(orderId, credits)));
+    assertBigDecimalEquals(new BigDecimal(6), getBalance(seller.getId()));
+  }
+
+  @Test
+  void shouldReportAgeOfOldestEntryAsSettlementLag() {
+    assertEquals(Duration.ZERO, balanceLedger.getSettlementLag());
+
+    credit(seller.getId(), BigDecimal.ONE);
+    insertEntryCreatedSecondsAgo(seller.getId(), 30);
+
+    Duration lag = balanceLedger.getSettlementLag();
+    assertTrue(lag.compareTo(Duration.ofSeconds(30)) >= 0);
+    assertTrue(lag.compareTo(Duration.ofSeconds(60)) < 0);
+  }
+
+  @Test
+  void shouldSettleCreditsAndUpdateMetrics_WhenCompactorRuns() {
+    insertEntryCreatedSecondsAgo(seller.getId(), 30);
+    double settledBefore = meterRegistry.counter("balance_ledger.settled.users").count();
+
+    balanceLedgerCompactor.compact();
+
+    assertEquals(0, countEntries());
+    assertBigDecimalEquals(new BigDecimal(6), getBalance(seller.getId()));
+    assertEquals(settledBefore + 1, meterRegistry.counter("balance_ledger.settled.users").count());
+    assertEquals(0, meterRegistry.get("balance_ledger.settlement.lag").gauge().value());
+  }
+
+  @Test
+  void shouldNotBlockEachOther_WhenTwoTransactionsCreditTheSameSeller() throws Exception {
+    CountDownLatch credited = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+      Future<?> open =
+          executor.submit(
+              () ->
+                  transactionTemplate.executeWithoutResult(
+                      status -> {
+                        balanceLedger.credit(
+                            UUID.randomUUID(), Map.of(seller.getId(), BigDecimal.ONE));
+                        credited.countDown();
+                        await(done);
+                      }));
+
+      assertTrue(credited.await(10, TimeUnit.SECONDS));
+      transactionTemplate.executeWithoutResult(
+          status -> {
+            // Fails instead of waiting if the credit conflicts with the open transaction.
+            jdbcTemplate.execute("SET LOCAL lock_timeout = '1s'");
+            balanceLedger.credit(UUID.randomUUID(), Map.of(seller.getId(), BigDecimal.TEN));
+          });
+      done.countDown();
+      open.get();
+    }
+
+    assertBigDecimalEquals(new BigDecimal(16), getBalance(seller.getId()));
+  }
+
+  private void credit(UUID userId, BigDecimal amount) {
+    transactionTemplate.executeWithoutResult(
+        status -> balanceLedger.credit(UUID.randomUUID(), Map.of(userId, amount)));
+  }
+
+  private void insertEntryCreatedSecondsAgo(UUID userId, int seconds) {
+    jdbcTemplate.update(
+        "INSERT INTO balance_ledger(user_id, order_id, delta, created_at)"
+            + " VALUES (?, ?, 1, now() - make_interval(secs => ?))",
+        userId,
+        UUID.randomUUID(),
+        seconds);
+  }
+
+  private boolean fold(UUID userId) {
+    return Boolean.TRUE.equals(transactionTemplate.execute(status -> balanceLedger.fold(userId)));
+  }
+
+  private BigDecimal getBalance(UUID userId) {
+    return userRepository.findById(userId).orElseThrow().getBalance();
+  }
+
+  private int countEntries() {
+    return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM balance_ledger", Integer.class);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
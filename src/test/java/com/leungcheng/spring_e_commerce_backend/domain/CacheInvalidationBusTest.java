@@ -0,0 +1,218 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.SpringECommerceBackendApplication;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService;
+import com.leungcheng.spring_e_commerce_backend.domain.order.PurchaseItems;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/** Runs a second node in its own application context, on the same database as this one. */
+@SpringBootTest
+class CacheInvalidationBusTest {
+  private static ConfigurableApplicationContext otherNode;
+
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ProductService productService;
+  private @Autowired OrderService orderService;
+  private @Autowired CacheInvalidationBus invalidationBus;
+  private @Autowired TransactionTemplate transactionTemplate;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+  private final Product product = productBuilder().quantity(99).price(BigDecimal.ONE).build();
+
+  @BeforeAll
+  static void startOtherNode() {
+    otherNode =
+        new SpringApplicationBuilder(SpringECommerceBackendApplication.class)
+            .web(WebApplicationType.NONE)
+            .run();
+    // The listener starts in the background, and evicts everything once it is listening.
+    awaitEquals(true, () -> otherNodeCount("cache.invalidation.flushes") >= 1);
+  }
+
+  @AfterAll
+  static void stopOtherNode() {
+    otherNode.close();
+  }
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    double received = otherNodeCount("cache.invalidation.received");
+    productService.createProduct(product);
+    // So that the invalidation of the new product cannot evict what the tests cache later.
+    awaitEquals(true, () -> otherNodeCount("cache.invalidation.received") > received);
+  }
+
+  @Test
+  void shouldEvictFromOtherNode_WhenOrderChangesStock() {
+    ProductCache otherCache = otherNode.getBean(ProductCache.class);
+    assertEquals(99, otherCache.get(product.getId()).orElseThrow().getQuantity());
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 3);
+
+    orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID());
+
+    awaitEquals(96, () -> otherCache.get(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldEvictEverything_WhenListenConnectionIsReopened() {
+    ProductCache otherCache = otherNode.getBean(ProductCache.class);
+    assertEquals(99, otherCache.get(product.getId()).orElseThrow().getQuantity());
+    // Changed without a notification, as if it had been sent while the connection was down.
+    jdbcTemplate.update("UPDATE products SET quantity = 5 WHERE id = ?", product.getId());
+    double flushes = otherNodeCount("cache.invalidation.flushes");
+
+    jdbcTemplate.queryForList(
+        "SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE application_name = ?",
+        CacheInvalidationBus.LISTENER_APPLICATION_NAME);
+
+    awaitEquals(true, () -> otherNodeCount("cache.invalidation.flushes") > flushes);
+    assertEquals(5, otherCache.get(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldHandBurstOfNotificationsToSubscriberTogether() {
+    List<Collection<UUID>> evictions = new CopyOnWriteArrayList<>();
+    otherNode
+        .getBean(CacheInvalidationBus.class)
+        .subscribe(
+            "burst",
+            new CacheInvalidationBus.Subscriber() {
+              @Override
+              public void evict(Collection<UUID> ids) {
+                evictions.add(ids);
+              }
+
+              @Override
+              public void evictAll() {}
+            });
+    List<UUID> ids = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      ids.add(UUID.randomUUID());
+    }
+
+    // Delivered together at commit, in more than one notification.
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          invalidationBus.publish("burst", ids.subList(0, 500));
+          invalidationBus.publish("burst", ids.subList(500, 1000));
+        });
+
+    awaitEquals(1, evictions::size);
+    assertEquals(new HashSet<>(ids), Set.copyOf(evictions.getFirst()));
+  }
+
+  @Test
+  void shouldNotTellOtherNodes_WhenTransactionRollsBack() {
+    List<Collection<UUID>> evictions = new CopyOnWriteArrayList<>();
+    otherNode
+        .getBean(CacheInvalidationBus.class)
+        .subscribe(
+            "rollback",
+            new CacheInvalidationBus.Subscriber() {
+              @Override
+              public void evict(Collection<UUID> ids) {
+                evictions.add(ids);
+              }
+
+              @Override
+              public void evictAll() {}
+            });
+    UUID rolledBackId = UUID.randomUUID();
+    UUID committedId = UUID.randomUUID();
+
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          invalidationBus.publish("rollback", List.of(rolledBackId));
+          status.setRollbackOnly();
+        });
+    transactionTemplate.executeWithoutResult(
+        status -> invalidationBus.publish("rollback", List.of(committedId)));
+
+    awaitEquals(1, evictions::size);
+    assertEquals(Set.of(committedId), Set.copyOf(evictions.getFirst()));
+  }
+
+  @Test
+  void shouldKeepListening_AfterMalformedNotificationAndFailingSubscriber() {
+    otherNode
+        .getBean(CacheInvalidationBus.class)
+        .subscribe(
+            "failing",
+            new CacheInvalidationBus.Subscriber() {
+              @Override
+              public void evict(Collection<UUID> ids) {
+                throw new IllegalStateException("Failed to evict");
+              }
+
+              @Override
+              public void evictAll() {
+                throw new IllegalStateException("Failed to evict");
+              }
+            });
+    ProductCache otherCache = otherNode.getBean(ProductCache.class);
+    assertEquals(99, otherCache.get(product.getId()).orElseThrow().getQuantity());
+    double flushes = otherNodeCount("cache.invalidation.flushes");
+
+    jdbcTemplate.queryForList(
+        "SELECT pg_notify(?, ?)", CacheInvalidationBus.CHANNEL, "some-node product not-a-uuid");
+    invalidationBus.publish("failing", List.of(UUID.randomUUID()));
+    invalidationBus.publishAll("failing");
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 3);
+    orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID());
+
+    awaitEquals(96, () -> otherCache.get(product.getId()).orElseThrow().getQuantity());
+    // Without reconnecting.
+    assertEquals(flushes, otherNodeCount("cache.invalidation.flushes"));
+  }
+
+  private static double otherNodeCount(String counterName) {
+    return otherNode.getBean(MeterRegistry.class).get(counterName).counter().count();
+  }
+
+  private static <T> void awaitEquals(T expected, Supplier<T> actual) {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!expected.equals(actual.get()) && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    assertEquals(expected, actual.get());
+  }
+}
@@ -0,0 +1,82 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class EntityInsertTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  void shouldInsertNewUserWithOneStatement() {
+    User user = userRepository.save(userBuilder().username("newUser").build());
+
+    assertEquals(1, statistics.getPrepareStatementCount());
+    assertEquals(1, statistics.getEntityInsertCount());
+    assertFalse(user.isNew());
+  }
+
+  @Test
+  void shouldInsertNewProductWithOneStatement() {
+    Product product = productRepository.save(productBuilder().build());
+
+    assertEquals(1, statistics.getPrepareStatementCount());
+    assertEquals(1, statistics.getEntityInsertCount());
+    assertFalse(product.isNew());
+  }
+
+  @Test
+  void shouldUpdateProductBuiltFromSavedProduct() {
+    Product product = productRepository.save(productBuilder().quantity(5).build());
+
+    Product updatedProduct = product.toBuilder().quantity(3).build();
+    assertFalse(updatedProduct.isNew());
+    productRepository.save(updatedProduct);
+
+    assertEquals(1, productRepository.count());
+    assertEquals(3, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldInsertProductBuiltFromUnsavedProduct() {
+    Product product = productBuilder().quantity(5).build();
+
+    Product copy = product.toBuilder().quantity(3).build();
+    assertTrue(copy.isNew());
+    productRepository.save(copy);
+
+    assertEquals(3, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldNotBeNew_WhenLoaded() {
+    User user = userRepository.save(userBuilder().username("loadedUser").build());
+
+    assertFalse(userRepository.findById(user.getId()).orElseThrow().isNew());
+  }
+}
@@ -0,0 +1,96 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Only run the compactor when the tests ask for it.
+@SpringBootTest(properties = "balanceLedger.compactionInterval=PT1H")
+class EntityTagTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired ProductService productService;
+  private @Autowired ShardedStock shardedStock;
+  private @Autowired BalanceLedger balanceLedger;
+  private @Autowired TransactionTemplate transactionTemplate;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  void setUp() {
+    productRepository.deleteAll();
+    userRepository.deleteAll();
+    jdbcTemplate.update("DELETE FROM balance_ledger");
+  }
+
+  @Test
+  void shouldChangeEntityTagOfProduct_WhenStockIsUpdatedBySql() {
+    Product product = productRepository.save(productBuilder().quantity(5).build());
+    String entityTag = productRepository.findEntityTagById(product.getId()).orElseThrow();
+
+    jdbcTemplate.update(
+        "UPDATE products SET quantity = quantity - 1 WHERE id = ?", product.getId());
+
+    String newEntityTag = productRepository.findEntityTagById(product.getId()).orElseThrow();
+    assertNotEquals(entityTag, newEntityTag);
+    assertEquals(
+        newEntityTag, productRepository.findById(product.getId()).orElseThrow().getEntityTag());
+  }
+
+  @Test
+  void shouldChangeEntityTagOfProduct_WhenShardsAreUpdated() {
+    Product product = productBuilder().quantity(8).stockShards(4).build();
+    productService.createProduct(product);
+    String entityTag = productRepository.findEntityTagById(product.getId()).orElseThrow();
+    assertEquals(
+        entityTag, productRepository.findById(product.getId()).orElseThrow().getEntityTag());
+
+    transactionTemplate.executeWithoutResult(status -> shardedStock.take(product.getId(), 1));
+
+    String newEntityTag = productRepository.findEntityTagById(product.getId()).orElseThrow();
+    assertNotEquals(entityTag, newEntityTag);
+    assertEquals(
+        newEntityTag, productRepository.findById(product.getId()).orElseThrow().getEntityTag());
+  }
+
+  @Test
+  void shouldRejectSaveOfStaleProduct() {
+    Product product = productRepository.save(productBuilder().quantity(5).build());
+    Product loadedProduct = productRepository.findById(product.getId()).orElseThrow();
+    jdbcTemplate.update(
+        "UPDATE products SET quantity = quantity - 1 WHERE id = ?", product.getId());
+
+    Product staleProduct = loadedProduct.toBuilder().quantity(3).build();
+
+    assertThrows(
+        ObjectOptimisticLockingFailureException.class, () -> productRepository.save(staleProduct));
+    assertEquals(4, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldChangeEntityTagOfUser_OnlyWhenBalanceShownChanges() {
+    User user = userRepository.save(userBuilder().balance(new BigDecimal(5)).build());
+    String entityTag = userRepository.findEntityTagById(user.getId()).orElseThrow();
+    assertEquals(entityTag, userRepository.findById(user.getId()).orElseThrow().getEntityTag());
+
+    transactionTemplate.executeWithoutResult(
+        status -> balanceLedger.credit(UUID.randomUUID(), Map.of(user.getId(), BigDecimal.ONE)));
+    String creditedEntityTag = userRepository.findEntityTagById(user.getId()).orElseThrow();
+    assertNotEquals(entityTag, creditedEntityTag);
+
+    transactionTemplate.executeWithoutResult(status -> balanceLedger.fold(user.getId()));
+    assertEquals(creditedEntityTag, userRepository.findEntityTagById(user.getId()).orElseThrow());
+    assertEquals(
+        creditedEntityTag, userRepository.findById(user.getId()).orElseThrow().getEntityTag());
+  }
+}
@@ -0,0 +1,25 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class IdsTest {
+  @AfterEach
+  void tearDown() {
+    Ids.use(IdGenerator.Type.TIME_ORDERED.create());
+  }
+
+  @Test
+  void shouldGenerateTimeOrderedIds_ByDefault() {
+    assertEquals(7, Ids.next().version());
+  }
+
+  @Test
+  void shouldGenerateIdsWithTheChosenGenerator() {
+    Ids.use(IdGenerator.Type.RANDOM.create());
+
+    assertEquals(4, Ids.next().version());
+  }
+}
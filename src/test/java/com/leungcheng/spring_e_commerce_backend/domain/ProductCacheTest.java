@@ -0,0 +1,163 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService;
+import com.leungcheng.spring_e_commerce_backend.domain.order.PurchaseItems;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@SpringBootTest
+class ProductCacheTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ProductService productService;
+  private @Autowired OrderService orderService;
+  private @Autowired ProductCache productCache;
+  private @Autowired CacheInvalidationBus invalidationBus;
+  private @Autowired MeterRegistry meterRegistry;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+  private final Product product = productBuilder().quantity(99).price(BigDecimal.ONE).build();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    productService.createProduct(product);
+  }
+
+  @Test
+  void shouldServeRepeatedGetFromCache() {
+    productCache.get(product.getId());
+    double hits = cacheGets("hit");
+    setQuantityBypassingCache(5);
+
+    Product cachedProduct = productCache.get(product.getId()).orElseThrow();
+
+    assertEquals(99, cachedProduct.getQuantity());
+    assertEquals(hits + 1, cacheGets("hit"));
+  }
+
+  @Test
+  void shouldNotCacheMissingProduct() {
+    UUID missingId = UUID.randomUUID();
+    double misses = cacheGets("miss");
+
+    assertEquals(Optional.empty(), productCache.get(missingId));
+    assertEquals(Optional.empty(), productCache.get(missingId));
+
+    assertEquals(misses + 2, cacheGets("miss"));
+  }
+
+  @Test
+  void shouldLoadOnce_WhenConcurrentGetsMiss() throws Exception {
+    double loads = cacheLoads();
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Optional<Product>>> results = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      results.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return productCache.get(product.getId());
+              }));
+    }
+
+    start.countDown();
+    for (Future<Optional<Product>> result : results) {
+      assertEquals(99, result.get().orElseThrow().getQuantity());
+    }
+    executor.shutdown();
+
+    assertEquals(loads + 1, cacheLoads());
+  }
+
+  @Test
+  void shouldReloadProduct_AfterOrderReducesStock() {
+    productCache.get(product.getId());
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 3);
+
+    orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID());
+
+    assertEquals(96, productCache.get(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldKeepStaleStock_WhenStalenessIsAllowed() {
+    ProductCache staleCache =
+        new ProductCache(
+            productRepository,
+            invalidationBus,
+            100,
+            Duration.ofMinutes(10),
+            Duration.ofHours(1),
+            new SimpleMeterRegistry());
+    staleCache.get(product.getId());
+    setQuantityBypassingCache(5);
+
+    staleCache.invalidateStock(List.of(product.getId()));
+    assertEquals(99, staleCache.get(product.getId()).orElseThrow().getQuantity());
+
+    staleCache.invalidate(List.of(product.getId()));
+    assertEquals(5, staleCache.get(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldReloadStock_WhenReleasedStockIsNotKnownByProduct() {
+    productCache.get(product.getId());
+    setQuantityBypassingCache(5);
+
+    productCache.invalidateAllStock();
+
+    assertEquals(5, productCache.get(product.getId()).orElseThrow().getQuantity());
+  }
+
+  private void setQuantityBypassingCache(int quantity) {
+    jdbcTemplate.update("UPDATE products SET quantity = ? WHERE id = ?", quantity, product.getId());
+  }
+
+  private double cacheGets(String result) {
+    return meterRegistry
+        .get("cache.gets")
+        .tag("cache", "product")
+        .tag("result", result)
+        .functionCounter()
+        .count();
+  }
+
+  private double cacheLoads() {
+    return meterRegistry
+        .get("cache.load")
+        .tag("cache", "product")
+        .tag("result", "success")
+        .functionCounter()
+        .count();
+  }
+}
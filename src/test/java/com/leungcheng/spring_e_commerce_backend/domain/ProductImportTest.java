@@ -0,0 +1,129 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.CustomAssertions.assertBigDecimalEquals;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.ProductImportResult.RowError;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.StreamSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = {"product.import.chunkSize=2", "product.import.maxReportedErrors=2"})
+class ProductImportTest {
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ProductImporter productImporter;
+
+  private final UUID sellerUserId = UUID.randomUUID();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    productRepository.deleteAll();
+  }
+
+  @Test
+  void shouldImportValidNdjsonRows_AndReportTheOthers() {
+    String ndjson =
+        """
+        {"name": "Product 1", "price": 1.5, "quantity": 3}
+        {"name": "Product 2", "price": -1, "quantity": 3}
+
+        {"name": "Product 3", "price": 2, "quantity": 10, "stockShards": 4}
+        {"name": "Product 4",
+        {"name": "Product 5", "price": 3}
+        """;
+
+    ProductImportResult result = importProducts(ProductImporter.Format.NDJSON, ndjson);
+
+    assertEquals(3, result.importedCount());
+    assertEquals(2, result.rejectedCount());
+    assertEquals(2, result.errors().getFirst().line());
+    assertTrue(result.errors().getFirst().message().startsWith("price: "));
+    assertEquals(5, result.errors().get(1).line());
+    assertTrue(result.errors().get(1).message().startsWith("Invalid JSON: "));
+
+    List<Product> products = findAll();
+    assertEquals(List.of("Product 1", "Product 3", "Product 5"), names(products));
+    assertBigDecimalEquals(new BigDecimal("1.5"), products.getFirst().getPrice());
+    assertEquals(sellerUserId, products.getFirst().getUserId());
+    Product shardedProduct = products.get(1);
+    assertEquals(4, shardedProduct.getStockShards());
+    assertEquals(10, shardedProduct.getQuantity());
+  }
+
+  @Test
+  void shouldImportCsvRows_WithColumnsInAnyOrderAndQuotedFields() {
+    String csv =
+        "\uFEFFprice,quantity,name\r\n"
+            + "1,2,\"Cable, 2m \"\"USB-C\"\"\"\r\n"
+            + "2,x,Product 2\r\n"
+            + "3,4,Product 3,extra\r\n"
+            + "4,5,Product 4\r\n";
+
+    ProductImportResult result = importProducts(ProductImporter.Format.CSV, csv);
+
+    assertEquals(2, result.importedCount());
+    assertEquals(
+        List.of(
+            new RowError(3, "quantity: must be an integer"),
+            new RowError(4, "Expected 3 fields but found 4")),
+        result.errors());
+    assertEquals(List.of("Cable, 2m \"USB-C\"", "Product 4"), names(findAll()));
+  }
+
+  @Test
+  void shouldReportOnlyTheFirstErrors_ButCountAllRejectedRows() {
+    String longName = "a".repeat(ProductImporter.MAX_LINE_LENGTH);
+    String csv = "name,price,quantity\n" + ",1,1\n" + longName + ",1,1\n" + "Product,-1,1\n";
+
+    ProductImportResult result = importProducts(ProductImporter.Format.CSV, csv);
+
+    assertEquals(0, result.importedCount());
+    assertEquals(3, result.rejectedCount());
+    assertEquals(
+        List.of(
+            new RowError(2, "name: must not be blank"),
+            new RowError(
+                3, "Line is longer than " + ProductImporter.MAX_LINE_LENGTH + " characters")),
+        result.errors());
+  }
+
+  @Test
+  void shouldRejectCsvWithoutValidHeader() {
+    assertThrows(
+        MyIllegalArgumentException.class, () -> importProducts(ProductImporter.Format.CSV, ""));
+    assertThrows(
+        MyIllegalArgumentException.class,
+        () -> importProducts(ProductImporter.Format.CSV, "name,price\nProduct,1\n"));
+    assertThrows(
+        MyIllegalArgumentException.class,
+        () -> importProducts(ProductImporter.Format.CSV, "name,price,quantity,color\n"));
+    assertEquals(0, productRepository.count());
+  }
+
+  private ProductImportResult importProducts(ProductImporter.Format format, String content) {
+    return productImporter.importProducts(
+        sellerUserId, format, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private List<Product> findAll() {
+    return StreamSupport.stream(productRepository.findAll().spliterator(), false)
+        .sorted(Comparator.comparing(Product::getName))
+        .toList();
+  }
+
+  private static List<String> names(List<Product> products) {
+    return products.stream().map(Product::getName).toList();
+  }
+}
@@ -0,0 +1,103 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import com.leungcheng.spring_e_commerce_backend.testutil.StatementCounter;
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+@SpringBootTest
+@Import(StatementCounter.class)
+class ProductLookupTest {
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ProductService productService;
+  private @Autowired StatementCounter statementCounter;
+
+  private final List<UUID> productIds = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    productRepository.deleteAll();
+
+    for (int i = 0; i < 5; i++) {
+      productIds.add(productRepository.save(productBuilder().build()).getId());
+    }
+    Collections.shuffle(productIds);
+  }
+
+  @Test
+  void shouldGetProductsInRequestOrder_AndReportMissingIds() {
+    UUID missingId1 = UUID.randomUUID();
+    UUID missingId2 = UUID.randomUUID();
+    List<UUID> ids = new ArrayList<>(productIds);
+    ids.add(2, missingId1);
+    ids.add(missingId2);
+
+    ProductLookup lookup = productService.lookUpProducts(ids);
+
+    assertEquals(productIds, lookup.products().stream().map(Product::getId).toList());
+    assertEquals(List.of(missingId1, missingId2), lookup.missingIds());
+  }
+
+  @Test
+  void shouldLoadUncachedProductsWithOneQuery_AndCacheThem() {
+    statementCounter.reset();
+    productService.lookUpProducts(productIds);
+    assertEquals(1, statementCounter.get());
+
+    statementCounter.reset();
+    ProductLookup lookup = productService.lookUpProducts(productIds);
+    assertEquals(0, statementCounter.get());
+    assertEquals(productIds, lookup.products().stream().map(Product::getId).toList());
+  }
+
+  @Test
+  void shouldLookUpRepeatedIdOnce() {
+    UUID productId = productIds.getFirst();
+
+    ProductLookup lookup = productService.lookUpProducts(List.of(productId, productId));
+
+    assertEquals(List.of(productId), lookup.products().stream().map(Product::getId).toList());
+  }
+
+  @Test
+  void shouldRejectTooManyIds() {
+    List<UUID> ids = new ArrayList<>();
+    for (int i = 0; i <= ProductService.MAX_LOOKUP_SIZE; i++) {
+      ids.add(UUID.randomUUID());
+    }
+
+    assertThrows(MyIllegalArgumentException.class, () -> productService.lookUpProducts(ids));
+    assertThrows(MyIllegalArgumentException.class, () -> productService.lookUpProducts(null));
+  }
+
+  @Test
+  void shouldAcceptMoreIds_UpToTheGivenMaxSize() {
+    List<UUID> ids = new ArrayList<>(productIds);
+    while (ids.size() < ProductService.MAX_BULK_LOOKUP_SIZE) {
+      ids.add(UUID.randomUUID());
+    }
+
+    ProductLookup lookup = productService.lookUpProducts(ids, ProductService.MAX_BULK_LOOKUP_SIZE);
+
+    assertEquals(productIds, lookup.products().stream().map(Product::getId).toList());
+    assertEquals(ids.size() - productIds.size(), lookup.missingIds().size());
+
+    ids.add(UUID.randomUUID());
+    assertThrows(
+        MyIllegalArgumentException.class,
+        () -> productService.lookUpProducts(ids, ProductService.MAX_BULK_LOOKUP_SIZE));
+  }
+}
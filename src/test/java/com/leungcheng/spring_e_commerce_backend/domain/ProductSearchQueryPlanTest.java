@@ -0,0 +1,148 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Checks with EXPLAIN that each page of a product search is read with an index. The table holds
+ * enough products for the planner to prefer an index to a sequential scan.
+ */
+@SpringBootTest
+class ProductSearchQueryPlanTest {
+  private static final int PRODUCTS = 5000;
+  private static final int SELLERS = 50;
+
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  private final List<UUID> sellerIds = new ArrayList<>();
+  private final List<UUID> productIds = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    productRepository.deleteAll();
+
+    for (int i = 0; i < SELLERS; i++) {
+      sellerIds.add(UUID.randomUUID());
+    }
+    List<Object[]> rows = new ArrayList<>();
+    for (int i = 0; i < PRODUCTS; i++) {
+      UUID productId = Ids.next();
+      productIds.add(productId);
+      rows.add(
+          new Object[] {
+            productId, sellerIds.get(i % SELLERS), String.format("Item %05d", i), i % 1000, i % 5
+          });
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO products(id, user_id, name, price, quantity) VALUES (?, ?, ?, ?, ?)", rows);
+    // Some of the products have their stock in shards, for the plan of the in-stock filter.
+    jdbcTemplate.update(
+        "WITH sharded AS (UPDATE products SET stock_shards = 4, quantity = 0"
+            + " WHERE price % 100 = 0 RETURNING id)"
+            + " INSERT INTO product_stock_shards(product_id, shard, quantity)"
+            + " SELECT id, shard, 1 FROM sharded, generate_series(0, 3) shard");
+    // Also clears the rows of the previous test out of the indexes.
+    jdbcTemplate.execute("VACUUM ANALYZE products");
+    jdbcTemplate.execute("VACUUM ANALYZE product_stock_shards");
+  }
+
+  @AfterEach
+  void tearDown() {
+    jdbcTemplate.update("DELETE FROM products");
+  }
+
+  @Test
+  void shouldUsePrimaryKey_WhenNotFiltered() {
+    assertReadsInOrder("products_pkey", filter(null, null, null, null), null);
+    assertReadsInOrder(
+        "products_pkey", filter(null, null, null, null), after(productIds.get(2000)));
+  }
+
+  @Test
+  void shouldUseSellerIndex_WhenFilteredBySeller() {
+    UUID sellerId = sellerIds.getFirst();
+    assertReadsInOrder("idx_products_user_id_id", filter(sellerId, null, null, null), null);
+    assertReadsInOrder(
+        "idx_products_user_id_id", filter(sellerId, null, null, null), after(productIds.get(2000)));
+  }
+
+  @Test
+  void shouldUsePriceIndex_WhenFilteredByPriceRange() {
+    // Most of the products, so that a page must not read all of them.
+    ProductFilter filter = filter(null, new BigDecimal(10), new BigDecimal(900), null);
+    assertReadsInOrder("idx_products_price_id", filter, null);
+    assertReadsInOrder(
+        "idx_products_price_id",
+        filter,
+        new ProductPage.Cursor(new BigDecimal(500), productIds.get(2000)));
+    assertReadsInOrder("idx_products_price_id", filter(null, new BigDecimal(10), null, null), null);
+  }
+
+  @Test
+  void shouldUseSellerPriceIndex_WhenFilteredBySellerAndPriceRange() {
+    UUID sellerId = sellerIds.getFirst();
+    ProductFilter filter = filter(sellerId, new BigDecimal(10), new BigDecimal(900), null);
+    assertReadsInOrder("idx_products_user_id_price_id", filter, null);
+    assertReadsInOrder(
+        "idx_products_user_id_price_id",
+        filter,
+        new ProductPage.Cursor(new BigDecimal(500), productIds.get(2000)));
+  }
+
+  @Test
+  void shouldUsePrimaryKey_WhenOnlyInStock() {
+    ProductFilter inStockOnly = new ProductFilter(null, null, null, true, null);
+    assertReadsInOrder("products_pkey", inStockOnly, null);
+    assertReadsInOrder("products_pkey", inStockOnly, after(productIds.get(2000)));
+  }
+
+  @Test
+  void shouldUseTrigramIndex_WhenSearchingByName() {
+    // Sorts the matches, since a trigram index has no order.
+    String plan = explain(filter(null, null, null, "m 0123"), null);
+    assertTrue(plan.contains("idx_products_name_trgm"), plan);
+    assertFalse(plan.contains("Seq Scan"), plan);
+  }
+
+  private static ProductFilter filter(
+      UUID userId, BigDecimal minPrice, BigDecimal maxPrice, String nameContains) {
+    return new ProductFilter(userId, minPrice, maxPrice, false, nameContains);
+  }
+
+  private static ProductPage.Cursor after(UUID id) {
+    return new ProductPage.Cursor(null, id);
+  }
+
+  /**
+   * Checks that the page is read in its order from the index, rather than sorted. The few shards
+   * are fine to scan.
+   */
+  private void assertReadsInOrder(
+      String indexName, ProductFilter filter, ProductPage.Cursor after) {
+    String plan = explain(filter, after);
+    assertTrue(plan.contains(indexName), plan);
+    assertFalse(plan.contains("Seq Scan on products "), plan);
+    assertFalse(plan.contains("Sort"), plan);
+  }
+
+  private String explain(ProductFilter filter, ProductPage.Cursor after) {
+    ProductSearchQuery query = ProductSearchQuery.of(filter, after, 20);
+    return String.join(
+        "\n",
+        jdbcTemplate.queryForList("EXPLAIN " + query.sql(), String.class, query.args().toArray()));
+  }
+}
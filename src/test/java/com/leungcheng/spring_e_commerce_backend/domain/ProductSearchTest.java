@@ -0,0 +1,144 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRepository;
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class ProductSearchTest {
+  private static final ProductFilter NO_FILTER = new ProductFilter(null, null, null, false, null);
+
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ProductService productService;
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    productRepository.deleteAll();
+  }
+
+  @Test
+  void shouldListProductsInIdOrder_PageByPage() {
+    List<UUID> productIds = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      productIds.add(productService.createProduct(productBuilder().build()).getId());
+    }
+
+    ProductPage page1 = productService.searchProducts(NO_FILTER, null, 2);
+    ProductPage page2 = productService.searchProducts(NO_FILTER, page1.nextCursor(), 2);
+    ProductPage page3 = productService.searchProducts(NO_FILTER, page2.nextCursor(), 2);
+
+    assertEquals(
+        productIds,
+        List.of(page1, page2, page3).stream()
+            .flatMap(page -> page.products().stream())
+            .map(Product::getId)
+            .toList());
+    assertNull(page3.nextCursor());
+  }
+
+  @Test
+  void shouldFilterBySellerAndPrice() {
+    UUID sellerId = UUID.randomUUID();
+    Product cheap = save(productBuilder().userId(sellerId).price(new BigDecimal("5")));
+    Product mid = save(productBuilder().userId(sellerId).price(new BigDecimal("10")));
+    Product expensive = save(productBuilder().userId(sellerId).price(new BigDecimal("20")));
+    save(productBuilder().price(new BigDecimal("10")));
+
+    assertEquals(
+        List.of(cheap.getId(), mid.getId(), expensive.getId()),
+        search(new ProductFilter(sellerId, null, null, false, null)));
+    assertEquals(
+        List.of(mid.getId()),
+        search(
+            new ProductFilter(sellerId, new BigDecimal("6"), new BigDecimal("10"), false, null)));
+  }
+
+  @Test
+  void shouldListProductsInPriceOrder_PageByPage_WhenFilteredByPrice() {
+    Product expensive = save(productBuilder().price(new BigDecimal("30")));
+    Product cheap = save(productBuilder().price(new BigDecimal("10")));
+    Product mid1 = save(productBuilder().price(new BigDecimal("20")));
+    Product mid2 = save(productBuilder().price(new BigDecimal("20")));
+    save(productBuilder().price(new BigDecimal("5")));
+    ProductFilter filter = new ProductFilter(null, new BigDecimal("10"), null, false, null);
+
+    ProductPage page1 = productService.searchProducts(filter, null, 2);
+    ProductPage page2 = productService.searchProducts(filter, page1.nextCursor(), 2);
+
+    // In the order of PostgreSQL, which compares the bytes, like the strings compare.
+    List<UUID> sameMidPrice =
+        Stream.of(mid1.getId(), mid2.getId()).sorted(Comparator.comparing(UUID::toString)).toList();
+    assertEquals(
+        List.of(cheap.getId(), sameMidPrice.getFirst()),
+        page1.products().stream().map(Product::getId).toList());
+    assertEquals(
+        List.of(sameMidPrice.getLast(), expensive.getId()),
+        page2.products().stream().map(Product::getId).toList());
+    assertThrows(
+        MyIllegalArgumentException.class,
+        () -> productService.searchProducts(NO_FILTER, page1.nextCursor(), 2));
+  }
+
+  @Test
+  void shouldSearchNameCaseInsensitively_AndMatchWildcardsLiterally() {
+    Product blueMug = save(productBuilder().name("Blue Mug"));
+    Product blueLamp = save(productBuilder().name("Lamp, blue"));
+    Product cotton = save(productBuilder().name("100% Cotton_Shirt"));
+    save(productBuilder().name("Red Mug"));
+
+    assertEquals(
+        List.of(blueMug.getId(), blueLamp.getId()),
+        search(new ProductFilter(null, null, null, false, "BLUE")));
+    assertEquals(List.of(cotton.getId()), search(new ProductFilter(null, null, null, false, "%")));
+    assertEquals(List.of(cotton.getId()), search(new ProductFilter(null, null, null, false, "_")));
+  }
+
+  @Test
+  void shouldOnlyListProductsInStock_WhenAsked() {
+    Product inStock = save(productBuilder().quantity(1));
+    save(productBuilder().quantity(0));
+    Product shardedInStock =
+        productService.createProduct(productBuilder().quantity(3).stockShards(4).build());
+    productService.createProduct(productBuilder().quantity(0).stockShards(4).build());
+
+    assertEquals(
+        List.of(inStock.getId(), shardedInStock.getId()),
+        search(new ProductFilter(null, null, null, true, null)));
+  }
+
+  @Test
+  void shouldRejectInvalidCursorAndLimit() {
+    assertThrows(
+        MyIllegalArgumentException.class,
+        () -> productService.searchProducts(NO_FILTER, "not a cursor", 10));
+    assertThrows(
+        MyIllegalArgumentException.class, () -> productService.searchProducts(NO_FILTER, null, 0));
+    assertThrows(
+        MyIllegalArgumentException.class,
+        () -> productService.searchProducts(NO_FILTER, null, ProductService.MAX_PAGE_SIZE + 1));
+  }
+
+  private Product save(Product.Builder builder) {
+    return productService.createProduct(builder.build());
+  }
+
+  private List<UUID> search(ProductFilter filter) {
+    return productService.searchProducts(filter, null, 10).products().stream()
+        .map(Product::getId)
+        .toList();
+  }
+}
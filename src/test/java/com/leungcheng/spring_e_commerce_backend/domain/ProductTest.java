@@ -46,6 +46,7 @@ class ProductTest {
     assertEquals(product1.getPrice(), product2.getPrice());
     assertEquals(product1.getQuantity(), product2.getQuantity());
     assertEquals(product1.getUserId(), product2.getUserId());
+    assertEquals(product1.getStockShards(), product2.getStockShards());
   }
 
   @Test
@@ -55,11 +56,20 @@ class ProductTest {
 
     assertThrowValidationException(productBuilder().price(new BigDecimal("-1")));
     productBuilder().price(BigDecimal.ZERO).build();
+    assertThrowValidationException(productBuilder().price(null));
+    assertThrowValidationException(productBuilder().price(new BigDecimal("1000000000")));
+    productBuilder().price(new BigDecimal("999999999.9999999999")).build();
 
     assertThrowValidationException(productBuilder().name(""));
     assertThrowValidationException(productBuilder().name(null));
+    assertThrowValidationException(productBuilder().name("a".repeat(256)));
+    productBuilder().name("a".repeat(255)).build();
 
     assertThrowValidationException(productBuilder().userId(null));
+
+    assertThrowValidationException(productBuilder().stockShards(-1));
+    assertThrowValidationException(productBuilder().stockShards(Product.MAX_STOCK_SHARDS + 1));
+    productBuilder().stockShards(Product.MAX_STOCK_SHARDS).build();
   }
 
   private void assertThrowValidationException(Product.Builder builder) {
@@ -0,0 +1,79 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest
+class ShardedStockTest {
+  private @Autowired ProductRepository productRepository;
+  private @Autowired ProductService productService;
+  private @Autowired ShardedStock shardedStock;
+  private @Autowired JdbcTemplate jdbcTemplate;
+  private @Autowired TransactionTemplate transactionTemplate;
+
+  @BeforeEach
+  void setUp() {
+    productRepository.deleteAll();
+  }
+
+  @Test
+  void shouldSplitQuantityEvenlyOverShards() {
+    Product product = productBuilder().quantity(11).stockShards(4).build();
+    productService.createProduct(product);
+
+    assertEquals(List.of(3, 3, 3, 2), shardQuantities(product.getId()));
+    assertEquals(11, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldTakeFromSeveralShards_WhenNoShardHoldsEnoughAlone() {
+    Product product = productBuilder().quantity(9).stockShards(3).build();
+    productService.createProduct(product);
+
+    assertTrue(take(product.getId(), 5));
+
+    assertEquals(4, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldTakeNothing_WhenShardsDoNotHoldEnoughInTotal() {
+    Product product = productBuilder().quantity(9).stockShards(3).build();
+    productService.createProduct(product);
+
+    assertFalse(take(product.getId(), 10));
+
+    assertEquals(List.of(3, 3, 3), shardQuantities(product.getId()));
+  }
+
+  @Test
+  void shouldNotTakeFromProductWithoutShards() {
+    Product product = productBuilder().quantity(9).build();
+    productService.createProduct(product);
+
+    assertFalse(take(product.getId(), 1));
+    assertFalse(take(UUID.randomUUID(), 1));
+
+    assertEquals(9, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  private boolean take(UUID productId, int quantity) {
+    return Boolean.TRUE.equals(
+        transactionTemplate.execute(status -> shardedStock.take(productId, quantity)));
+  }
+
+  private List<Integer> shardQuantities(UUID productId) {
+    return jdbcTemplate.queryForList(
+        "SELECT quantity FROM product_stock_shards WHERE product_id = ? ORDER BY shard",
+        Integer.class,
+        productId);
+  }
+}
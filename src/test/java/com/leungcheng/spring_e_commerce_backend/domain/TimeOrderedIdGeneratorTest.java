@@ -0,0 +1,91 @@
+package com.leungcheng.spring_e_commerce_backend.domain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class TimeOrderedIdGeneratorTest {
+  /** The order of PostgreSQL, which compares the bytes unsigned. */
+  private static final Comparator<UUID> DATABASE_ORDER =
+      Comparator.comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+          .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+  @Test
+  void shouldGenerateVersion7WithTheCurrentTime() {
+    long before = System.currentTimeMillis();
+    UUID id = new TimeOrderedIdGenerator().generate();
+    long after = System.currentTimeMillis();
+
+    assertEquals(7, id.version());
+    assertEquals(2, id.variant());
+    long timestamp = id.getMostSignificantBits() >>> 16;
+    assertTrue(before <= timestamp && timestamp <= after);
+  }
+
+  @Test
+  void shouldIncrease_WithinTheSameMillisecond() {
+    TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(() -> 1_000L);
+
+    List<UUID> ids = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      ids.add(generator.generate());
+    }
+
+    assertStrictlyIncreasing(ids);
+  }
+
+  @Test
+  void shouldIncrease_WhenTheClockGoesBack() {
+    AtomicLong clock = new AtomicLong(2_000L);
+    TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(clock::get);
+
+    UUID first = generator.generate();
+    clock.set(1_000L);
+    UUID second = generator.generate();
+
+    assertStrictlyIncreasing(List.of(first, second));
+  }
+
+  @Test
+  void shouldGenerateUniqueIncreasingIds_WhenCalledConcurrently() throws Exception {
+    TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator();
+    List<Future<List<UUID>>> futures = new ArrayList<>();
+    try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+      for (int t = 0; t < 8; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  List<UUID> ids = new ArrayList<>();
+                  for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.generate());
+                  }
+                  return ids;
+                }));
+      }
+    }
+
+    Set<UUID> allIds = new HashSet<>();
+    for (Future<List<UUID>> future : futures) {
+      List<UUID> ids = future.get();
+      assertStrictlyIncreasing(ids);
+      allIds.addAll(ids);
+    }
+    assertEquals(80_000, allIds.size());
+  }
+
+  private static void assertStrictlyIncreasing(List<UUID> ids) {
+    for (int i = 1; i < ids.size(); i++) {
+      assertTrue(DATABASE_ORDER.compare(ids.get(i - 1), ids.get(i)) < 0, "at index " + i);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRequestStatus.Status;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+// A single worker with a tiny queue, so the queue can be filled up.
+@SpringBootTest(properties = {"order.async.workers=1", "order.async.queueCapacity=1"})
+class AsyncOrderServiceTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired AsyncOrderService asyncOrderService;
+  private @Autowired MeterRegistry meterRegistry;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+  private final Product product = productBuilder().quantity(999).price(BigDecimal.ONE).build();
+  private final PurchaseItems purchaseItems = new PurchaseItems();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    productRepository.save(product);
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+  }
+
+  @Test
+  void shouldCreateOrderOnce_WhenSameRequestIsSubmittedAgain() throws Exception {
+    UUID requestId = UUID.randomUUID();
+    asyncOrderService.submit(buyer.getId(), purchaseItems, requestId);
+    OrderRequestStatus status = waitUntilDone(requestId);
+
+    OrderRequestStatus resubmitted =
+        asyncOrderService.submit(buyer.getId(), purchaseItems, requestId);
+
+    assertEquals(Status.CREATED, status.status());
+    assertEquals(Status.CREATED, resubmitted.status());
+    assertEquals(status.order().getId(), resubmitted.order().getId());
+    assertEquals(998, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldOnlyShowStatusToItsBuyer() throws Exception {
+    UUID requestId = UUID.randomUUID();
+    asyncOrderService.submit(buyer.getId(), purchaseItems, requestId);
+    waitUntilDone(requestId);
+
+    assertTrue(asyncOrderService.getStatus(UUID.randomUUID(), requestId).isEmpty());
+  }
+
+  @Test
+  void shouldRejectSubmission_WhenQueueIsFull() throws Exception {
+    assertNotNull(meterRegistry.get("order.async.queue.depth").gauge());
+
+    assertThrows(
+        OrderQueueFullException.class,
+        () -> {
+          for (int i = 0; i < 100; i++) {
+            asyncOrderService.submit(buyer.getId(), purchaseItems, UUID.randomUUID());
+          }
+        });
+
+    // Wait for the queued orders, so they do not leak into the next test.
+    while (meterRegistry.get("order.async.queue.depth").gauge().value() > 0
+        || meterRegistry.get("order.async.active").gauge().value() > 0) {
+      Thread.sleep(10);
+    }
+  }
+
+  private OrderRequestStatus waitUntilDone(UUID requestId) throws InterruptedException {
+    for (int i = 0; i < 100; i++) {
+      OrderRequestStatus status =
+          asyncOrderService.getStatus(buyer.getId(), requestId).orElseThrow();
+      if (status.status() != Status.PENDING) {
+        return status;
+      }
+      Thread.sleep(50);
+    }
+    throw new AssertionError("Order request " + requestId + " is still pending");
+  }
+}
@@ -0,0 +1,137 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.CustomAssertions.assertBigDecimalEquals;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderRequestStatus.Status;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.OrderRequest;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class BatchOrderServiceTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+
+  private final User seller = userBuilder().username("seller").balance(BigDecimal.ZERO).build();
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(100)).build();
+  private final Product product1 =
+      productBuilder().quantity(10).price(new BigDecimal(2)).userId(seller.getId()).build();
+  private final Product product2 =
+      productBuilder().quantity(1).price(new BigDecimal(3)).userId(seller.getId()).build();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.saveAll(List.of(seller, buyer));
+    productRepository.saveAll(List.of(product1, product2));
+  }
+
+  @Test
+  void shouldCreateTheOtherOrders_WhenOneOrderFails() {
+    List<OrderRequest> requests =
+        List.of(
+            request(UUID.randomUUID(), product1, 2),
+            request(UUID.randomUUID(), product2, 2),
+            request(UUID.randomUUID(), product2, 1));
+
+    List<OrderRequestStatus> statuses = orderService.createOrders(buyer.getId(), requests);
+
+    assertEquals(3, statuses.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(requests.get(i).requestId(), statuses.get(i).requestId());
+    }
+    assertEquals(Status.CREATED, statuses.get(0).status());
+    assertEquals(Status.FAILED, statuses.get(1).status());
+    assertEquals(
+        CreateOrderException.insufficientStockMsg(product2.getId()), statuses.get(1).reason());
+    assertEquals(Status.CREATED, statuses.get(2).status());
+
+    assertEquals(2, orderRepository.count());
+    assertEquals(8, productRepository.findById(product1.getId()).orElseThrow().getQuantity());
+    assertEquals(0, productRepository.findById(product2.getId()).orElseThrow().getQuantity());
+    assertBigDecimalEquals(
+        new BigDecimal(93), userRepository.findById(buyer.getId()).orElseThrow().getBalance());
+    assertBigDecimalEquals(
+        new BigDecimal(7), userRepository.findById(seller.getId()).orElseThrow().getBalance());
+  }
+
+  @Test
+  void shouldRollBackTheStockOfAFailedOrder() {
+    User poorBuyer = userBuilder().username("poorBuyer").balance(new BigDecimal(3)).build();
+    userRepository.save(poorBuyer);
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product1.getId(), 1);
+    purchaseItems.setPurchaseItem(product2.getId(), 1);
+    List<OrderRequestStatus> statuses =
+        orderService.createOrders(
+            poorBuyer.getId(), List.of(new OrderRequest(UUID.randomUUID(), purchaseItems)));
+
+    assertEquals("Insufficient balance", statuses.getFirst().reason());
+    assertEquals(0, orderRepository.count());
+    assertEquals(10, productRepository.findById(product1.getId()).orElseThrow().getQuantity());
+    assertEquals(1, productRepository.findById(product2.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldKeepIdempotencyOfEachRequest() {
+    UUID existingRequestId = UUID.randomUUID();
+    Order existingOrder =
+        orderService.createOrder(
+            buyer.getId(),
+            request(existingRequestId, product1, 1).purchaseItems(),
+            existingRequestId);
+    UUID newRequestId = UUID.randomUUID();
+
+    List<OrderRequestStatus> statuses =
+        orderService.createOrders(
+            buyer.getId(),
+            List.of(
+                request(existingRequestId, product1, 1),
+                request(newRequestId, product1, 1),
+                request(newRequestId, product1, 1),
+                request(null, product1, 1)));
+
+    assertEquals(existingOrder.getId(), statuses.get(0).order().getId());
+    assertEquals(statuses.get(1).order().getId(), statuses.get(2).order().getId());
+    assertEquals(Status.FAILED, statuses.get(3).status());
+    assertEquals(2, orderRepository.count());
+    assertEquals(8, productRepository.findById(product1.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldRejectTooManyOrdersAtOnce() {
+    List<OrderRequest> requests = new ArrayList<>();
+    for (int i = 0; i < 501; i++) {
+      requests.add(request(UUID.randomUUID(), product1, 1));
+    }
+
+    assertThrows(
+        CreateOrderException.class, () -> orderService.createOrders(buyer.getId(), requests));
+  }
+
+  private static OrderRequest request(UUID requestId, Product product, int quantity) {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), quantity);
+    return new OrderRequest(requestId, purchaseItems);
+  }
+}
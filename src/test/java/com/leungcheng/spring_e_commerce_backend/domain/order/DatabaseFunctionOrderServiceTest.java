@@ -0,0 +1,9 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+/** Runs all the tests of {@link OrderServiceTest} with the {@code place_order} function. */
+class DatabaseFunctionOrderServiceTest extends OrderServiceTest {
+  @Override
+  OrderConcurrencyMode concurrencyMode() {
+    return OrderConcurrencyMode.DATABASE_FUNCTION;
+  }
+}
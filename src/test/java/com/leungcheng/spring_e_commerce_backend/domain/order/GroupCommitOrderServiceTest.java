@@ -0,0 +1,185 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.CustomAssertions.assertBigDecimalEquals;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/** Runs all the tests of {@link OrderServiceTest} with group commit. */
+class GroupCommitOrderServiceTest extends OrderServiceTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderService orderService;
+  private @Autowired MeterRegistry meterRegistry;
+
+  @Override
+  OrderConcurrencyMode concurrencyMode() {
+    return OrderConcurrencyMode.GROUP_COMMIT;
+  }
+
+  @Test
+  void shouldRejectOnlyTheFailingOrders_WhenOrdersShareABatch() throws Exception {
+    User seller = userBuilder().username("seller").balance(BigDecimal.ZERO).build();
+    userRepository.save(seller);
+    List<User> buyers = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      BigDecimal balance = i % 2 == 0 ? new BigDecimal(10) : BigDecimal.ZERO;
+      buyers.add(userBuilder().username("buyer" + i).balance(balance).build());
+    }
+    userRepository.saveAll(buyers);
+
+    Product product =
+        productBuilder().quantity(99).price(BigDecimal.ONE).userId(seller.getId()).build();
+    productRepository.save(product);
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+
+    DistributionSummary batchSizes = meterRegistry.get("order.group_commit.batch.size").summary();
+    long batchesBefore = batchSizes.count();
+
+    List<Future<Order>> futures =
+        runConcurrently(
+            buyers.stream()
+                .<Callable<Order>>map(
+                    buyer ->
+                        () ->
+                            orderService.createOrder(
+                                buyer.getId(), purchaseItems, UUID.randomUUID(), concurrencyMode()))
+                .toList());
+
+    for (int i = 0; i < buyers.size(); i++) {
+      if (i % 2 == 0) {
+        assertEquals(buyers.get(i).getId(), futures.get(i).get().getBuyerUserId());
+      } else {
+        ExecutionException e = assertThrowsExecutionException(futures.get(i));
+        assertEquals("Insufficient balance", e.getCause().getMessage());
+      }
+    }
+
+    assertTrue(batchSizes.count() - batchesBefore < buyers.size());
+    assertEquals(91, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+    assertBigDecimalEquals(
+        new BigDecimal(8), userRepository.findById(seller.getId()).orElseThrow().getBalance());
+  }
+
+  @Test
+  void shouldNotOversell_WhenManyThreadsBuyTheLastItems() throws Exception {
+    User seller = userBuilder().username("seller").balance(BigDecimal.ZERO).build();
+    User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+    userRepository.saveAll(List.of(seller, buyer));
+
+    Product product =
+        productBuilder().quantity(5).price(BigDecimal.ONE).userId(seller.getId()).build();
+    productRepository.save(product);
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+
+    List<Callable<Order>> orders = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      orders.add(
+          () ->
+              orderService.createOrder(
+                  buyer.getId(), purchaseItems, UUID.randomUUID(), concurrencyMode()));
+    }
+
+    int succeeded = 0;
+    for (Future<Order> future : runConcurrently(orders)) {
+      try {
+        future.get();
+        succeeded++;
+      } catch (ExecutionException e) {
+        assertEquals(
+            OrderService.CreateOrderException.insufficientStockMsg(product.getId()),
+            e.getCause().getMessage());
+      }
+    }
+
+    assertEquals(5, succeeded);
+    assertEquals(0, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+    assertBigDecimalEquals(
+        new BigDecimal(994), userRepository.findById(buyer.getId()).orElseThrow().getBalance());
+  }
+
+  @Test
+  void shouldCreateOneOrderOnly_WhenSameRequestIdIsSentConcurrently() throws Exception {
+    User seller = userBuilder().username("seller").balance(BigDecimal.ZERO).build();
+    User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+    userRepository.saveAll(List.of(seller, buyer));
+
+    Product product =
+        productBuilder().quantity(99).price(BigDecimal.ONE).userId(seller.getId()).build();
+    productRepository.save(product);
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+
+    UUID requestId = UUID.randomUUID();
+    List<Callable<Order>> orders = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      orders.add(
+          () ->
+              orderService.createOrder(buyer.getId(), purchaseItems, requestId, concurrencyMode()));
+    }
+
+    Set<UUID> orderIds = new HashSet<>();
+    for (Future<Order> future : runConcurrently(orders)) {
+      orderIds.add(future.get().getId());
+    }
+
+    assertEquals(1, orderIds.size());
+    assertEquals(98, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  /** Starts the calls at the same time, so they are likely to be committed in the same batch. */
+  private static <T> List<Future<T>> runConcurrently(List<Callable<T>> calls) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<T>> futures = new ArrayList<>();
+    try (ExecutorService executor = Executors.newFixedThreadPool(calls.size())) {
+      for (Callable<T> call : calls) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  return call.call();
+                }));
+      }
+      start.countDown();
+    }
+    return futures;
+  }
+
+  private static ExecutionException assertThrowsExecutionException(Future<?> future) {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      return e;
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    throw new AssertionError("Expected the order to fail");
+  }
+}
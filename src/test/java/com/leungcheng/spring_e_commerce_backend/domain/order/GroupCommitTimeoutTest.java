@@ -0,0 +1,57 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import java.math.BigDecimal;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+// A batch waits longer for more orders than a caller waits for its order.
+@SpringBootTest(properties = {"order.groupCommit.maxDelay=500ms", "order.groupCommit.maxWait=10ms"})
+class GroupCommitTimeoutTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(99)).build();
+  private final Product product = productBuilder().quantity(10).price(BigDecimal.ONE).build();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    productRepository.save(product);
+  }
+
+  @Test
+  void shouldGiveUpOnOrder_AndLeaveItOutOfTheBatch_WhenNotCommittedInTime() throws Exception {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+
+    assertThrows(
+        OrderTimeoutException.class,
+        () ->
+            orderService.createOrder(
+                buyer.getId(),
+                purchaseItems,
+                UUID.randomUUID(),
+                OrderConcurrencyMode.GROUP_COMMIT));
+
+    Thread.sleep(1000);
+    assertEquals(0, orderRepository.count());
+    assertEquals(10, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+}
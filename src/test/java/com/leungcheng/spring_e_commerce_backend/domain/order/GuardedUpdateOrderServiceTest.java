@@ -0,0 +1,111 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.CustomAssertions.assertBigDecimalEquals;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/** Runs all the tests of {@link OrderServiceTest} with guarded updates. */
+class GuardedUpdateOrderServiceTest extends OrderServiceTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderService orderService;
+
+  @Override
+  OrderConcurrencyMode concurrencyMode() {
+    return OrderConcurrencyMode.GUARDED_UPDATE;
+  }
+
+  @Test
+  void shouldNotOversell_WhenManyThreadsBuyTheLastItems() throws Exception {
+    User seller = userBuilder().username("seller").balance(BigDecimal.ZERO).build();
+    User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+    userRepository.saveAll(List.of(seller, buyer));
+
+    Product product =
+        productBuilder().quantity(5).price(BigDecimal.ONE).userId(seller.getId()).build();
+    productRepository.save(product);
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+
+    int succeeded = 0;
+    try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+      List<Future<Order>> futures = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        futures.add(
+            executor.submit(
+                () ->
+                    orderService.createOrder(
+                        buyer.getId(), purchaseItems, UUID.randomUUID(), concurrencyMode())));
+      }
+      for (Future<Order> future : futures) {
+        try {
+          future.get();
+          succeeded++;
+        } catch (ExecutionException e) {
+          assertEquals(
+              OrderService.CreateOrderException.insufficientStockMsg(product.getId()),
+              e.getCause().getMessage());
+        }
+      }
+    }
+
+    assertEquals(5, succeeded);
+    assertEquals(0, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+    assertBigDecimalEquals(
+        new BigDecimal(994), userRepository.findById(buyer.getId()).orElseThrow().getBalance());
+    assertBigDecimalEquals(
+        new BigDecimal(5), userRepository.findById(seller.getId()).orElseThrow().getBalance());
+  }
+
+  @Test
+  void shouldCreateOneOrderOnly_WhenSameRequestIdIsSentConcurrently() throws Exception {
+    User seller = userBuilder().username("seller").balance(BigDecimal.ZERO).build();
+    User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+    userRepository.saveAll(List.of(seller, buyer));
+
+    Product product =
+        productBuilder().quantity(99).price(BigDecimal.ONE).userId(seller.getId()).build();
+    productRepository.save(product);
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+
+    UUID requestId = UUID.randomUUID();
+    Set<UUID> orderIds = new HashSet<>();
+    try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+      List<Future<Order>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(
+            executor.submit(
+                () ->
+                    orderService.createOrder(
+                        buyer.getId(), purchaseItems, requestId, concurrencyMode())));
+      }
+      for (Future<Order> future : futures) {
+        orderIds.add(future.get().getId());
+      }
+    }
+
+    assertEquals(1, orderIds.size());
+    assertEquals(98, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+}
@@ -0,0 +1,99 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Gives up on the first serialization failure.
+@SpringBootTest(properties = "order.retry.maxAttempts=0")
+class OrderConflictTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+  private @Autowired DataSource dataSource;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(99)).build();
+  private final Product product = productBuilder().quantity(10).price(BigDecimal.ONE).build();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    productRepository.save(product);
+  }
+
+  @Test
+  void shouldThrowOrderConflictException_WhenSerializationFailureIsNotRetried() throws Exception {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+
+    try (Connection connection = dataSource.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor()) {
+      connection.setAutoCommit(false);
+      try (PreparedStatement ps =
+          connection.prepareStatement("UPDATE products SET quantity = 5 WHERE id = ?")) {
+        ps.setObject(1, product.getId());
+        ps.executeUpdate();
+      }
+
+      // The order reads the product before the update commits, and then waits to update it.
+      Future<Order> order =
+          executor.submit(
+              () ->
+                  orderService.createOrder(
+                      buyer.getId(),
+                      purchaseItems,
+                      UUID.randomUUID(),
+                      OrderConcurrencyMode.SERIALIZABLE));
+      awaitWaitingForLock();
+      connection.commit();
+
+      ExecutionException exception =
+          assertThrows(ExecutionException.class, () -> order.get(10, TimeUnit.SECONDS));
+      assertInstanceOf(OrderConflictException.class, exception.getCause());
+    }
+
+    assertEquals(5, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  private void awaitWaitingForLock() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (System.currentTimeMillis() < deadline) {
+      Integer waiting =
+          jdbcTemplate.queryForObject(
+              "SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'"
+                  + " AND datname = current_database()",
+              Integer.class);
+      if (waiting != null && waiting > 0) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    fail("The order did not wait for the lock");
+  }
+}
@@ -0,0 +1,107 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+// A small fetch size, so the export reads the rows in several round trips.
+@SpringBootTest(properties = "order.export.fetchSize=2")
+class OrderExporterTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+  private @Autowired OrderExporter orderExporter;
+  private @Autowired ObjectMapper objectMapper;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+  private final Product product1 = productBuilder().quantity(999).price(BigDecimal.ONE).build();
+  private final Product product2 = productBuilder().quantity(999).price(BigDecimal.ONE).build();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    productRepository.saveAll(List.of(product1, product2));
+  }
+
+  @Test
+  void shouldWriteOneLinePerOrder_OldestFirst() throws Exception {
+    List<Order> orders = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+      orders.add(createOrder(buyer, i));
+    }
+    User otherBuyer = userBuilder().username("otherBuyer").balance(new BigDecimal(999)).build();
+    userRepository.save(otherBuyer);
+    createOrder(otherBuyer, 1);
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    orderExporter.export(buyer.getId(), outputStream);
+
+    String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(3, lines.length);
+    for (int i = 0; i < 3; i++) {
+      JsonNode line = objectMapper.readTree(lines[i]);
+      assertEquals(orders.get(i).getId().toString(), line.get("id").asText());
+      assertEquals(orders.get(i).getRequestId().toString(), line.get("requestId").asText());
+      JsonNode items = line.get("productIdToQuantity");
+      assertEquals(i + 1, items.get(product1.getId().toString()).asInt());
+      assertEquals(1, items.get(product2.getId().toString()).asInt());
+    }
+  }
+
+  @Test
+  void shouldWriteNothing_WhenBuyerHasNoOrders() {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    orderExporter.export(buyer.getId(), outputStream);
+
+    assertEquals(0, outputStream.size());
+  }
+
+  @Test
+  void shouldStop_WhenWritingFails() {
+    for (int i = 1; i <= 3; i++) {
+      createOrder(buyer, i);
+    }
+    OutputStream disconnected =
+        new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            throw new IOException("Broken pipe");
+          }
+        };
+
+    assertThrows(
+        UncheckedIOException.class, () -> orderExporter.export(buyer.getId(), disconnected));
+  }
+
+  private Order createOrder(User buyer, int product1Quantity) {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product1.getId(), product1Quantity);
+    purchaseItems.setPurchaseItem(product2.getId(), 1);
+    return orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID());
+  }
+}
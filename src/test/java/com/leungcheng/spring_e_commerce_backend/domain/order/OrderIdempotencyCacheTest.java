@@ -0,0 +1,93 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.math.BigDecimal;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class OrderIdempotencyCacheTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+  private @Autowired MeterRegistry meterRegistry;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+  private final Product product = productBuilder().quantity(99).price(BigDecimal.ONE).build();
+  private final PurchaseItems purchaseItems = new PurchaseItems();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    productRepository.save(product);
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+  }
+
+  @Test
+  void shouldAnswerRetryFromCache() {
+    UUID requestId = UUID.randomUUID();
+    Order order = orderService.createOrder(buyer.getId(), purchaseItems, requestId);
+    double hits = cacheGets("hit");
+
+    Order retriedOrder = orderService.createOrder(buyer.getId(), purchaseItems, requestId);
+
+    assertEquals(order.getId(), retriedOrder.getId());
+    assertEquals(hits + 1, cacheGets("hit"));
+    assertEquals(98, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  @Test
+  void shouldLookUpExistingOrder_WhenItIsNotCached() {
+    UUID requestId = UUID.randomUUID();
+    Order order =
+        orderRepository.save(
+            new Order(buyer.getId(), purchaseItems, requestId, PurchaseItemsStorage.ROWS));
+    double misses = cacheGets("miss");
+
+    Order retriedOrder = orderService.createOrder(buyer.getId(), purchaseItems, requestId);
+
+    assertEquals(order.getId(), retriedOrder.getId());
+    assertEquals(misses + 1, cacheGets("miss"));
+    assertEquals(99, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+
+    orderService.createOrder(buyer.getId(), purchaseItems, requestId);
+    assertEquals(misses + 1, cacheGets("miss"));
+  }
+
+  @Test
+  void shouldCreateNewOrder_WhenCachedOrderNoLongerExists() {
+    UUID requestId = UUID.randomUUID();
+    Order order = orderService.createOrder(buyer.getId(), purchaseItems, requestId);
+    orderRepository.deleteAll();
+
+    Order newOrder = orderService.createOrder(buyer.getId(), purchaseItems, requestId);
+
+    assertNotEquals(order.getId(), newOrder.getId());
+    assertEquals(97, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
+  private double cacheGets(String result) {
+    return meterRegistry
+        .get("cache.gets")
+        .tag("cache", "order.idempotency")
+        .tag("result", result)
+        .functionCounter()
+        .count();
+  }
+}
@@ -0,0 +1,132 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.validation.MyIllegalArgumentException;
+import jakarta.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class OrderQueryTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+  private @Autowired EntityManagerFactory entityManagerFactory;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+  private final List<Product> products = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    for (int i = 0; i < 3; i++) {
+      products.add(productBuilder().quantity(999).price(BigDecimal.ONE).build());
+    }
+    productRepository.saveAll(products);
+  }
+
+  @Test
+  void shouldListOrdersNewestFirst_PageByPage() {
+    List<Order> createdOrders = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      createdOrders.add(createOrder(buyer));
+    }
+
+    OrderPage page1 = orderService.getOrders(buyer.getId(), null, 2);
+    OrderPage page2 = orderService.getOrders(buyer.getId(), page1.nextCursor(), 2);
+    OrderPage page3 = orderService.getOrders(buyer.getId(), page2.nextCursor(), 2);
+
+    assertEquals(
+        createdOrders.reversed().stream().map(Order::getId).toList(),
+        List.of(page1, page2, page3).stream()
+            .flatMap(page -> page.orders().stream())
+            .map(Order::getId)
+            .toList());
+    assertNull(page3.nextCursor());
+  }
+
+  @Test
+  void shouldLoadPageAndPurchaseItemsWithTwoQueries() {
+    for (int i = 0; i < 10; i++) {
+      createOrder(buyer);
+    }
+    Statistics statistics = statistics();
+    statistics.clear();
+
+    OrderPage page = orderService.getOrders(buyer.getId(), null, 10);
+
+    assertEquals(10, page.orders().size());
+    for (Order order : page.orders()) {
+      assertEquals(3, order.getPurchaseItems().getProductIdToQuantity().size());
+    }
+    assertEquals(2, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  void shouldInsertNewOrderWithOneStatement() {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(products.getFirst().getId(), 1);
+    statistics().clear();
+
+    orderRepository.save(
+        new Order(buyer.getId(), purchaseItems, UUID.randomUUID(), PurchaseItemsStorage.ARRAYS));
+
+    assertEquals(1, statistics().getPrepareStatementCount());
+  }
+
+  @Test
+  void shouldOnlyShowOrdersOfTheBuyer() {
+    User otherBuyer = userBuilder().username("otherBuyer").balance(new BigDecimal(999)).build();
+    userRepository.save(otherBuyer);
+    Order order = createOrder(buyer);
+
+    assertEquals(
+        order.getId(), orderService.getOrder(buyer.getId(), order.getId()).orElseThrow().getId());
+    assertTrue(orderService.getOrder(otherBuyer.getId(), order.getId()).isEmpty());
+    assertTrue(orderService.getOrders(otherBuyer.getId(), null, 10).orders().isEmpty());
+  }
+
+  @Test
+  void shouldRejectInvalidCursorAndLimit() {
+    assertThrows(
+        MyIllegalArgumentException.class,
+        () -> orderService.getOrders(buyer.getId(), "not a cursor", 10));
+    assertThrows(
+        MyIllegalArgumentException.class, () -> orderService.getOrders(buyer.getId(), null, 0));
+    assertThrows(
+        MyIllegalArgumentException.class,
+        () -> orderService.getOrders(buyer.getId(), null, OrderService.MAX_PAGE_SIZE + 1));
+  }
+
+  private Statistics statistics() {
+    return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  private Order createOrder(User buyer) {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    for (Product product : products) {
+      purchaseItems.setPurchaseItem(product.getId(), 1);
+    }
+    return orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID());
+  }
+}
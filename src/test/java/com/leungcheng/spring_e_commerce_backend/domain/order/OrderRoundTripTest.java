@@ -0,0 +1,100 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.testutil.StatementCounter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Counts the statements of a {@link #LINES}-line order, each of which is a round trip to the
+ * database. The purchase items are stored as rows, so that they are written as a batch too. The
+ * {@code NOTIFY} that evicts the changed products from the caches of the other nodes is sent later
+ * by another thread, so it is not counted.
+ */
+@SpringBootTest(properties = "order.purchaseItemsStorage=ROWS")
+@Import(StatementCounter.class)
+class OrderRoundTripTest {
+  private static final int LINES = 50;
+  private static final int SELLERS = 5;
+
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+  private @Autowired StatementCounter statementCounter;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+  private final PurchaseItems purchaseItems = new PurchaseItems();
+  private final PurchaseItems singleItem = new PurchaseItems();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    List<User> sellers = new ArrayList<>();
+    for (int i = 0; i < SELLERS; i++) {
+      sellers.add(userBuilder().username("seller" + i).build());
+    }
+    userRepository.saveAll(sellers);
+    List<Product> products = new ArrayList<>();
+    for (int i = 0; i < LINES; i++) {
+      products.add(
+          productBuilder()
+              .quantity(10)
+              .price(BigDecimal.ONE)
+              .userId(sellers.get(i % SELLERS).getId())
+              .build());
+    }
+    productRepository.saveAll(products);
+    for (Product product : products) {
+      purchaseItems.setPurchaseItem(product.getId(), 2);
+    }
+    singleItem.setPurchaseItem(products.getFirst().getId(), 2);
+  }
+
+  /** Group commit is left out, since it places the order on another thread. */
+  @ParameterizedTest
+  @EnumSource(
+      value = OrderConcurrencyMode.class,
+      names = {"SERIALIZABLE", "PESSIMISTIC_LOCKING", "GUARDED_UPDATE", "DATABASE_FUNCTION"})
+  void shouldBatchTheWritesOfALargeOrder(OrderConcurrencyMode concurrencyMode) {
+    int expectedStatements =
+        switch (concurrencyMode) {
+          case SERIALIZABLE -> 10;
+          case PESSIMISTIC_LOCKING -> 11;
+          case GUARDED_UPDATE -> 9;
+          case DATABASE_FUNCTION -> 2;
+          default -> throw new IllegalArgumentException();
+        };
+
+    statementCounter.reset();
+    Order order =
+        orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID(), concurrencyMode);
+
+    assertEquals(LINES, order.getPurchaseItems().getProductIdToQuantity().size());
+    assertEquals(expectedStatements, statementCounter.get());
+
+    statementCounter.reset();
+    orderService.createOrder(buyer.getId(), singleItem, UUID.randomUUID(), concurrencyMode);
+
+    assertEquals(expectedStatements, statementCounter.get());
+  }
+}
@@ -5,13 +5,20 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import com.leungcheng.spring_e_commerce_backend.domain.Product;
 import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductService;
 import com.leungcheng.spring_e_commerce_backend.domain.User;
 import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
 import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
 import com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +30,8 @@ class OrderServiceTest {
   private @Autowired ProductRepository productRepository;
   private @Autowired OrderRepository orderRepository;
   private @Autowired OrderService orderService;
+  private @Autowired ProductService productService;
+  private @Autowired DataSource dataSource;
 
   private Product.Builder productBuilder() {
     return new Product.Builder()
@@ -215,6 +224,64 @@ class OrderServiceTest {
         new BigDecimal(19), userRepository.findById(seller2.getId()).orElseThrow().getBalance());
   }
 
+  @Test
+  void shouldCreditSellerForAllItems_WhenSellerSellsSeveralPurchasedProducts() {
+    User buyer = uniqueUsernameUserBuilder().balance(new BigDecimal(999)).build();
+    User seller = uniqueUsernameUserBuilder().balance(new BigDecimal(5)).build();
+    userRepository.saveAll(List.of(buyer, seller));
+
+    Product product1 =
+        productBuilder().quantity(999).price(new BigDecimal(5)).userId(seller.getId()).build();
+    Product product2 =
+        productBuilder().quantity(999).price(new BigDecimal(3)).userId(seller.getId()).build();
+    Product product3 =
+        productBuilder().quantity(999).price(new BigDecimal(1)).userId(seller.getId()).build();
+    productRepository.saveAll(List.of(product1, product2, product3));
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product1.getId(), 2);
+    purchaseItems.setPurchaseItem(product2.getId(), 3);
+    purchaseItems.setPurchaseItem(product3.getId(), 4);
+
+    createOrder(buyer.getId(), purchaseItems);
+
+    assertBigDecimalEquals(
+        new BigDecimal(28), userRepository.findById(seller.getId()).orElseThrow().getBalance());
+    assertBigDecimalEquals(
+        new BigDecimal(976), userRepository.findById(buyer.getId()).orElseThrow().getBalance());
+  }
+
+  @Test
+  void shouldBuyWithCreditsFromOwnSales_WhenBuyerIsAlsoASeller() {
+    User buyer = uniqueUsernameUserBuilder().balance(new BigDecimal(999)).build();
+    User sellerAndBuyer = uniqueUsernameUserBuilder().balance(BigDecimal.ZERO).build();
+    userRepository.saveAll(List.of(buyer, sellerAndBuyer));
+
+    Product ownProduct =
+        productBuilder().price(new BigDecimal(30)).userId(sellerAndBuyer.getId()).build();
+    Product otherProduct = productBuilder().price(new BigDecimal(20)).build();
+    productRepository.saveAll(List.of(ownProduct, otherProduct));
+
+    PurchaseItems purchaseItems1 = new PurchaseItems();
+    purchaseItems1.setPurchaseItem(ownProduct.getId(), 1);
+    createOrder(buyer.getId(), purchaseItems1);
+
+    PurchaseItems purchaseItems2 = new PurchaseItems();
+    purchaseItems2.setPurchaseItem(otherProduct.getId(), 1);
+    createOrder(sellerAndBuyer.getId(), purchaseItems2);
+
+    assertBigDecimalEquals(
+        new BigDecimal(10),
+        userRepository.findById(sellerAndBuyer.getId()).orElseThrow().getBalance());
+
+    PurchaseItems purchaseItems3 = new PurchaseItems();
+    purchaseItems3.setPurchaseItem(otherProduct.getId(), 1);
+    CreateOrderException exception =
+        assertThrows(
+            CreateOrderException.class, () -> createOrder(sellerAndBuyer.getId(), purchaseItems3));
+    assertEquals("Insufficient balance", exception.getMessage());
+  }
+
   @Test
   void shouldCreateOrder() {
     User buyer = uniqueUsernameUserBuilder().balance(new BigDecimal(999)).build();
@@ -293,6 +360,64 @@ class OrderServiceTest {
     assertNotEquals(order1.getId(), order2.getId());
   }
 
+  @Test
+  void shouldTakeStockFromShards_WhenProductStockIsSharded() {
+    User buyer = uniqueUsernameUserBuilder().balance(new BigDecimal(999)).build();
+    userRepository.save(buyer);
+
+    Product product = productBuilder().quantity(10).stockShards(4).price(BigDecimal.ONE).build();
+    productService.createProduct(product);
+
+    PurchaseItems purchaseItems1 = new PurchaseItems();
+    purchaseItems1.setPurchaseItem(product.getId(), 3);
+    createOrder(buyer.getId(), purchaseItems1);
+    assertEquals(7, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+
+    // No single shard holds 7 anymore, so the order has to drain several of them.
+    PurchaseItems purchaseItems2 = new PurchaseItems();
+    purchaseItems2.setPurchaseItem(product.getId(), 7);
+    createOrder(buyer.getId(), purchaseItems2);
+    assertEquals(0, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+
+    PurchaseItems purchaseItems3 = new PurchaseItems();
+    purchaseItems3.setPurchaseItem(product.getId(), 1);
+    CreateOrderException exception =
+        assertThrows(CreateOrderException.class, () -> createOrder(buyer.getId(), purchaseItems3));
+    assertEquals("Insufficient stock for product: " + product.getId(), exception.getMessage());
+
+    assertBigDecimalEquals(
+        new BigDecimal(989), userRepository.findById(buyer.getId()).orElseThrow().getBalance());
+  }
+
+  @Test
+  void shouldNotWaitForLockOfProductRow_WhenProductStockIsSharded() throws Exception {
+    User buyer = uniqueUsernameUserBuilder().balance(new BigDecimal(999)).build();
+    userRepository.save(buyer);
+    Product product = productBuilder().quantity(10).stockShards(4).price(BigDecimal.ONE).build();
+    productService.createProduct(product);
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), 1);
+
+    try (Connection connection = dataSource.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor()) {
+      connection.setAutoCommit(false);
+      // The lock of an update of the product, which lets a purchase_items foreign key check pass.
+      try (PreparedStatement ps =
+          connection.prepareStatement("SELECT 1 FROM products WHERE id = ? FOR NO KEY UPDATE")) {
+        ps.setObject(1, product.getId());
+        ps.executeQuery();
+      }
+
+      try {
+        executor.submit(() -> createOrder(buyer.getId(), purchaseItems)).get(10, TimeUnit.SECONDS);
+      } finally {
+        connection.rollback();
+      }
+    }
+
+    assertEquals(9, productRepository.findById(product.getId()).orElseThrow().getQuantity());
+  }
+
   @Test
   void shouldAutoRetry_WhenOneThreadMayFailJustDueToRacing() {
     User seller = uniqueUsernameUserBuilder().balance(new BigDecimal(999)).build();
@@ -323,12 +448,16 @@ class OrderServiceTest {
     assertEquals(0, productRepository.findById(product.getId()).orElseThrow().getQuantity());
   }
 
+  OrderConcurrencyMode concurrencyMode() {
+    return OrderConcurrencyMode.SERIALIZABLE;
+  }
+
   private Order createOrder(UUID buyerUserId, PurchaseItems purchaseItems) {
-    return orderService.createOrder(buyerUserId, purchaseItems, UUID.randomUUID());
+    return createOrder(buyerUserId, purchaseItems, UUID.randomUUID());
   }
 
   private Order createOrder(UUID buyerUserId, PurchaseItems purchaseItems, UUID requestId) {
-    return orderService.createOrder(buyerUserId, purchaseItems, requestId);
+    return orderService.createOrder(buyerUserId, purchaseItems, requestId, concurrencyMode());
   }
 
   private void assertOrderEquals(Order expected, Order actual) {
@@ -338,5 +467,6 @@ class OrderServiceTest {
         expected.getPurchaseItems().getProductIdToQuantity(),
         actual.getPurchaseItems().getProductIdToQuantity());
     assertEquals(expected.getRequestId(), actual.getRequestId());
+    assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
   }
 }
@@ -0,0 +1,83 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.CustomAssertions.assertBigDecimalEquals;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/** Runs all the tests of {@link OrderServiceTest} with pessimistic locking. */
+class PessimisticLockingOrderServiceTest extends OrderServiceTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderService orderService;
+
+  @Override
+  OrderConcurrencyMode concurrencyMode() {
+    return OrderConcurrencyMode.PESSIMISTIC_LOCKING;
+  }
+
+  @Test
+  void shouldNotFailAnyOrder_WhenManyThreadsBuyFromSameProductsAndSellers() throws Exception {
+    User seller1 = userBuilder().username("seller1").balance(BigDecimal.ZERO).build();
+    User seller2 = userBuilder().username("seller2").balance(BigDecimal.ZERO).build();
+    List<User> buyers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      buyers.add(userBuilder().username("buyer" + i).balance(new BigDecimal(999)).build());
+    }
+    userRepository.saveAll(List.of(seller1, seller2));
+    userRepository.saveAll(buyers);
+
+    Product product1 =
+        productBuilder().quantity(999).price(BigDecimal.ONE).userId(seller1.getId()).build();
+    Product product2 =
+        productBuilder().quantity(999).price(BigDecimal.TWO).userId(seller2.getId()).build();
+    productRepository.saveAll(List.of(product1, product2));
+
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product1.getId(), 1);
+    purchaseItems.setPurchaseItem(product2.getId(), 1);
+
+    int ordersPerBuyer = 5;
+    try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+      List<Future<Order>> futures = new ArrayList<>();
+      for (int i = 0; i < ordersPerBuyer; i++) {
+        for (User buyer : buyers) {
+          futures.add(
+              executor.submit(
+                  () ->
+                      orderService.createOrder(
+                          buyer.getId(), purchaseItems, UUID.randomUUID(), concurrencyMode())));
+        }
+      }
+      for (Future<Order> future : futures) {
+        future.get(); // rethrow the failure if any order is aborted
+      }
+    }
+
+    int orderCount = buyers.size() * ordersPerBuyer;
+    assertEquals(
+        999 - orderCount, productRepository.findById(product1.getId()).orElseThrow().getQuantity());
+    assertEquals(
+        999 - orderCount, productRepository.findById(product2.getId()).orElseThrow().getQuantity());
+    assertBigDecimalEquals(
+        new BigDecimal(orderCount),
+        userRepository.findById(seller1.getId()).orElseThrow().getBalance());
+    assertBigDecimalEquals(
+        new BigDecimal(orderCount * 2),
+        userRepository.findById(seller2.getId()).orElseThrow().getBalance());
+  }
+}
@@ -0,0 +1,126 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@SpringBootTest(properties = "order.purchaseItemsStorage=ARRAYS")
+class PurchaseItemsStorageTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired OrderService orderService;
+  private @Autowired OrderExporter orderExporter;
+  private @Autowired ObjectMapper objectMapper;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(999)).build();
+  private final Product product1 = productBuilder().quantity(999).price(BigDecimal.ONE).build();
+  private final Product product2 = productBuilder().quantity(999).price(BigDecimal.ONE).build();
+  private final PurchaseItems purchaseItems = new PurchaseItems();
+
+  @BeforeEach
+  void setUp() {
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.save(buyer);
+    productRepository.saveAll(List.of(product1, product2));
+    purchaseItems.setPurchaseItem(product1.getId(), 2);
+    purchaseItems.setPurchaseItem(product2.getId(), 3);
+  }
+
+  @ParameterizedTest
+  @EnumSource(OrderConcurrencyMode.class)
+  void shouldStoreNewOrderAsArrays(OrderConcurrencyMode concurrencyMode) {
+    Order order =
+        orderService.createOrder(buyer.getId(), purchaseItems, UUID.randomUUID(), concurrencyMode);
+
+    assertEquals(0, purchaseItemRows(order.getId()));
+    assertEquals(
+        2,
+        jdbcTemplate.queryForObject(
+            "SELECT cardinality(product_ids) FROM orders WHERE id = ?",
+            Integer.class,
+            order.getId()));
+    assertEquals(
+        purchaseItems.getProductIdToQuantity(),
+        orderRepository
+            .findById(order.getId())
+            .orElseThrow()
+            .getPurchaseItems()
+            .getProductIdToQuantity());
+  }
+
+  @Test
+  void shouldStoreOrderAsRows() {
+    Order order =
+        orderRepository.save(
+            new Order(buyer.getId(), purchaseItems, UUID.randomUUID(), PurchaseItemsStorage.ROWS));
+
+    assertEquals(2, purchaseItemRows(order.getId()));
+    assertEquals(
+        purchaseItems.getProductIdToQuantity(),
+        orderRepository
+            .findById(order.getId())
+            .orElseThrow()
+            .getPurchaseItems()
+            .getProductIdToQuantity());
+  }
+
+  @Test
+  void shouldReadOrdersStoredInEitherFormat() throws Exception {
+    Order rowsOrder =
+        orderRepository.save(
+            new Order(buyer.getId(), purchaseItems, UUID.randomUUID(), PurchaseItemsStorage.ROWS));
+    Order arraysOrder =
+        orderRepository.save(
+            new Order(
+                buyer.getId(), purchaseItems, UUID.randomUUID(), PurchaseItemsStorage.ARRAYS));
+
+    List<Order> orders = orderService.getOrders(buyer.getId(), null, 10).orders();
+    assertEquals(
+        List.of(arraysOrder.getId(), rowsOrder.getId()),
+        orders.stream().map(Order::getId).toList());
+    for (Order order : orders) {
+      assertEquals(
+          purchaseItems.getProductIdToQuantity(),
+          order.getPurchaseItems().getProductIdToQuantity());
+    }
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    orderExporter.export(buyer.getId(), outputStream);
+    String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(2, lines.length);
+    for (String line : lines) {
+      JsonNode items = objectMapper.readTree(line).get("productIdToQuantity");
+      assertEquals(2, items.get(product1.getId().toString()).asInt());
+      assertEquals(3, items.get(product2.getId().toString()).asInt());
+    }
+  }
+
+  private int purchaseItemRows(UUID orderId) {
+    return jdbcTemplate.queryForObject(
+        "SELECT count(*) FROM purchase_items WHERE order_id = ?", Integer.class, orderId);
+  }
+}
@@ -0,0 +1,202 @@
+package com.leungcheng.spring_e_commerce_backend.domain.order;
+
+import static com.leungcheng.spring_e_commerce_backend.testutil.CustomAssertions.assertBigDecimalEquals;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.productBuilder;
+import static com.leungcheng.spring_e_commerce_backend.testutil.DefaultBuilders.userBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.leungcheng.spring_e_commerce_backend.domain.Product;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductCache;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.ProductService;
+import com.leungcheng.spring_e_commerce_backend.domain.User;
+import com.leungcheng.spring_e_commerce_backend.domain.UserRepository;
+import com.leungcheng.spring_e_commerce_backend.domain.order.OrderService.CreateOrderException;
+import java.math.BigDecimal;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@SpringBootTest(properties = "reservation.sweepInterval=PT1H")
+class ReservationServiceTest {
+  private @Autowired UserRepository userRepository;
+  private @Autowired ProductRepository productRepository;
+  private @Autowired ProductService productService;
+  private @Autowired ProductCache productCache;
+  private @Autowired OrderRepository orderRepository;
+  private @Autowired ReservationService reservationService;
+  private @Autowired JdbcTemplate jdbcTemplate;
+
+  private final User seller = userBuilder().username("seller").balance(BigDecimal.ZERO).build();
+  private final User buyer = userBuilder().username("buyer").balance(new BigDecimal(10)).build();
+  private final Product product =
+      productBuilder().quantity(5).price(new BigDecimal(2)).userId(seller.getId()).build();
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate.update("DELETE FROM stock_reservations");
+    orderRepository.deleteAll();
+    userRepository.deleteAll();
+    productRepository.deleteAll();
+
+    userRepository.saveAll(List.of(seller, buyer));
+    productRepository.save(product);
+  }
+
+  @Test
+  void shouldHoldStock_WhenReserved() {
+    Reservation reservation = reservationService.reserve(buyer.getId(), purchaseItems(product, 3));
+
+    assertEquals(buyer.getId(), reservation.buyerUserId());
+    assertEquals(2, getQuantity(product));
+    assertBigDecimalEquals(new BigDecimal(10), getBalance(buyer));
+    assertEquals(0, orderRepository.count());
+  }
+
+  @Test
+  void shouldRejectReservation_WhenStockIsInsufficient() {
+    CreateOrderException e =
+        assertThrows(
+            CreateOrderException.class,
+            () -> reservationService.reserve(buyer.getId(), purchaseItems(product, 6)));
+
+    assertEquals(CreateOrderException.insufficientStockMsg(product.getId()), e.getMessage());
+    assertEquals(5, getQuantity(product));
+    assertEquals(0, countReservations());
+  }
+
+  @Test
+  void shouldCreateOrderWithoutTakingStockAgain_WhenConfirmed() {
+    Reservation reservation = reservationService.reserve(buyer.getId(), purchaseItems(product, 3));
+
+    Order order = reservationService.confirm(buyer.getId(), reservation.id()).orElseThrow();
+
+    assertEquals(3, order.getPurchaseItems().getProductIdToQuantity().get(product.getId()));
+    assertEquals(2, getQuantity(product));
+    assertBigDecimalEquals(new BigDecimal(4), getBalance(buyer));
+    assertBigDecimalEquals(new BigDecimal(6), getBalance(seller));
+    assertEquals(0, countReservations());
+  }
+
+  @Test
+  void shouldReturnSameOrder_WhenConfirmedTwice() {
+    Reservation reservation = reservationService.reserve(buyer.getId(), purchaseItems(product, 1));
+
+    Order order1 = reservationService.confirm(buyer.getId(), reservation.id()).orElseThrow();
+    Order order2 = reservationService.confirm(buyer.getId(), reservation.id()).orElseThrow();
+
+    assertEquals(order1.getId(), order2.getId());
+    assertEquals(1, orderRepository.count());
+    assertBigDecimalEquals(new BigDecimal(8), getBalance(buyer));
+  }
+
+  @Test
+  void shouldNotConfirmReservationOfAnotherBuyer() {
+    User otherBuyer = userBuilder().username("otherBuyer").balance(new BigDecimal(10)).build();
+    userRepository.save(otherBuyer);
+    Reservation reservation = reservationService.reserve(buyer.getId(), purchaseItems(product, 1));
+
+    assertTrue(reservationService.confirm(otherBuyer.getId(), reservation.id()).isEmpty());
+    assertEquals(1, countReservations());
+  }
+
+  @Test
+  void shouldKeepReservation_WhenBalanceIsInsufficientToConfirm() {
+    User poorBuyer = userBuilder().username("poorBuyer").balance(BigDecimal.ONE).build();
+    userRepository.save(poorBuyer);
+    Reservation reservation =
+        reservationService.reserve(poorBuyer.getId(), purchaseItems(product, 5));
+
+    CreateOrderException e =
+        assertThrows(
+            CreateOrderException.class,
+            () -> reservationService.confirm(poorBuyer.getId(), reservation.id()));
+
+    assertEquals("Insufficient balance", e.getMessage());
+    assertEquals(1, countReservations());
+    assertEquals(0, getQuantity(product));
+  }
+
+  @Test
+  void shouldReleaseStockOfExpiredReservations() {
+    Reservation expired = reservationService.reserve(buyer.getId(), purchaseItems(product, 2));
+    Reservation live = reservationService.reserve(buyer.getId(), purchaseItems(product, 1));
+    expire(expired);
+
+    assertEquals(1, reservationService.releaseExpired(100));
+
+    assertEquals(4, getQuantity(product));
+    assertTrue(reservationService.confirm(buyer.getId(), expired.id()).isEmpty());
+    assertTrue(reservationService.confirm(buyer.getId(), live.id()).isPresent());
+  }
+
+  @Test
+  void shouldEvictOnlyTheReleasedProductsFromCache() {
+    Product otherProduct = productBuilder().quantity(5).userId(seller.getId()).build();
+    productRepository.save(otherProduct);
+    expire(reservationService.reserve(buyer.getId(), purchaseItems(product, 2)));
+    productCache.get(product.getId());
+    productCache.get(otherProduct.getId());
+
+    reservationService.releaseExpired(100);
+
+    assertTrue(productCache.getIfPresent(product.getId()).isEmpty());
+    assertTrue(productCache.getIfPresent(otherProduct.getId()).isPresent());
+  }
+
+  @Test
+  void shouldReleaseStockToShards_WhenProductStockIsSharded() {
+    Product shardedProduct =
+        productBuilder().quantity(8).stockShards(4).userId(seller.getId()).build();
+    productService.createProduct(shardedProduct);
+    Reservation reservation =
+        reservationService.reserve(buyer.getId(), purchaseItems(shardedProduct, 3));
+    assertEquals(5, getQuantity(shardedProduct));
+
+    expire(reservation);
+    reservationService.releaseExpired(100);
+
+    assertEquals(8, getQuantity(shardedProduct));
+  }
+
+  @Test
+  void shouldReleaseInBatches() {
+    for (int i = 0; i < 3; i++) {
+      expire(reservationService.reserve(buyer.getId(), purchaseItems(product, 1)));
+    }
+
+    assertEquals(2, reservationService.releaseExpired(2));
+    assertEquals(1, reservationService.releaseExpired(2));
+    assertEquals(0, reservationService.releaseExpired(2));
+    assertEquals(5, getQuantity(product));
+  }
+
+  private static PurchaseItems purchaseItems(Product product, int quantity) {
+    PurchaseItems purchaseItems = new PurchaseItems();
+    purchaseItems.setPurchaseItem(product.getId(), quantity);
+    return purchaseItems;
+  }
+
+  private void expire(Reservation reservation) {
+    jdbcTemplate.update(
+        "UPDATE stock_reservations SET expires_at = now() - interval '1 second' WHERE id = ?",
+        reservation.id());
+  }
+
+  private int countReservations() {
+    Integer count =
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stock_reservations", Integer.class);
+    return count == null ? 0 : count;
+  }
+
+  private int getQuantity(Product product) {
+    return productRepository.findById(product.getId()).orElseThrow().getQuantity();
+  }
+
+  private BigDecimal getBalance(User user) {
+    return userRepository.findById(user.getId()).orElseThrow().getBalance();
+  }
+}
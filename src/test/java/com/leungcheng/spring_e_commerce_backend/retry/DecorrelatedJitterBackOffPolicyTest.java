@@ -0,0 +1,38 @@
+package com.leungcheng.spring_e_commerce_backend.retry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.retry.backoff.BackOffContext;
+
+class DecorrelatedJitterBackOffPolicyTest {
+  @Test
+  void shouldKeepEachDelayBetweenBaseAndThreeTimesPreviousDelay_AndBelowMaxDelay() {
+    List<Long> delays = new ArrayList<>();
+    DecorrelatedJitterBackOffPolicy policy =
+        new DecorrelatedJitterBackOffPolicy(
+            Duration.ofMillis(5), Duration.ofMillis(100), delays::add);
+
+    for (int i = 0; i < 100; i++) {
+      BackOffContext context = policy.start(null);
+      for (int j = 0; j < 10; j++) {
+        policy.backOff(context);
+      }
+    }
+
+    long previous = 5;
+    for (int i = 0; i < delays.size(); i++) {
+      if (i % 10 == 0) {
+        previous = 5;
+      }
+      long delay = delays.get(i);
+      assertTrue(delay >= 5);
+      assertTrue(delay <= Math.min(100, previous * 3));
+      previous = delay;
+    }
+    assertTrue(delays.stream().distinct().count() > 1, "delays should be jittered");
+  }
+}
@@ -0,0 +1,139 @@
+package com.leungcheng.spring_e_commerce_backend.retry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.support.RetryTemplate;
+
+class TransientFailureRetryPolicyTest {
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private static RuntimeException failure(String sqlState) {
+    return new CannotAcquireLockException("failed", new SQLException("reason", sqlState));
+  }
+
+  private RetryTemplate retryTemplate(int maxAttempts, RetryBudget budget) {
+    RetryTemplate retryTemplate = new RetryTemplate();
+    retryTemplate.setRetryPolicy(new TransientFailureRetryPolicy(maxAttempts, budget));
+    retryTemplate.registerListener(new RetryMetricsListener("test.retry", meterRegistry));
+    return retryTemplate;
+  }
+
+  private static int execute(
+      RetryTemplate retryTemplate, RetryCallback<Integer, RuntimeException> callback) {
+    return retryTemplate.execute(callback);
+  }
+
+  /** Fails with the given SQL state until the given number of attempts have been made. */
+  private static int failUntilAttempt(AtomicInteger attempts, int attempt, String sqlState) {
+    if (attempts.incrementAndGet() < attempt) {
+      throw failure(sqlState);
+    }
+    return attempts.get();
+  }
+
+  @Test
+  void shouldRetrySerializationFailuresAndDeadlocks() {
+    RetryTemplate retryTemplate = retryTemplate(5, new RetryBudget(0, 10));
+
+    AtomicInteger attempts1 = new AtomicInteger();
+    assertEquals(3, execute(retryTemplate, c -> failUntilAttempt(attempts1, 3, "40001")));
+
+    AtomicInteger attempts2 = new AtomicInteger();
+    assertEquals(2, execute(retryTemplate, c -> failUntilAttempt(attempts2, 2, "40P01")));
+
+    assertEquals(5, meterRegistry.counter("test.retry.attempts").count());
+    assertEquals(1, meterRegistry.counter("test.retry.successes", "attempt", "3").count());
+    assertEquals(1, meterRegistry.counter("test.retry.successes", "attempt", "2").count());
+  }
+
+  @Test
+  void shouldNotRetryOtherFailures() {
+    RetryTemplate retryTemplate = retryTemplate(5, new RetryBudget(0, 10));
+
+    AtomicInteger attempts1 = new AtomicInteger();
+    assertThrows(
+        RuntimeException.class,
+        () -> execute(retryTemplate, c -> failUntilAttempt(attempts1, 2, "23505")));
+    assertEquals(1, attempts1.get());
+
+    AtomicInteger attempts2 = new AtomicInteger();
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            execute(
+                retryTemplate,
+                c -> {
+                  attempts2.incrementAndGet();
+                  throw new IllegalStateException();
+                }));
+    assertEquals(1, attempts2.get());
+
+    assertTrue(meterRegistry.find("test.retry.give_ups").counters().isEmpty());
+  }
+
+  @Test
+  void shouldGiveUp_WhenMaxAttemptsAreReached() {
+    RetryTemplate retryTemplate = retryTemplate(3, new RetryBudget(0, 10));
+
+    AtomicInteger attempts = new AtomicInteger();
+    assertThrows(
+        CannotAcquireLockException.class,
+        () -> execute(retryTemplate, c -> failUntilAttempt(attempts, 99, "40001")));
+
+    assertEquals(3, attempts.get());
+    assertEquals(
+        1,
+        meterRegistry
+            .counter("test.retry.give_ups", "reason", TransientFailureRetryPolicy.EXHAUSTED)
+            .count());
+  }
+
+  @Test
+  void shouldGiveUp_WhenBudgetIsUsedUp() {
+    RetryBudget budget = new RetryBudget(0.5, 2);
+    RetryTemplate retryTemplate = retryTemplate(99, budget);
+
+    // The bucket starts with 2 tokens, which allow 2 retries.
+    AtomicInteger attempts1 = new AtomicInteger();
+    assertThrows(
+        CannotAcquireLockException.class,
+        () -> execute(retryTemplate, c -> failUntilAttempt(attempts1, 99, "40001")));
+    assertEquals(3, attempts1.get());
+    assertEquals(
+        1,
+        meterRegistry
+            .counter("test.retry.give_ups", "reason", TransientFailureRetryPolicy.BUDGET)
+            .count());
+
+    // Each call deposits 0.5 tokens, so every second call can retry once.
+    assertEquals(1, execute(retryTemplate, c -> 1));
+    AtomicInteger attempts2 = new AtomicInteger();
+    assertEquals(2, execute(retryTemplate, c -> failUntilAttempt(attempts2, 2, "40001")));
+  }
+
+  @Test
+  void shouldKeepRetriesWithinBudgetRatio_UnderSustainedFailures() {
+    int calls = 1000;
+    RetryTemplate retryTemplate = retryTemplate(4, new RetryBudget(0.2, 10));
+
+    AtomicInteger attempts = new AtomicInteger();
+    for (int i = 0; i < calls; i++) {
+      assertThrows(
+          CannotAcquireLockException.class,
+          () ->
+              execute(retryTemplate, c -> failUntilAttempt(attempts, Integer.MAX_VALUE, "40001")));
+    }
+
+    // The tokens the bucket starts with, and then 0.2 per call.
+    int retries = attempts.get() - calls;
+    assertTrue(retries <= 10 + calls * 0.2, "retries: " + retries);
+    assertTrue(retries >= calls * 0.2 - 1, "retries: " + retries);
+  }
+}
@@ -0,0 +1,75 @@
+package com.leungcheng.spring_e_commerce_backend.testutil;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Counts the statements executed through the data source, by Hibernate and by JDBC alike. A JDBC
+ * batch is counted once, since the driver sends it in one round trip. Import it into a test to wrap
+ * the data source of that test's context.
+ */
+public class StatementCounter implements BeanPostProcessor {
+  private final AtomicInteger count = new AtomicInteger();
+
+  /** Scheduled jobs use the same data source, so only one thread is counted. */
+  private volatile Thread countedThread;
+
+  public int get() {
+    return count.get();
+  }
+
+  /** Starts counting from 0 the statements executed by the current thread. */
+  public void reset() {
+    countedThread = Thread.currentThread();
+    count.set(0);
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    if (bean instanceof DataSource dataSource) {
+      return wrap(DataSource.class, dataSource);
+    }
+    return bean;
+  }
+
+  /** Wraps the connections and statements returned by the target as well. */
+  private <T> T wrap(Class<T> type, T target) {
+    InvocationHandler handler =
+        (proxy, method, args) -> {
+          if (target instanceof Statement
+              && isExecute(method)
+              && Thread.currentThread() == countedThread) {
+            count.incrementAndGet();
+          }
+          Object result;
+          try {
+            result = method.invoke(target, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+          Class<?> returnType = method.getReturnType();
+          if (result != null
+              && (returnType == Connection.class || Statement.class.isAssignableFrom(returnType))) {
+            return wrapAs(returnType, result);
+          }
+          return result;
+        };
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T wrapAs(Class<T> type, Object target) {
+    return wrap(type, (T) target);
+  }
+
+  private static boolean isExecute(Method method) {
+    return method.getName().startsWith("execute");
+  }
+}